@@ -0,0 +1,109 @@
+package com.andrei.bench;
+
+import com.andrei.engine.BookBuilder;
+import com.andrei.engine.OpeningBook;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+import com.andrei.game.San;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the opening book: building a book from a collection of random games, and probes of the
+ * positions of these games, in and out of the book, through the memory mapped file. The setup writes the
+ * games as PGN, so the build includes reading the SAN moves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BookBenchmark {
+    private static final int GAMES = 2000;
+    private static final int PLIES = 16;
+    private static final int PROBED = 1024;
+    private static final String[] RESULTS = {"1-0", "0-1", "1/2-1/2"};
+
+    private String pgn;
+    private Path directory;
+    private OpeningBook book;
+    private BitBoard[] positions;
+    private BookBuilder builder;
+    private final Random random = new Random(1);
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Random games = new Random(1);
+        List<BitBoard> seen = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < GAMES; i++)
+        {
+            text.append("[Result \"").append(RESULTS[i % RESULTS.length]).append("\"]\n\n");
+            BitBoard board = Fen.parse(Fen.START);
+            MoveList moves = new MoveList();
+            //a few moves past the book depth, so some probes miss
+            for(int ply = 0; ply < PLIES + 4; ply++)
+            {
+                moves.clear();
+                MoveGenerator.generateLegal(board, board.sideToMove(), moves);
+                if(moves.size() == 0) break;
+                int move = moves.get(games.nextInt(moves.size()));
+                if(ply % 2 == 0) text.append(ply / 2 + 1).append(". ");
+                text.append(San.toString(board, move)).append(' ');
+                board.makeMove(move);
+                if(seen.size() < PROBED && games.nextInt(8) == 0) seen.add(new BitBoard(board));
+            }
+            text.append(RESULTS[i % RESULTS.length]).append("\n\n");
+        }
+        pgn = text.toString();
+        positions = seen.toArray(new BitBoard[0]);
+        directory = Files.createTempDirectory("book");
+        builder = new BookBuilder(Runtime.getRuntime().availableProcessors(), PLIES, 1);
+        builder.build(new BufferedReader(new StringReader(pgn)), directory.resolve("book.bin"));
+        book = OpeningBook.load(directory.resolve("book.bin"));
+        System.out.printf("%n%d games, %d positions, %d entries%n", builder.getGames(), builder.getPositions(), builder.getEntries());
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        builder.shutdown();
+    }
+
+    @Benchmark
+    public void probe(Blackhole blackhole)
+    {
+        for(BitBoard position : positions) blackhole.consume(book.randomMove(position, random));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void build() throws IOException
+    {
+        builder.build(new BufferedReader(new StringReader(pgn)), directory.resolve("built.bin"));
+    }
+}
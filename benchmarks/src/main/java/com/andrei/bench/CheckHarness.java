@@ -0,0 +1,173 @@
+package com.andrei.bench;
+
+import com.andrei.except.IllegalMoveException;
+import com.andrei.game.ChessBoard;
+import com.andrei.game.Colour;
+import com.andrei.game.Game;
+import com.andrei.game.Tile;
+import com.andrei.pieces.Piece;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times isInCheck, and isCheckMate with isStalemate, on the positions of placements.txt, through the same
+ * ChessBoard calls the GUI makes. Unlike the JMH benchmarks it only uses classes and methods that were
+ * already in the first version of the game, so it also runs against a build of that version, to measure
+ * the speedup of the attack maps:
+ * <pre>
+ * git worktree add ../baseline &lt;first commit&gt; &amp;&amp; (cd ../baseline &amp;&amp; mvn compile)
+ * java -cp ../baseline/target/classes:benchmarks/target/benchmarks.jar com.andrei.bench.CheckHarness
+ * java -cp benchmarks/target/benchmarks.jar com.andrei.bench.CheckHarness
+ * </pre>
+ * The classes of the baseline come first on the class path, so they replace those of the shaded jar, and
+ * both runs load the same placements. The last rounds are the result, the first ones warm up the JIT. The
+ * counts printed differ between the two versions, as the first one misjudges some checkmates.
+ * <p>
+ * placements.txt was written by {@code CheckHarness generate}: the positions of random legal games, one per
+ * line, as the side to move followed by type,colour,square for every piece. Castling rights are left out,
+ * as the two versions keep them differently, so none of the loaded positions can castle.
+ */
+public class CheckHarness {
+    private static final int ROUNDS = 6;
+    private static final int CHECK_PASSES = 1000;
+    private static final int MATE_PASSES = 20;
+    private static final int GAMES = 200;
+
+    public static void main(String[] args) throws IOException, IllegalMoveException, ReflectiveOperationException
+    {
+        if(args.length > 0 && args[0].equals("generate"))
+        {
+            generate(new Random(7));
+            return;
+        }
+        List<ChessBoard> boards = new ArrayList<>();
+        List<Colour> turns = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                CheckHarness.class.getResourceAsStream("/placements.txt"), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(" ");
+                turns.add(Colour.valueOf(fields[0]));
+                boards.add(load(fields));
+            }
+        }
+        int n = boards.size();
+        for(int round = 0; round < ROUNDS; round++)
+        {
+            int found = 0; //printed, so the calls are not optimized away
+            long start = System.nanoTime();
+            for(int pass = 0; pass < CHECK_PASSES; pass++)
+            {
+                for(int i = 0; i < n; i++)
+                {
+                    if(boards.get(i).isInCheck(turns.get(i))) found++;
+                }
+            }
+            long checks = System.nanoTime();
+            for(int pass = 0; pass < MATE_PASSES; pass++)
+            {
+                for(int i = 0; i < n; i++)
+                {
+                    if(boards.get(i).isCheckMate(turns.get(i)) || boards.get(i).isStalemate(turns.get(i))) found++;
+                }
+            }
+            long mates = System.nanoTime();
+            System.out.printf("isInCheck %.1f ns/call   isCheckMate+isStalemate %.2f us/position  (%d)%n",
+                    (checks - start) / (double) (CHECK_PASSES * n), (mates - checks) / 1000.0 / (MATE_PASSES * n), found);
+        }
+    }
+
+    /**
+     * @param fields the side to move, then type,colour,square for every piece
+     * @return a board with only these pieces
+     */
+    private static ChessBoard load(String[] fields) throws ReflectiveOperationException
+    {
+        ChessBoard board = new ChessBoard(true);
+        for(int x = 0; x < 8; x++)
+        {
+            for(int y = 0; y < 8; y++) board.boardMatrix[x][y].setPiece(null);
+        }
+        for(int i = 1; i < fields.length; i++)
+        {
+            String[] piece = fields[i].split(",");
+            int square = Integer.parseInt(piece[2]);
+            Piece placed;
+            try
+            {
+                placed = (Piece) Class.forName("com.andrei.pieces." + piece[0]).getConstructor(Colour.class)
+                        .newInstance(Colour.valueOf(piece[1]));
+            }
+            catch(InvocationTargetException e)
+            {
+                throw new IllegalArgumentException("Bad piece: " + fields[i], e);
+            }
+            board.boardMatrix[square / 8][square % 8].setPiece(placed);
+        }
+        return board;
+    }
+
+    /**
+     * Prints the last positions of GAMES random games of 20 to 99 plies, in the format of placements.txt.
+     */
+    private static void generate(Random random) throws IllegalMoveException
+    {
+        for(int g = 0; g < GAMES; g++)
+        {
+            Game game = new Game();
+            int plies = 20 + random.nextInt(80);
+            for(int ply = 0; ply < plies; ply++)
+            {
+                List<int[]> moves = legalMoves(game);
+                if(moves.isEmpty()) break;
+                int[] move = moves.get(random.nextInt(moves.size()));
+                game.move(move[0], move[1], move[2], move[3]);
+                if(game.needsPromote()) game.promotePawns("queen");
+            }
+            StringBuilder line = new StringBuilder(game.getTurn().name());
+            for(int x = 0; x < 8; x++)
+            {
+                for(int y = 0; y < 8; y++)
+                {
+                    Piece piece = game.getBoard().boardMatrix[x][y].getPiece();
+                    if(piece == null) continue;
+                    line.append(' ').append(piece.getClass().getSimpleName()).append(',').append(piece.getColour())
+                            .append(',').append(x * 8 + y);
+                }
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * @return x1, y1, x2, y2 of every legal move of the side to move, in the order of the board
+     */
+    private static List<int[]> legalMoves(Game game)
+    {
+        ChessBoard board = game.getBoard();
+        List<int[]> moves = new ArrayList<>();
+        for(int x = 0; x < 8; x++)
+        {
+            for(int y = 0; y < 8; y++)
+            {
+                Tile tile = board.boardMatrix[x][y];
+                Piece piece = tile.getPiece();
+                if(piece == null || piece.getColour() != game.getTurn()) continue;
+                for(Tile end : piece.getLegalMoves(board, tile))
+                {
+                    if(!board.causesCheck(tile, end, game.getTurn())) moves.add(new int[]{x, y, end.getX(), end.getY()});
+                }
+            }
+        }
+        return moves;
+    }
+}
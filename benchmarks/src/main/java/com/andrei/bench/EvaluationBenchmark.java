@@ -0,0 +1,143 @@
+package com.andrei.bench;
+
+import com.andrei.engine.Evaluation;
+import com.andrei.engine.Network;
+import com.andrei.engine.Nnue;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluations per second of the classical evaluation and of the neural network one, with the scalar and
+ * the vectorized loops. The network is a material counting one written at setup, see
+ * {@link Network#writeMaterialNetwork}: its weights do not matter to the speed, only its size does.
+ * <p>
+ * One operation is one evaluation. The evaluate benchmark evaluates the positions of the corpus in turn;
+ * the move benchmark plays a legal move from one of them, evaluates the position it leads to and takes it
+ * back, which for the network includes updating the accumulators, as in a search.
+ * The vector kernel needs the jdk.incubator.vector module, added to the forked JVM here.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class EvaluationBenchmark {
+    @Param({"classical", "scalar", "vector"})
+    public String kernel;
+
+    @Param({"256"})
+    public int hidden;
+
+    private Path file;
+    private BitBoard[] positions;
+    private Nnue[] evaluators; //one per position, with the accumulators of the position at ply 0
+    private int[] movePositions; //for every legal move of the corpus, the position it is played in
+    private int[] moves;
+    private int nextPosition;
+    private int nextMove;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        List<String> fens = GameLogicBenchmark.loadCorpus();
+        positions = new BitBoard[fens.size()];
+        for(int i = 0; i < positions.length; i++) positions[i] = Fen.parse(fens.get(i));
+
+        List<int[]> legal = new ArrayList<>();
+        MoveList list = new MoveList();
+        for(int i = 0; i < positions.length; i++)
+        {
+            list.clear();
+            MoveGenerator.generateLegal(positions[i], positions[i].sideToMove(), list);
+            for(int m = 0; m < list.size(); m++) legal.add(new int[]{i, list.get(m)});
+        }
+        movePositions = new int[legal.size()];
+        moves = new int[legal.size()];
+        for(int i = 0; i < moves.length; i++)
+        {
+            movePositions[i] = legal.get(i)[0];
+            moves[i] = legal.get(i)[1];
+        }
+
+        if(kernel.equals("classical")) return;
+        file = Files.createTempFile("material", ".nnue");
+        Network.writeMaterialNetwork(file, hidden);
+        Network network = Network.load(file);
+        evaluators = new Nnue[positions.length];
+        for(int i = 0; i < positions.length; i++)
+        {
+            evaluators[i] = new Nnue(network, 2, kernel.equals("vector"));
+            evaluators[i].refresh(positions[i], 0);
+        }
+        if(kernel.equals("vector") && !evaluators[0].isVectorized())
+        {
+            throw new IllegalStateException("The Vector API is not available, run with --add-modules=jdk.incubator.vector");
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if(file == null) return;
+        try
+        {
+            //the mapping keeps the data readable after the file is gone
+            Files.deleteIfExists(file);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public int evaluate()
+    {
+        int i = nextPosition;
+        nextPosition = i + 1 == positions.length ? 0 : i + 1;
+        if(evaluators == null) return Evaluation.evaluate(positions[i]);
+        return evaluators[i].evaluate(positions[i], 0);
+    }
+
+    @Benchmark
+    public int move()
+    {
+        int i = nextMove;
+        nextMove = i + 1 == moves.length ? 0 : i + 1;
+        BitBoard board = positions[movePositions[i]];
+        board.makeMove(moves[i]);
+        int score;
+        if(evaluators == null) score = Evaluation.evaluate(board);
+        else
+        {
+            Nnue nnue = evaluators[movePositions[i]];
+            nnue.update(board, 1);
+            score = nnue.evaluate(board, 1);
+        }
+        board.unmakeMove(moves[i]);
+        return score;
+    }
+}
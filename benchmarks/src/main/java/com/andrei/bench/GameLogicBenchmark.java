@@ -0,0 +1,196 @@
+package com.andrei.bench;
+
+import com.andrei.except.IllegalMoveException;
+import com.andrei.game.BitBoard;
+import com.andrei.game.ChessBoard;
+import com.andrei.game.Colour;
+import com.andrei.game.Fen;
+import com.andrei.game.Game;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+import com.andrei.game.Tile;
+import com.andrei.pieces.Piece;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the game logic called by the GUI, over the corpus of positions in positions.txt.
+ * One operation is one pass over the whole corpus, so the scores of the benchmarks can be compared
+ * with each other, and a change in the corpus changes every score.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameLogicBenchmark {
+    private ChessBoard[] boards;
+    private Colour[] turns;
+    private Game[] games;
+    private int[][] gameMoves; //x1, y1, x2, y2 of a legal move for each game
+    private Tile[][] starts; //start and end tiles of every move of the side to move, for causesCheck
+    private Tile[][] ends;
+
+    @Setup
+    public void setup()
+    {
+        List<String> fens = loadCorpus();
+        int n = fens.size();
+        boards = new ChessBoard[n];
+        turns = new Colour[n];
+        games = new Game[n];
+        gameMoves = new int[n][];
+        starts = new Tile[n][];
+        ends = new Tile[n][];
+        MoveList moves = new MoveList();
+        for(int i = 0; i < n; i++)
+        {
+            BitBoard position = Fen.parse(fens.get(i));
+            boards[i] = new ChessBoard(position);
+            turns[i] = position.sideToMove() == BitBoard.WHITE ? Colour.WHITE : Colour.BLACK;
+            games[i] = new Game(new ChessBoard(position));
+
+            List<Tile> from = new ArrayList<>();
+            List<Tile> to = new ArrayList<>();
+            long own = position.colour(position.sideToMove());
+            for(; own != 0; own &= own - 1)
+            {
+                int square = Long.numberOfTrailingZeros(own);
+                for(long targets = MoveGenerator.targets(position, square); targets != 0; targets &= targets - 1)
+                {
+                    int target = Long.numberOfTrailingZeros(targets);
+                    from.add(boards[i].getTile(square >>> 3, square & 7));
+                    to.add(boards[i].getTile(target >>> 3, target & 7));
+                }
+            }
+            starts[i] = from.toArray(new Tile[0]);
+            ends[i] = to.toArray(new Tile[0]);
+
+            //the first legal move that is not a promotion, or none in mate and stalemate
+            boards[i].generateMoves(turns[i], moves);
+            for(int m = 0; m < moves.size() && gameMoves[i] == null; m++)
+            {
+                int move = moves.get(m);
+                if(Move.promotion(move) != 0) continue;
+                gameMoves[i] = new int[]{Move.from(move) >>> 3, Move.from(move) & 7, Move.to(move) >>> 3, Move.to(move) & 7};
+            }
+        }
+    }
+
+    /**
+     * @return the FENs of positions.txt, without comments and blank lines
+     */
+    static List<String> loadCorpus()
+    {
+        return loadCorpus("/positions.txt");
+    }
+
+    /**
+     * @param resource the name of a corpus file on the class path, one FEN per line, # starting a comment line
+     */
+    static List<String> loadCorpus(String resource)
+    {
+        List<String> fens = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                GameLogicBenchmark.class.getResourceAsStream(resource), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if(!line.isEmpty() && !line.startsWith("#")) fens.add(line);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return fens;
+    }
+
+    @Benchmark
+    public void isInCheck(Blackhole blackhole)
+    {
+        for(int i = 0; i < boards.length; i++) blackhole.consume(boards[i].isInCheck(turns[i]));
+    }
+
+    @Benchmark
+    public void isCheckMate(Blackhole blackhole)
+    {
+        for(int i = 0; i < boards.length; i++) blackhole.consume(boards[i].isCheckMate(turns[i]));
+    }
+
+    @Benchmark
+    public void isStalemate(Blackhole blackhole)
+    {
+        for(int i = 0; i < boards.length; i++) blackhole.consume(boards[i].isStalemate(turns[i]));
+    }
+
+    /**
+     * The moves of every piece of the side to move.
+     */
+    @Benchmark
+    public void getLegalMoves(Blackhole blackhole)
+    {
+        for(int i = 0; i < boards.length; i++)
+        {
+            Tile[][] matrix = boards[i].boardMatrix;
+            for(int x = 0; x < 8; x++)
+            {
+                for(int y = 0; y < 8; y++)
+                {
+                    Piece piece = matrix[x][y].getPiece();
+                    if(piece != null && piece.getColour() == turns[i]) blackhole.consume(piece.getLegalMoves(boards[i], matrix[x][y]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Every move of the side to move that follows the piece rules, legal or not.
+     */
+    @Benchmark
+    public void causesCheck(Blackhole blackhole)
+    {
+        for(int i = 0; i < boards.length; i++)
+        {
+            for(int m = 0; m < starts[i].length; m++) blackhole.consume(boards[i].causesCheck(starts[i][m], ends[i][m], turns[i]));
+        }
+    }
+
+    /**
+     * One legal move per position, validated and played by the game, then taken back.
+     */
+    @Benchmark
+    public void gameMove(Blackhole blackhole) throws IllegalMoveException
+    {
+        for(int i = 0; i < games.length; i++)
+        {
+            int[] move = gameMoves[i];
+            if(move == null) continue;
+            games[i].move(move[0], move[1], move[2], move[3]);
+            blackhole.consume(games[i].getPosition());
+            games[i].undoMove();
+        }
+    }
+}
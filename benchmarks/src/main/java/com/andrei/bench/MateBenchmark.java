@@ -0,0 +1,87 @@
+package com.andrei.bench;
+
+import com.andrei.engine.MateResult;
+import com.andrei.engine.MateSolver;
+import com.andrei.engine.Search;
+import com.andrei.engine.SearchLimits;
+import com.andrei.engine.SearchResult;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.TranspositionTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of proving the mates of the puzzle corpus in mates.txt, with the proof-number {@link MateSolver}
+ * or with the alpha-beta {@link Search} to the depth of each mate, both from an empty table. The setup checks
+ * that the solver proves every puzzle and prints how many mates the alpha-beta search finds at that depth,
+ * since its pruning may miss some.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MateBenchmark {
+    private static final int MAX_MOVES = 4;
+
+    @Param({"dfpn", "alphabeta"})
+    public String solver;
+
+    private BitBoard[] positions;
+    private int[] depths; //the plies of the mate of each position
+    private MateSolver mateSolver;
+    private TranspositionTable table;
+    private Search search;
+
+    @Setup
+    public void setup()
+    {
+        List<String> fens = GameLogicBenchmark.loadCorpus("/mates.txt");
+        positions = new BitBoard[fens.size()];
+        depths = new int[fens.size()];
+        mateSolver = new MateSolver(16L << 20);
+        table = TranspositionTable.ofSize("16MB");
+        search = new Search(table);
+        int found = 0;
+        for(int i = 0; i < positions.length; i++)
+        {
+            positions[i] = Fen.parse(fens.get(i));
+            MateResult result = mateSolver.solve(positions[i], MAX_MOVES, SearchLimits.NO_LIMIT);
+            if(result.getStatus() != MateResult.Status.PROVEN) throw new IllegalStateException("Not a mate in " + MAX_MOVES + ": " + fens.get(i));
+            depths[i] = 2 * result.getMoves() - 1;
+            table.clear();
+            if(Search.isMateScore(search.search(positions[i], new long[0], SearchLimits.depth(depths[i])).getScore())) found++;
+        }
+        System.out.printf("%n%d mates proven, alpha-beta finds %d of them at their depth%n", positions.length, found);
+    }
+
+    @Benchmark
+    public void solve(Blackhole blackhole)
+    {
+        for(int i = 0; i < positions.length; i++)
+        {
+            if(solver.equals("dfpn")) blackhole.consume(mateSolver.solve(positions[i], MAX_MOVES, SearchLimits.NO_LIMIT));
+            else
+            {
+                table.clear();
+                SearchResult result = search.search(positions[i], new long[0], SearchLimits.depth(depths[i]));
+                blackhole.consume(result);
+            }
+        }
+    }
+}
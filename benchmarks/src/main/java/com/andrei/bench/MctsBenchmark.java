@@ -0,0 +1,92 @@
+package com.andrei.bench;
+
+import com.andrei.engine.Mcts;
+import com.andrei.engine.Search;
+import com.andrei.engine.SearchLimits;
+import com.andrei.engine.SearchResult;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.TranspositionTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a Monte Carlo tree search of every position of the corpus, with a fixed number of playouts
+ * per position. The setup searches the corpus once and prints the playouts per second, and how often the
+ * move it finds is the one of an alpha-beta search to the given depth, to compare both searches on the
+ * same positions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MctsBenchmark {
+    @Param({"2000"})
+    public int playouts;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"5"})
+    public int depth;
+
+    private BitBoard[] positions;
+    private Mcts mcts;
+    private SearchLimits limits;
+
+    @Setup
+    public void setup()
+    {
+        List<String> fens = GameLogicBenchmark.loadCorpus();
+        positions = new BitBoard[fens.size()];
+        for(int i = 0; i < positions.length; i++) positions[i] = Fen.parse(fens.get(i));
+        mcts = new Mcts(threads, 64L << 20);
+        limits = SearchLimits.nodes(playouts);
+
+        TranspositionTable table = TranspositionTable.ofSize("4MB");
+        Search search = new Search(table);
+        long played = 0;
+        long millis = 0;
+        int agreed = 0;
+        for(BitBoard position : positions)
+        {
+            table.clear();
+            SearchResult expected = search.search(position, new long[0], SearchLimits.depth(depth));
+            SearchResult result = mcts.search(position, limits);
+            played += result.getNodes();
+            millis += result.getMillis();
+            if(result.getBestMove() == expected.getBestMove()) agreed++;
+        }
+        System.out.printf(Locale.ROOT, "%n%d playouts with %d threads: %d playouts per second, same move as depth %d in %d of %d positions%n",
+                playouts, threads, played * 1000 / Math.max(millis, 1), depth, agreed, positions.length);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mcts.shutdown();
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole)
+    {
+        for(BitBoard position : positions) blackhole.consume(mcts.search(position, limits));
+    }
+}
@@ -0,0 +1,92 @@
+package com.andrei.bench;
+
+import com.andrei.engine.Search;
+import com.andrei.engine.SearchFeature;
+import com.andrei.engine.SearchLimits;
+import com.andrei.engine.SearchResult;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.TranspositionTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a fixed depth search of every position of the corpus, each from an empty transposition
+ * table. The time depends on the machine, the node counts do not: the setup searches the corpus once and
+ * prints the nodes and the effective branching factor, the b for which b^depth is the number of nodes,
+ * averaged over the positions, with the hit rates of the evaluation and pawn caches. Search changes that
+ * prune or order better show up there first.
+ * <p>
+ * The disabled parameter switches off one {@link SearchFeature}, or all of them, to measure what each gains.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    @Param({"5"})
+    public int depth;
+
+    @Param({"none", "PVS", "ASPIRATION", "NULL_MOVE", "LMR", "FUTILITY", "all"})
+    public String disabled;
+
+    private BitBoard[] positions;
+    private TranspositionTable table;
+    private Search search;
+    private SearchLimits limits;
+
+    @Setup
+    public void setup()
+    {
+        List<String> fens = GameLogicBenchmark.loadCorpus();
+        positions = new BitBoard[fens.size()];
+        for(int i = 0; i < positions.length; i++) positions[i] = Fen.parse(fens.get(i));
+        table = TranspositionTable.ofSize("4MB");
+        limits = SearchLimits.depth(depth);
+
+        //a fresh search, so the counts do not depend on the history tables of earlier runs
+        search = new Search(table);
+        EnumSet<SearchFeature> features = EnumSet.allOf(SearchFeature.class);
+        if(disabled.equals("all")) features.clear();
+        else if(!disabled.equals("none")) features.remove(SearchFeature.valueOf(disabled));
+        search.setFeatures(features);
+        long nodes = 0;
+        double branching = 0;
+        for(BitBoard position : positions)
+        {
+            table.clear();
+            SearchResult result = search.search(position, new long[0], limits);
+            nodes += result.getNodes();
+            branching += Math.pow(result.getNodes(), 1.0 / Math.max(result.getDepth(), 1));
+        }
+        System.out.printf(Locale.ROOT, "%nDepth %d, %s disabled: %d nodes, effective branching factor %.2f%n%s%n%s%n",
+                depth, disabled, nodes, branching / positions.length, search.getEvalCache(), search.getPawnCache());
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole)
+    {
+        for(BitBoard position : positions)
+        {
+            table.clear();
+            blackhole.consume(search.search(position, new long[0], limits));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.andrei.bench;
+
+import com.andrei.engine.Search;
+import com.andrei.engine.SearchLimits;
+import com.andrei.engine.Tablebase;
+import com.andrei.engine.TablebaseGenerator;
+import com.andrei.engine.Tablebases;
+import com.andrei.game.BitBoard;
+import com.andrei.game.TranspositionTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the endgame tables: probes of random positions of KQK, KRK and KPK through the memory mapped
+ * files, and a fixed depth search of some of them with and without probing. The setup generates the tables
+ * into a temporary directory and prints how long that took.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TablebaseBenchmark {
+    private static final String[] MATERIALS = {"KQvK", "KRvK", "KPvK"};
+    private static final int POSITIONS = 1024;
+    private static final int SEARCHED = 16;
+    private static final int DEPTH = 6;
+
+    @Param({"on", "off"})
+    public String tablebases;
+
+    private BitBoard[] positions;
+    private Tablebases tables;
+    private TranspositionTable table;
+    private Search search;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Path directory = Files.createTempDirectory("tablebases");
+        long start = System.nanoTime();
+        TablebaseGenerator generator = new TablebaseGenerator(Runtime.getRuntime().availableProcessors());
+        try
+        {
+            for(String material : MATERIALS) TablebaseGenerator.write(generator.generate(material), directory);
+        }
+        finally
+        {
+            generator.shutdown();
+        }
+        System.out.printf("%ntables generated in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        tables = Tablebases.load(directory);
+        positions = new BitBoard[POSITIONS];
+        Random random = new Random(1);
+        for(int i = 0; i < POSITIONS; i++) positions[i] = randomPosition(MATERIALS[i % MATERIALS.length], random);
+        table = TranspositionTable.ofSize("16MB");
+        search = new Search(table);
+        search.setTablebases(tablebases.equals("on") ? tables : null);
+    }
+
+    /**
+     * @return a legal position of the material set with white to move, drawn at random
+     */
+    private BitBoard randomPosition(String material, Random random)
+    {
+        int[] codes = Tablebase.parse(material);
+        while(true)
+        {
+            BitBoard board = new BitBoard();
+            for(int code : codes)
+            {
+                int square;
+                do
+                {
+                    square = random.nextInt(64);
+                }
+                while(board.isOccupied(square) || (code % 6 == BitBoard.PAWN && (square < 8 || square >= 56)));
+                board.put(square, code / 6, code % 6);
+            }
+            int value = tables.probe(board);
+            if(value != Tablebase.ILLEGAL && value != Tablebases.UNKNOWN) return board;
+        }
+    }
+
+    @Benchmark
+    public void probe(Blackhole blackhole)
+    {
+        for(BitBoard position : positions) blackhole.consume(tables.probe(position));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void search(Blackhole blackhole)
+    {
+        for(int i = 0; i < SEARCHED; i++)
+        {
+            table.clear();
+            blackhole.consume(search.search(positions[i], new long[0], SearchLimits.depth(DEPTH)));
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.San;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds an {@link OpeningBook} file from a collection of games in PGN.
+ * <p>
+ * The file is read once, as a stream: the games are cut into batches and every batch is replayed on a fork
+ * join pool, each worker on its own board. A worker records one entry per position and move of the opening
+ * of each game, with the points the move scored, and sorts its entries by key and move, adding up the equal
+ * ones. The sorted runs are merged on the pool like the digits of a binary counter, two runs of the same
+ * number of batches into one of twice as many, so every entry is copied once per doubling and the reader
+ * only cuts the text into batches. The few runs left at the end are merged while the book is written,
+ * without building the whole book in memory. Games without a result and moves that cannot be read end the
+ * replay of a game; a FEN tag sets the starting position.
+ * <p>
+ * Usage: {@code BookBuilder <pgn> <book> [plies] [min games]} books the first plies of every game, 20 by
+ * default, and keeps the moves played in at least the given number of games, 1 by default.
+ */
+public class BookBuilder {
+    private static final int BATCH = 1024; //games per task
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final int maxPlies;
+    private final int minGames;
+    private long games;
+    private long positions;
+    private long written;
+
+    /**
+     * @param threads the number of worker threads
+     * @param maxPlies the plies of each game to put in the book
+     * @param minGames the games a move must have been played in to be kept
+     */
+    public BookBuilder(int threads, int maxPlies, int minGames) {
+        pool = new ForkJoinPool(threads);
+        this.threads = threads;
+        this.maxPlies = maxPlies;
+        this.minGames = minGames;
+    }
+
+    /**
+     * Reads a game collection and writes its book.
+     * @param pgn the games
+     * @param book the book file to write
+     * @throws IOException if the games cannot be read or the book cannot be written
+     */
+    public void build(BufferedReader pgn, Path book) throws IOException
+    {
+        games = 0;
+        List<ForkJoinTask<Entries>> levels = new ArrayList<>(); //a run of 2^i batches at i, or null
+        Deque<ForkJoinTask<Entries>> pending = new ArrayDeque<>();
+        List<String[]> batch = new ArrayList<>();
+        String[] game = newGame();
+        StringBuilder moves = new StringBuilder();
+        for(String line = pgn.readLine(); ; line = pgn.readLine())
+        {
+            String trimmed = line == null ? "" : line.trim();
+            if(line == null || (trimmed.startsWith("[") && moves.length() > 0))
+            {
+                if(moves.length() > 0)
+                {
+                    game[2] = moves.toString();
+                    batch.add(game);
+                    games++;
+                }
+                game = newGame();
+                moves.setLength(0);
+                if(batch.size() == BATCH || (line == null && !batch.isEmpty()))
+                {
+                    List<String[]> full = batch;
+                    ForkJoinTask<Entries> run = pool.submit(() -> replay(full));
+                    pending.add(run);
+                    carry(levels, run);
+                    batch = new ArrayList<>();
+                }
+                //a few batches are queued ahead of the workers, so they stay busy without the text piling up
+                while(pending.size() > 2 * threads) pending.removeFirst().join();
+                if(line == null) break;
+            }
+            if(trimmed.startsWith("[")) tag(trimmed, game);
+            else if(!trimmed.isEmpty()) moves.append(trimmed).append('\n');
+        }
+        List<Entries> runs = new ArrayList<>();
+        for(ForkJoinTask<Entries> run : levels)
+        {
+            if(run != null) runs.add(run.join());
+        }
+        positions = 0;
+        written = 0;
+        write(runs, book);
+    }
+
+    /**
+     * Adds a run of one batch to the counter: while the level holds a run of the same number of batches, the
+     * two are merged on the pool into a run of the next level.
+     */
+    private void carry(List<ForkJoinTask<Entries>> levels, ForkJoinTask<Entries> run)
+    {
+        for(int level = 0; ; level++)
+        {
+            if(level == levels.size())
+            {
+                levels.add(run);
+                return;
+            }
+            ForkJoinTask<Entries> other = levels.get(level);
+            if(other == null)
+            {
+                levels.set(level, run);
+                return;
+            }
+            levels.set(level, null);
+            ForkJoinTask<Entries> newer = run;
+            run = pool.submit(() -> Entries.merge(other.join(), newer.join()));
+        }
+    }
+
+    /**
+     * @return the starting position, the result and the moves of a game: null, null and null
+     */
+    private static String[] newGame()
+    {
+        return new String[3];
+    }
+
+    /**
+     * Keeps the FEN and Result tags of a game.
+     */
+    private static void tag(String line, String[] game)
+    {
+        int space = line.indexOf(' ');
+        int open = line.indexOf('"');
+        int close = line.lastIndexOf('"');
+        if(space < 0 || open < 0 || close <= open) return;
+        String name = line.substring(1, space);
+        if(name.equals("FEN")) game[0] = line.substring(open + 1, close);
+        else if(name.equals("Result")) game[1] = line.substring(open + 1, close);
+    }
+
+    /**
+     * Replays the openings of a batch of games on a worker.
+     * @return the sorted entries of the batch, equal ones added up
+     */
+    private Entries replay(List<String[]> games)
+    {
+        Entries entries = new Entries(games.size() * maxPlies);
+        for(String[] game : games)
+        {
+            int whitePoints;
+            if("1-0".equals(game[1])) whitePoints = 2;
+            else if("0-1".equals(game[1])) whitePoints = 0;
+            else if("1/2-1/2".equals(game[1])) whitePoints = 1;
+            else continue;
+            BitBoard board;
+            try
+            {
+                board = Fen.parse(game[0] == null ? Fen.START : game[0]);
+            }
+            catch(IllegalArgumentException e)
+            {
+                continue;
+            }
+            int plies = 0;
+            for(String token : tokens(game[2]))
+            {
+                if(plies == maxPlies) break;
+                int move;
+                try
+                {
+                    move = San.parse(board, token);
+                }
+                catch(IllegalArgumentException e)
+                {
+                    break;
+                }
+                int points = board.sideToMove() == BitBoard.WHITE ? whitePoints : 2 - whitePoints;
+                entries.add(board.key(), OpeningBook.encode(move), 1L << 32 | points);
+                board.makeMove(move);
+                plies++;
+            }
+        }
+        entries.sort();
+        return entries;
+    }
+
+    /**
+     * @return the moves of the move text of a game, without the comments, the variations, the move numbers,
+     * the annotation glyphs and the result
+     */
+    static List<String> tokens(String text)
+    {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        int variations = 0;
+        boolean comment = false;
+        boolean lineComment = false;
+        for(int i = 0; i <= text.length(); i++)
+        {
+            char c = i == text.length() ? ' ' : text.charAt(i);
+            if(lineComment)
+            {
+                lineComment = c != '\n';
+                continue;
+            }
+            if(comment)
+            {
+                comment = c != '}';
+                continue;
+            }
+            if(c == '{' || c == ';' || c == '(' || c == ')' || Character.isWhitespace(c) || c == '.')
+            {
+                if(token.length() > 0 && variations == 0) addToken(token.toString(), tokens);
+                token.setLength(0);
+                if(c == '{') comment = true;
+                else if(c == ';') lineComment = true;
+                else if(c == '(') variations++;
+                else if(c == ')') variations = Math.max(variations - 1, 0);
+                continue;
+            }
+            token.append(c);
+        }
+        return tokens;
+    }
+
+    private static void addToken(String token, List<String> tokens)
+    {
+        if(token.startsWith("$") || Character.isDigit(token.charAt(0)) && !token.startsWith("0-0") || token.equals("*")) return;
+        tokens.add(token);
+    }
+
+    /**
+     * Merges the sorted runs and writes the entries played in enough games, grouped by key, from the highest
+     * weight down.
+     */
+    private void write(List<Entries> runs, Path book) throws IOException
+    {
+        int[] next = new int[runs.size()]; //the first entry of each run not written yet
+        int[] moves = new int[64]; //the moves of the current key, and their statistics
+        long[] stats = new long[64];
+        int[] order = new int[64];
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(book))))
+        {
+            while(true)
+            {
+                //the smallest key left, there are only a few runs
+                int first = -1;
+                for(int r = 0; r < runs.size(); r++)
+                {
+                    if(next[r] < runs.get(r).size
+                            && (first < 0 || Long.compareUnsigned(runs.get(r).keys[next[r]], runs.get(first).keys[next[first]]) < 0))
+                    {
+                        first = r;
+                    }
+                }
+                if(first < 0) break;
+                long key = runs.get(first).keys[next[first]];
+                int size = 0;
+                for(int r = 0; r < runs.size(); r++)
+                {
+                    Entries run = runs.get(r);
+                    for(; next[r] < run.size && run.keys[next[r]] == key; next[r]++)
+                    {
+                        //a move played in several runs is added up, a position has few moves
+                        int move = run.moves[next[r]];
+                        int i = 0;
+                        while(i < size && moves[i] != move) i++;
+                        if(i < size)
+                        {
+                            stats[i] += run.stats[next[r]];
+                            continue;
+                        }
+                        if(size == moves.length)
+                        {
+                            moves = Arrays.copyOf(moves, 2 * size);
+                            stats = Arrays.copyOf(stats, 2 * size);
+                            order = new int[2 * size];
+                        }
+                        moves[size] = move;
+                        stats[size++] = run.stats[next[r]];
+                    }
+                }
+                long maxPoints = 0;
+                int count = 0;
+                for(int i = 0; i < size; i++)
+                {
+                    if(stats[i] >>> 32 >= minGames && (int) stats[i] > 0)
+                    {
+                        order[count++] = i;
+                        maxPoints = Math.max(maxPoints, (int) stats[i]);
+                    }
+                }
+                //insertion sort from the highest points down, then by move, whatever run the moves came from
+                for(int i = 1; i < count; i++)
+                {
+                    int entry = order[i];
+                    int j = i;
+                    for(; j > 0 && before(moves, stats, entry, order[j - 1]); j--) order[j] = order[j - 1];
+                    order[j] = entry;
+                }
+                for(int i = 0; i < count; i++)
+                {
+                    int entry = order[i];
+                    long points = (int) stats[entry];
+                    long weight = maxPoints > 0xFFFF ? Math.max(points * 0xFFFF / maxPoints, 1) : points;
+                    out.writeLong(key);
+                    out.writeShort(moves[entry]);
+                    out.writeShort((int) weight);
+                    out.writeInt((int) Math.min(stats[entry] >>> 32, Integer.MAX_VALUE));
+                }
+                if(count > 0) positions++;
+                written += count;
+            }
+        }
+    }
+
+    private static boolean before(int[] moves, long[] stats, int a, int b)
+    {
+        return (int) stats[a] > (int) stats[b] || ((int) stats[a] == (int) stats[b] && moves[a] < moves[b]);
+    }
+
+    /**
+     * @return the games read by the last build, with or without a result
+     */
+    public long getGames()
+    {
+        return games;
+    }
+
+    /**
+     * @return the positions written by the last build
+     */
+    public long getPositions()
+    {
+        return positions;
+    }
+
+    /**
+     * @return the entries written by the last build
+     */
+    public long getEntries()
+    {
+        return written;
+    }
+
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Book entries as parallel arrays: the key, the encoded move and the statistics, the games in the upper
+     * 32 bits and the points in the lower ones.
+     */
+    private static final class Entries {
+        private long[] keys;
+        private int[] moves;
+        private long[] stats;
+        private int size;
+
+        Entries(int capacity) {
+            keys = new long[Math.max(capacity, 1)];
+            moves = new int[keys.length];
+            stats = new long[keys.length];
+        }
+
+        void add(long key, int move, long stat)
+        {
+            if(size == keys.length)
+            {
+                keys = Arrays.copyOf(keys, 2 * size);
+                moves = Arrays.copyOf(moves, 2 * size);
+                stats = Arrays.copyOf(stats, 2 * size);
+            }
+            keys[size] = key;
+            moves[size] = move;
+            stats[size++] = stat;
+        }
+
+        /**
+         * @return below 0 if entry i of a comes before entry j of b: by unsigned key, then by move
+         */
+        private static int compare(Entries a, int i, Entries b, int j)
+        {
+            int order = Long.compareUnsigned(a.keys[i], b.keys[j]);
+            return order != 0 ? order : Integer.compare(a.moves[i], b.moves[j]);
+        }
+
+        /**
+         * Sorts the entries with a bottom up merge sort and adds up the equal ones.
+         */
+        void sort()
+        {
+            Entries from = this;
+            Entries to = new Entries(size);
+            for(int width = 1; width < size; width *= 2)
+            {
+                for(int start = 0; start < size; start += 2 * width)
+                {
+                    int middle = Math.min(start + width, size);
+                    int end = Math.min(start + 2 * width, size);
+                    int i = start;
+                    int j = middle;
+                    for(int k = start; k < end; k++)
+                    {
+                        int source = j >= end || (i < middle && compare(from, i, from, j) <= 0) ? i++ : j++;
+                        to.keys[k] = from.keys[source];
+                        to.moves[k] = from.moves[source];
+                        to.stats[k] = from.stats[source];
+                    }
+                }
+                Entries swap = from;
+                from = to;
+                to = swap;
+            }
+            keys = from.keys;
+            moves = from.moves;
+            stats = from.stats;
+            int kept = 0;
+            for(int i = 0; i < size; i++)
+            {
+                if(kept > 0 && keys[kept - 1] == keys[i] && moves[kept - 1] == moves[i])
+                {
+                    stats[kept - 1] += stats[i];
+                    continue;
+                }
+                keys[kept] = keys[i];
+                moves[kept] = moves[i];
+                stats[kept++] = stats[i];
+            }
+            size = kept;
+        }
+
+        /**
+         * @param a sorted entries without equal ones
+         * @param b the same
+         * @return the entries of both, sorted, the equal ones added up
+         */
+        static Entries merge(Entries a, Entries b)
+        {
+            Entries merged = new Entries(a.size + b.size);
+            int i = 0;
+            int j = 0;
+            while(i < a.size || j < b.size)
+            {
+                int order = i == a.size ? 1 : j == b.size ? -1 : compare(a, i, b, j);
+                if(order < 0) merged.add(a.keys[i], a.moves[i], a.stats[i++]);
+                else if(order > 0) merged.add(b.keys[j], b.moves[j], b.stats[j++]);
+                else merged.add(a.keys[i], a.moves[i], a.stats[i++] + b.stats[j++]);
+            }
+            return merged;
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 2)
+        {
+            System.err.println("Usage: BookBuilder <pgn> <book> [plies] [min games]");
+            System.exit(2);
+            return;
+        }
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int minGames = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        BookBuilder builder = new BookBuilder(Runtime.getRuntime().availableProcessors(), plies, minGames);
+        long start = System.nanoTime();
+        try(BufferedReader pgn = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.ISO_8859_1))
+        {
+            builder.build(pgn, Paths.get(args[1]));
+        }
+        finally
+        {
+            builder.shutdown();
+        }
+        System.out.println(builder.getGames() + " games, " + builder.getPositions() + " positions, " + builder.getEntries()
+                + " entries in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
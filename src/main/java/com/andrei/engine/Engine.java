@@ -0,0 +1,187 @@
+package com.andrei.engine;
+
+import com.andrei.except.IllegalMoveException;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Game;
+import com.andrei.game.Move;
+import com.andrei.game.Position;
+import com.andrei.game.TranspositionTable;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A computer opponent for a {@link Game}: searches the published position of the game and plays the best
+ * move through Game.move, like a player clicking on the board. While the game is in its opening book, see
+ * {@link #setBook}, it plays a book move instead, without searching.
+ */
+public class Engine {
+    private static final String[] PROMOTIONS = {null, "knight", "bishop", "rook", "queen"};
+
+    private final TranspositionTable table;
+    private final SmpSearch search;
+    private final Random random = new Random();
+    private OpeningBook book; //null when no book is loaded
+
+    /**
+     * Creates an engine with a transposition table of the configured size, the configured number of
+     * threads, the configured search features, the configured network, the configured endgame tables and
+     * the configured opening book, see {@link TranspositionTable#fromConfig()},
+     * {@link SmpSearch#threadsFromConfig()}, {@link SearchFeature#fromConfig()}, {@link Network#fromConfig()},
+     * {@link Tablebases#fromConfig()} and {@link OpeningBook#fromConfig()}.
+     * @throws IllegalArgumentException if the network file, the tablebase files or the book file cannot be read
+     */
+    public Engine() {
+        this(TranspositionTable.fromConfig(), SmpSearch.threadsFromConfig());
+        search.setFeatures(SearchFeature.fromConfig());
+        try
+        {
+            search.setNetwork(Network.fromConfig());
+        }
+        catch(IOException e)
+        {
+            throw new IllegalArgumentException("Cannot read the network file: " + e.getMessage(), e);
+        }
+        try
+        {
+            search.setTablebases(Tablebases.fromConfig());
+        }
+        catch(IOException e)
+        {
+            throw new IllegalArgumentException("Cannot read the tablebase files: " + e.getMessage(), e);
+        }
+        try
+        {
+            book = OpeningBook.fromConfig();
+        }
+        catch(IOException e)
+        {
+            throw new IllegalArgumentException("Cannot read the book file: " + e.getMessage(), e);
+        }
+    }
+
+    public Engine(TranspositionTable table) {
+        this(table, 1);
+    }
+
+    /**
+     * @param threads the number of search threads, at least 1
+     */
+    public Engine(TranspositionTable table, int threads) {
+        this.table = table;
+        this.search = new SmpSearch(table, threads);
+    }
+
+    /**
+     * Searches the current position of the game without playing a move. A position of the opening book is
+     * not searched: the result holds a book move, picked at random by weight, with depth 0 and no nodes.
+     * @param game the game, only read
+     * @param limits when to stop searching
+     * @return the best move found for the side to move
+     */
+    public SearchResult think(Game game, SearchLimits limits)
+    {
+        Position position = game.getPosition();
+        BitBoard board = position.toBitBoard();
+        int bookMove = book == null ? Move.NONE : book.randomMove(board, random);
+        if(bookMove != Move.NONE) return new SearchResult(bookMove, 0, 0, 0, 0, new int[]{bookMove});
+        return search.search(board, history(position, board.halfmoveClock()), limits);
+    }
+
+    /**
+     * Searches the current position of the game and plays the best move, choosing the promotion piece
+     * when the move promotes a pawn.
+     * @param game the game to play in
+     * @param limits when to stop searching
+     * @return the result of the search, with {@link Move#NONE} as the best move if the game is over
+     * @throws IllegalMoveException if the game refuses the move, which means the rules of the game and of the
+     * move generator disagree
+     */
+    public SearchResult play(Game game, SearchLimits limits) throws IllegalMoveException
+    {
+        SearchResult result = think(game, limits);
+        int move = result.getBestMove();
+        if(move == Move.NONE) return result;
+        int from = Move.from(move);
+        int to = Move.to(move);
+        game.move(from >>> 3, from & 7, to >>> 3, to & 7);
+        if(Move.promotion(move) != 0) game.promotePawns(PROMOTIONS[Move.promotion(move)]);
+        return result;
+    }
+
+    /**
+     * Stops a search running on another thread. The search returns its best move so far.
+     */
+    public void stop()
+    {
+        search.stop();
+    }
+
+    /**
+     * Chooses the selective parts of the search used from the next move on, see {@link SearchFeature}.
+     */
+    public void setFeatures(Set<SearchFeature> features)
+    {
+        search.setFeatures(features);
+    }
+
+    /**
+     * Chooses the evaluation used from the next move on.
+     * @param network the neural network to evaluate with, or null for the classical evaluation
+     */
+    public void setNetwork(Network network)
+    {
+        search.setNetwork(network);
+    }
+
+    /**
+     * Chooses the endgame tables probed from the next move on.
+     * @param tablebases the tables, or null to probe none
+     */
+    public void setTablebases(Tablebases tablebases)
+    {
+        search.setTablebases(tablebases);
+    }
+
+    /**
+     * Chooses the opening book played from the next move on.
+     * @param book the book, or null to always search
+     */
+    public void setBook(OpeningBook book)
+    {
+        this.book = book;
+    }
+
+    /**
+     * Stops the helper threads of the search. The engine cannot be used afterwards.
+     */
+    public void shutdown()
+    {
+        search.shutdown();
+    }
+
+    public int getThreads()
+    {
+        return search.getThreads();
+    }
+
+    public TranspositionTable getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return the keys of the positions before the given one that can still repeat, oldest first: the ones
+     * since the last capture or pawn move
+     */
+    private static long[] history(Position position, int halfmoveClock)
+    {
+        int count = 0;
+        for(Position p = position.getPrevious(); p != null && count < halfmoveClock; p = p.getPrevious()) count++;
+        long[] keys = new long[count];
+        Position p = position.getPrevious();
+        for(int i = count - 1; i >= 0; i--, p = p.getPrevious()) keys[i] = p.getKey();
+        return keys;
+    }
+}
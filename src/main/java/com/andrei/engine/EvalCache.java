@@ -0,0 +1,113 @@
+package com.andrei.engine;
+
+import com.andrei.game.TranspositionTable;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A fixed size cache of static evaluations, indexed by the Zobrist key of the position. The same position
+ * is evaluated again whenever the search reaches it again: in the next iteration, in a null move search or
+ * through a transposition the table did not keep.
+ * <p>
+ * Each entry is one long: the upper 48 bits of the key, then the score in the lower 16 bits, which holds any
+ * evaluation since evaluations stay below the mate scores. The low bits of the key choose the slot, so a
+ * cache of 2^16 entries or more checks the whole key. A new entry replaces the old one in its slot.
+ * A cache belongs to one search thread.
+ */
+public class EvalCache {
+    /** System property holding the size of the cache of each search thread, like "2MB". */
+    public static final String SIZE_PROPERTY = "chess.evalhash";
+    private static final String DEFAULT_SIZE = "2MB";
+    /** Returned by {@link #probe} when the position is not in the cache. */
+    public static final int MISS = Integer.MIN_VALUE;
+
+    private static final long KEY_MASK = ~0xFFFFL;
+
+    private final long[] entries;
+    private final int mask;
+    private long probes;
+    private long hits;
+
+    /**
+     * Creates an empty cache. The size is rounded down to a power of two, and is at least one entry.
+     * @param bytes the size of the cache in bytes, at most 1 GB
+     */
+    public EvalCache(long bytes) {
+        int size = (int) Long.highestOneBit(Math.max(Math.min(bytes, 1L << 30) >>> 3, 1));
+        entries = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return a new empty cache, with the size given by the {@link #SIZE_PROPERTY} system property, 2 MB if it is not set
+     * @throws IllegalArgumentException if the size cannot be read
+     */
+    public static EvalCache fromConfig()
+    {
+        return new EvalCache(TranspositionTable.parseSize(System.getProperty(SIZE_PROPERTY, DEFAULT_SIZE)));
+    }
+
+    /**
+     * @param key the Zobrist key of the position
+     * @return the cached score of the position, or {@link #MISS}
+     */
+    public int probe(long key)
+    {
+        long entry = entries[(int) key & mask];
+        probes++;
+        if(entry == 0 || (entry & KEY_MASK) != (key & KEY_MASK)) return MISS;
+        hits++;
+        return (short) entry;
+    }
+
+    /**
+     * @param key the Zobrist key of the position
+     * @param score the evaluation of the position, within the range of a short
+     */
+    public void store(long key, int score)
+    {
+        entries[(int) key & mask] = (key & KEY_MASK) | (score & 0xFFFF);
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public void clear()
+    {
+        Arrays.fill(entries, 0);
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * @return the size of the cache in bytes
+     */
+    public long size()
+    {
+        return (long) entries.length * Long.BYTES;
+    }
+
+    public long probes()
+    {
+        return probes;
+    }
+
+    public long hits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the share of probes that found their position, 0 if there were no probes
+     */
+    public double hitRate()
+    {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "eval cache %d KB, %d probes, %.1f%% hits", size() >>> 10, probes, 100 * hitRate());
+    }
+}
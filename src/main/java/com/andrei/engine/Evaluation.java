@@ -0,0 +1,69 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.PieceSquareTables;
+
+/**
+ * Static evaluation of a position. Cannot be instantiated.
+ */
+public class Evaluation {
+    private Evaluation() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    //centipawns, indexed by the type constants in BitBoard, used to order captures
+    public static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+
+    /**
+     * Tapered evaluation: the middlegame and endgame material and piece-square scores the board keeps up to
+     * date, plus the pawn structure terms of {@link PawnStructure}, blended by the phase of the game.
+     * @param board the position
+     * @return the score in centipawns, positive if the side to move is ahead
+     */
+    public static int evaluate(BitBoard board)
+    {
+        long white = board.pieces(BitBoard.WHITE, BitBoard.PAWN);
+        long black = board.pieces(BitBoard.BLACK, BitBoard.PAWN);
+        long score = PawnStructure.score(white, black);
+        if(shield(board, BitBoard.WHITE)) score += PawnStructure.shield(white, BitBoard.WHITE, board.kingSquare(BitBoard.WHITE) & 7);
+        if(shield(board, BitBoard.BLACK)) score -= PawnStructure.shield(black, BitBoard.BLACK, board.kingSquare(BitBoard.BLACK) & 7);
+        return blend(board, score);
+    }
+
+    /**
+     * The same evaluation, with the pawn structure terms looked up in a cache.
+     * @param board the position
+     * @param pawns the cache of the pawn structure terms
+     * @return the score in centipawns, positive if the side to move is ahead
+     */
+    public static int evaluate(BitBoard board, PawnCache pawns)
+    {
+        int entry = pawns.probe(board);
+        long score = pawns.score(entry);
+        if(shield(board, BitBoard.WHITE)) score += pawns.shield(entry, BitBoard.WHITE, board.kingSquare(BitBoard.WHITE) & 7);
+        if(shield(board, BitBoard.BLACK)) score -= pawns.shield(entry, BitBoard.BLACK, board.kingSquare(BitBoard.BLACK) & 7);
+        return blend(board, score);
+    }
+
+    /**
+     * @return true if the king of the colour stands on its first two ranks, where its pawns can shield it
+     */
+    private static boolean shield(BitBoard board, int colour)
+    {
+        int king = board.kingSquare(colour);
+        if(king < 0) return false;
+        return colour == BitBoard.WHITE ? king >>> 3 <= 1 : king >>> 3 >= 6;
+    }
+
+    /**
+     * @param pawns the packed pawn terms, white minus black, the shields being middlegame scores
+     */
+    private static int blend(BitBoard board, long pawns)
+    {
+        int phase = board.phase();
+        int middlegame = board.middlegameScore() + PieceSquareTables.middlegame(pawns);
+        int endgame = board.endgameScore() + PieceSquareTables.endgame(pawns);
+        int score = (middlegame * phase + endgame * (PieceSquareTables.MAX_PHASE - phase)) / PieceSquareTables.MAX_PHASE;
+        return board.sideToMove() == BitBoard.WHITE ? score : -score;
+    }
+}
@@ -0,0 +1,77 @@
+package com.andrei.engine;
+
+import com.andrei.game.Move;
+
+import java.util.Locale;
+
+/**
+ * The outcome of a {@link MateSolver} run: whether the side to move mates within the given number of moves,
+ * and if it does, the mating line. Immutable.
+ */
+public final class MateResult {
+    public enum Status {
+        /** The side to move mates within the moves asked, in the moves of the line. */
+        PROVEN,
+        /** The defence holds out for longer than the moves asked, or the side to move cannot mate at all. */
+        DISPROVEN,
+        /** The node limit was reached before either was shown. */
+        UNKNOWN
+    }
+
+    private final Status status;
+    private final int moves;
+    private final int[] line;
+    private final long nodes;
+    private final long millis;
+
+    /**
+     * @param moves the moves to mate in, for a proof; the limit that was searched otherwise
+     * @param line the mating line, from the move of the side to move to the mating move; copied
+     */
+    public MateResult(Status status, int moves, int[] line, long nodes, long millis) {
+        this.status = status;
+        this.moves = moves;
+        this.line = line.clone();
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of moves of the shortest mate for a proof, the number of moves searched otherwise
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * @return a copy of the mating line, empty unless the mate was proven
+     */
+    public int[] getLine() {
+        return line.clone();
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(status.name().toLowerCase(Locale.ROOT));
+        text.append(status == Status.PROVEN ? " mate " : " within ").append(moves);
+        text.append(" nodes ").append(nodes).append(" time ").append(millis);
+        if(line.length > 0)
+        {
+            text.append(" line");
+            for(int move : line) text.append(' ').append(Move.toString(move));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,430 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.Fen;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+import com.andrei.game.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Proves or disproves that the side to move, the attacker, mates within a number of moves, with a
+ * depth-first proof-number search (df-pn).
+ * <p>
+ * Every node has a proof number, the least number of leaves that must still be shown to be mates to prove
+ * it, and a disproof number, the same for escapes. The attacker needs one of its moves proven and all the
+ * defences of the defender, so at attacker nodes the proof number is the smallest of the children and the
+ * disproof number their sum, and the other way round at defender nodes. The search always goes down to the
+ * most proving node, the leaf that brings the root closest to a result, and stays in a subtree until its
+ * numbers pass the thresholds handed down from the parent, so it is depth first and needs no tree in
+ * memory: the numbers of every node searched are kept in a transposition table. Checking moves start with
+ * a smaller proof number than quiet ones, so the search looks at them first.
+ * <p>
+ * Numbers are kept from the point of view of the side to move: phi is the proof number at attacker nodes
+ * and the disproof number at defender nodes, delta the other one. A node is stored with the plies left
+ * to the depth limit; a mate found with fewer plies left holds with more, and an escape found with more
+ * plies left holds with fewer, so both are reused across depths. The limit is raised one move at a time,
+ * so the first proof is the shortest mate. The fifty move rule and repetitions are ignored.
+ * <p>
+ * Unlike an alpha-beta search, which must also score every non-mating line, the search stops as soon as
+ * one mate is proven. A solver object is used by one thread at a time.
+ */
+public class MateSolver {
+    private static final int INFINITE = 1 << 28;
+    private static final int QUIET_PROOF = 4; //initial proof number of an attacker move that does not check
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int ENTRY_BYTES = 20;
+    private static final int MAX_MOVES = 32; //the plies left must fit in the 6 bits of an entry
+
+    //the table: the key, phi, delta and the plies left packed in one long, and a stamp: the generation of the
+    //solve that stored the entry in the top 8 bits, the nodes searched below the entry in the others
+    private final long[] keys;
+    private final long[] data;
+    private final int[] stamps;
+    private final int bucketMask;
+    private int generation; //entries of other generations are empty
+
+    private final BitBoard board = new BitBoard();
+    private MoveList[] moves = new MoveList[0];
+    private int[][] childPhi = new int[0][]; //the numbers of the children of the node at each ply
+    private int[][] childDelta = new int[0][];
+    private long nodes;
+    private long maxNodes;
+    private boolean aborted;
+    //the numbers of the last node searched or looked up
+    private int phi;
+    private int delta;
+
+    /**
+     * @param tableBytes the size of the transposition table, rounded down to a power of two buckets
+     */
+    public MateSolver(long tableBytes) {
+        int buckets = (int) Long.highestOneBit(Math.max(Math.min(tableBytes / (ENTRY_BYTES * BUCKET_ENTRIES), 1 << 26), 1));
+        keys = new long[buckets * BUCKET_ENTRIES];
+        data = new long[buckets * BUCKET_ENTRIES];
+        stamps = new int[buckets * BUCKET_ENTRIES];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Looks for the shortest mate of the side to move, trying 1 move, then 2, up to the maximum.
+     * @param position the position, left unchanged
+     * @param maxMoves the most moves of the attacker to look for a mate in, 1 to 32
+     * @param maxNodes the nodes after which the search gives up, or {@link SearchLimits#NO_LIMIT}
+     * @return the result, with the mating line if a mate was found
+     * @throws IllegalArgumentException if maxMoves is out of range
+     */
+    public MateResult solve(BitBoard position, int maxMoves, long maxNodes)
+    {
+        if(maxMoves < 1 || maxMoves > MAX_MOVES) throw new IllegalArgumentException("Invalid number of moves: " + maxMoves);
+        long start = System.currentTimeMillis();
+        generation = (generation + 1) & 0xFF;
+        if(generation == 0)
+        {
+            //the stamps wrapped around: clear them so no old entry passes for a new one
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+        ensurePlies(2 * maxMoves);
+        nodes = 0;
+        this.maxNodes = maxNodes;
+        aborted = false;
+        for(int mateIn = 1; mateIn <= maxMoves; mateIn++)
+        {
+            board.copyFrom(position);
+            search(0, 2 * mateIn - 1, INFINITE, INFINITE);
+            if(aborted) return new MateResult(MateResult.Status.UNKNOWN, maxMoves, new int[0], nodes, System.currentTimeMillis() - start);
+            if(phi == 0)
+            {
+                board.copyFrom(position);
+                int[] line = line(2 * mateIn - 1);
+                return new MateResult(MateResult.Status.PROVEN, mateIn, line, nodes, System.currentTimeMillis() - start);
+            }
+        }
+        return new MateResult(MateResult.Status.DISPROVEN, maxMoves, new int[0], nodes, System.currentTimeMillis() - start);
+    }
+
+    private void ensurePlies(int plies)
+    {
+        if(moves.length >= plies) return;
+        int old = moves.length;
+        moves = Arrays.copyOf(moves, plies);
+        childPhi = Arrays.copyOf(childPhi, plies);
+        childDelta = Arrays.copyOf(childDelta, plies);
+        for(int ply = old; ply < plies; ply++)
+        {
+            moves[ply] = new MoveList();
+            childPhi[ply] = new int[MoveList.CAPACITY];
+            childDelta[ply] = new int[MoveList.CAPACITY];
+        }
+    }
+
+    /**
+     * Searches the node on the board until its phi reaches thPhi or its delta reaches thDelta, and leaves
+     * its numbers in phi and delta.
+     * @param ply the ply from the root; the attacker moves at even plies
+     * @param plies the plies left, at least 1
+     */
+    private void search(int ply, int plies, int thPhi, int thDelta)
+    {
+        long startNodes = nodes++;
+        if(nodes > maxNodes) aborted = true;
+        long key = board.key();
+        //a node already solved, or already past its thresholds, through another line
+        if(lookup(key, plies, ply % 2 == 0) && (phi == 0 || delta == 0 || phi >= thPhi || delta >= thDelta)) return;
+        MoveList list = moves[ply];
+        int count = MoveGenerator.generateLegal(board, board.sideToMove(), list);
+        if(count == 0)
+        {
+            //the attacker cannot mate without a move; the defender is mated, or escapes by stalemate
+            boolean lost = ply % 2 == 0 || board.isInCheck(board.sideToMove());
+            phi = lost ? INFINITE : 0;
+            delta = lost ? 0 : INFINITE;
+            store(key, plies, phi, delta, 1);
+            return;
+        }
+        expand(ply, plies, list, count);
+
+        while(true)
+        {
+            //phi is the best delta of the children, delta the sum of their phis
+            int best = 0;
+            int bestDelta = INFINITE + 1;
+            int secondDelta = INFINITE;
+            int bestPhi = 0;
+            int sumPhi = 0;
+            int[] phis = childPhi[ply];
+            int[] deltas = childDelta[ply];
+            for(int i = 0; i < count; i++)
+            {
+                sumPhi = Math.min(sumPhi + phis[i], INFINITE);
+                if(deltas[i] < bestDelta)
+                {
+                    secondDelta = bestDelta;
+                    bestDelta = deltas[i];
+                    bestPhi = phis[i];
+                    best = i;
+                }
+                else if(deltas[i] < secondDelta) secondDelta = deltas[i];
+            }
+            int nodePhi = bestDelta;
+            int nodeDelta = sumPhi;
+            if(nodePhi >= thPhi || nodeDelta >= thDelta || aborted)
+            {
+                store(key, plies, nodePhi, nodeDelta, nodes - startNodes);
+                phi = nodePhi;
+                delta = nodeDelta;
+                return;
+            }
+            int childThPhi = Math.min(thDelta - (nodeDelta - bestPhi), INFINITE);
+            int childThDelta = Math.min(thPhi, Math.min(secondDelta, INFINITE - 1) + 1);
+            int move = list.get(best);
+            board.makeMove(move);
+            search(ply + 1, plies - 1, childThPhi, childThDelta);
+            board.unmakeMove(move);
+            phis[best] = phi;
+            deltas[best] = delta;
+        }
+    }
+
+    /**
+     * Sets the first numbers of the children of the node. The moves of the attacker are played once, to
+     * tell checks from quiet moves and to find children the table holds through another line; defender
+     * nodes at the depth limit are decided right away, as mates or escapes. The defences all start alike,
+     * without being played. From then on the node keeps the numbers of its children itself, and a child
+     * only changes when it is searched, so the table is not probed for every child each time the node
+     * picks one.
+     */
+    private void expand(int ply, int plies, MoveList list, int count)
+    {
+        boolean attacker = ply % 2 == 0;
+        if(!attacker)
+        {
+            Arrays.fill(childPhi[ply], 0, count, 1);
+            Arrays.fill(childDelta[ply], 0, count, 1);
+            return;
+        }
+        for(int i = 0; i < count; i++)
+        {
+            int move = list.get(i);
+            board.makeMove(move);
+            boolean check = board.isInCheck(board.sideToMove());
+            if(plies == 1)
+            {
+                //the last move of the attacker: anything but mate is an escape for the defender
+                boolean mate = check && !MoveGenerator.hasLegalMove(board, board.sideToMove());
+                childPhi[ply][i] = mate ? INFINITE : 0;
+                childDelta[ply][i] = mate ? 0 : INFINITE;
+            }
+            else if(lookup(board.key(), plies - 1, false))
+            {
+                childPhi[ply][i] = phi;
+                childDelta[ply][i] = delta;
+            }
+            else
+            {
+                childPhi[ply][i] = 1;
+                childDelta[ply][i] = check ? 1 : QUIET_PROOF;
+            }
+            board.unmakeMove(move);
+        }
+    }
+
+    /**
+     * @param attacker true if the attacker is to move in the position
+     * @return true if the table holds numbers for the position with the plies left, left in phi and delta
+     */
+    private boolean lookup(long key, int plies, boolean attacker)
+    {
+        int first = ((int) key & bucketMask) * BUCKET_ENTRIES;
+        for(int i = first; i < first + BUCKET_ENTRIES; i++)
+        {
+            if(keys[i] != key || !isCurrent(i)) continue;
+            int entryPlies = plies(data[i]);
+            int entryPhi = phi(data[i]);
+            int entryDelta = delta(data[i]);
+            boolean mate = (attacker ? entryPhi : entryDelta) == 0;
+            boolean escape = (attacker ? entryDelta : entryPhi) == 0;
+            if(entryPlies == plies || (mate && entryPlies < plies) || (escape && entryPlies > plies))
+            {
+                phi = entryPhi;
+                delta = entryDelta;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores the numbers of a position in the entry of its bucket with the same plies left, or else in the
+     * entry that took the least work.
+     */
+    private void store(long key, int plies, int phi, int delta, long searched)
+    {
+        int first = ((int) key & bucketMask) * BUCKET_ENTRIES;
+        int replace = first;
+        for(int i = first; i < first + BUCKET_ENTRIES; i++)
+        {
+            if(keys[i] == key && isCurrent(i) && plies(data[i]) == plies)
+            {
+                replace = i;
+                break;
+            }
+            if(work(i) < work(replace)) replace = i;
+        }
+        keys[replace] = key;
+        data[replace] = (long) phi | (long) delta << 29 | (long) plies << 58;
+        stamps[replace] = generation << 24 | (int) Math.min(searched, 0xFFFFFF);
+    }
+
+    private boolean isCurrent(int entry)
+    {
+        return stamps[entry] >>> 24 == generation;
+    }
+
+    /**
+     * @return the nodes searched below the entry, -1 if it is empty
+     */
+    private int work(int entry)
+    {
+        return isCurrent(entry) ? stamps[entry] & 0xFFFFFF : -1;
+    }
+
+    //LAYOUT OF AN ENTRY: phi and delta 29 bits each, up to INFINITE, then the plies left in 6 bits
+
+    private static int phi(long data)
+    {
+        return (int) (data & ((1 << 29) - 1));
+    }
+
+    private static int delta(long data)
+    {
+        return (int) ((data >>> 29) & ((1 << 29) - 1));
+    }
+
+    private static int plies(long data)
+    {
+        return (int) (data >>> 58);
+    }
+
+    /**
+     * Follows the proof from the root: a mating move of the attacker, then the defence that was hardest to
+     * refute, until the defender is mated. A node whose proof was lost from the table is proven again.
+     * @return the mating line
+     */
+    private int[] line(int plies)
+    {
+        int[] line = new int[plies];
+        int length = 0;
+        for(int ply = 0; plies > 0; ply++, plies--)
+        {
+            MoveList list = moves[ply];
+            int count = MoveGenerator.generateLegal(board, board.sideToMove(), list);
+            if(count == 0) break;
+            boolean attacker = ply % 2 == 0;
+            int chosen = attacker ? provenChild(ply, plies, list, count) : hardestDefence(ply, plies, list, count);
+            if(chosen < 0)
+            {
+                //the proof of the node was overwritten: prove it again, then look once more
+                search(ply, plies, INFINITE, INFINITE);
+                MoveGenerator.generateLegal(board, board.sideToMove(), list);
+                chosen = attacker ? provenChild(ply, plies, list, count) : hardestDefence(ply, plies, list, count);
+                if(chosen < 0) break;
+            }
+            line[length++] = list.get(chosen);
+            board.makeMove(list.get(chosen));
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    /**
+     * @return the index of a move of the attacker that leads to a proven mate, or -1 if the table has none
+     */
+    private int provenChild(int ply, int plies, MoveList list, int count)
+    {
+        for(int i = 0; i < count; i++)
+        {
+            board.makeMove(list.get(i));
+            boolean proven = plies == 1 ? board.isInCheck(board.sideToMove()) && !MoveGenerator.hasLegalMove(board, board.sideToMove())
+                    : lookup(board.key(), plies - 1, false) && delta == 0;
+            board.unmakeMove(list.get(i));
+            if(proven) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the defence whose proof took the most work, or -1 if one of them is not proven
+     * in the table
+     */
+    private int hardestDefence(int ply, int plies, MoveList list, int count)
+    {
+        int hardest = -1;
+        int hardestWork = -1;
+        for(int i = 0; i < count; i++)
+        {
+            board.makeMove(list.get(i));
+            long key = board.key();
+            boolean proven = lookup(key, plies - 1, true) && phi == 0;
+            int work = proven ? workOf(key, plies - 1) : -1;
+            board.unmakeMove(list.get(i));
+            if(!proven) return -1;
+            if(work > hardestWork)
+            {
+                hardest = i;
+                hardestWork = work;
+            }
+        }
+        return hardest;
+    }
+
+    private int workOf(long key, int plies)
+    {
+        int first = ((int) key & bucketMask) * BUCKET_ENTRIES;
+        int work = 0;
+        for(int i = first; i < first + BUCKET_ENTRIES; i++)
+        {
+            if(keys[i] == key && isCurrent(i) && plies(data[i]) <= plies) work = Math.max(work, work(i));
+        }
+        return work;
+    }
+
+    /**
+     * Usage: {@code MateSolver <file> [moves] [nodes]} checks every FEN of the file, one per line, for a
+     * mate of the side to move within the moves, 3 by default, and prints each result and a summary.
+     * Lines starting with # are skipped.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            System.err.println("Usage: MateSolver <file> [moves] [nodes]");
+            System.exit(2);
+            return;
+        }
+        int maxMoves = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long maxNodes = args.length > 2 ? Long.parseLong(args[2]) : SearchLimits.NO_LIMIT;
+        List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        MateSolver solver = new MateSolver(TranspositionTable.parseSize(System.getProperty(TranspositionTable.SIZE_PROPERTY, "64MB")));
+        int[] counts = new int[MateResult.Status.values().length];
+        long millis = 0;
+        for(String line : lines)
+        {
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            MateResult result = solver.solve(Fen.parse(line), maxMoves, maxNodes);
+            counts[result.getStatus().ordinal()]++;
+            millis += result.getMillis();
+            System.out.println(line + " : " + result);
+        }
+        System.out.println("proven " + counts[MateResult.Status.PROVEN.ordinal()] + ", disproven "
+                + counts[MateResult.Status.DISPROVEN.ordinal()] + ", unknown " + counts[MateResult.Status.UNKNOWN.ordinal()]
+                + " in " + millis + " ms");
+    }
+}
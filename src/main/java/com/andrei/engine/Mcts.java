@@ -0,0 +1,407 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+import com.andrei.game.TranspositionTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A Monte Carlo tree search, an alternative to the alpha-beta {@link Search} for analysis. The tree grows
+ * one node per playout: from the root, each step goes to the child with the best PUCT score, its average
+ * result plus an exploration bonus proportional to its prior and shrinking with its visits, until it
+ * reaches a node that was never expanded. That node gets its children, a short playout is run from it,
+ * and the result is added to every node on the way back up.
+ * <p>
+ * The priors favour captures of valuable pieces and promotions. A playout plays a few moves chosen at random
+ * with the same weights, then turns the static evaluation into an expected result with a logistic curve,
+ * so it is cheap and far less noisy than playing out to the end of the game. Checkmates and stalemates in
+ * the tree are scored exactly; repetitions are not detected.
+ * <p>
+ * Playouts run in parallel on a work-stealing {@link ForkJoinPool}: the playouts of a round are split in
+ * halves down to small batches, and idle threads steal batches from busy ones. Each pool thread has its own
+ * board, copied from the root for every playout. While a playout goes down the tree it adds a virtual loss
+ * to every node on its path, visits without a result, so other threads see those nodes as worse for the
+ * moment and spread over other branches; the real result replaces the virtual loss on the way back up.
+ * The tree lives in a {@link NodeArena} allocated once; when it is full, the tree stops growing and the
+ * playouts go on from its leaves.
+ * <p>
+ * The result is a {@link SearchResult}: the most visited move, the expected result of that move as
+ * centipawns or a mate in one, the line of most visited moves and the playouts of each thread as its nodes, so the nodes
+ * per second are playouts per second. A search object is used by one caller at a time.
+ */
+public class Mcts {
+    /** System property holding the size of the tree, like "64MB". */
+    public static final String ARENA_PROPERTY = "chess.mcts.arena";
+    private static final String DEFAULT_ARENA = "64MB";
+
+    private static final double EXPLORATION = 1.5;
+    private static final double FIRST_PLAY_REDUCTION = 0.1; //unvisited children count as this much worse than their parent
+    private static final int VIRTUAL_LOSS = 3;
+    private static final int PLAYOUT_PLIES = 8;
+    private static final double WIN_SCALE = 200; //centipawns of the evaluation per unit of the logistic curve
+    private static final int MAX_TREE_DEPTH = 128;
+    private static final int ROUND_PLAYOUTS = 256; //playouts per thread between two checks of the limits
+    private static final int BATCH_PLAYOUTS = 16; //playouts run without splitting the task again
+    private static final int PV_LENGTH = 32;
+
+    private final NodeArena arena;
+    private final ForkJoinPool pool;
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final BitBoard root = new BitBoard();
+    private long deadline;
+    private int generation; //the number of the current search, to reset the counters of the workers
+    private volatile boolean stopped;
+
+    /**
+     * @param threads the number of playout threads, at least 1
+     * @param arenaBytes the size of the tree in bytes, see {@link NodeArena#NODE_BYTES}
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public Mcts(int threads, long arenaBytes) {
+        if(threads < 1) throw new IllegalArgumentException("A search needs at least one thread: " + threads);
+        arena = new NodeArena((int) Math.max(Math.min(arenaBytes / NodeArena.NODE_BYTES, Integer.MAX_VALUE - 8), 1));
+        pool = new ForkJoinPool(threads, Worker::new, null, false);
+    }
+
+    /**
+     * Creates a search with the configured number of threads and tree size, see
+     * {@link SmpSearch#threadsFromConfig()} and {@link #ARENA_PROPERTY}.
+     * @throws IllegalArgumentException if a property cannot be read
+     */
+    public Mcts() {
+        this(SmpSearch.threadsFromConfig(), TranspositionTable.parseSize(System.getProperty(ARENA_PROPERTY, DEFAULT_ARENA)));
+    }
+
+    /**
+     * Searches the position until one of the limits is reached. The depth limit is ignored; the node limit
+     * counts playouts.
+     * @param position the position, left unchanged
+     * @param limits when to stop
+     * @return the most visited move, with its expected result in centipawns and the line of most visited moves
+     */
+    public SearchResult search(BitBoard position, SearchLimits limits)
+    {
+        long start = System.currentTimeMillis();
+        deadline = limits.getMillis() == SearchLimits.NO_LIMIT ? Long.MAX_VALUE : start + limits.getMillis();
+        stopped = false;
+        generation++;
+        root.copyFrom(position);
+        arena.reset();
+        for(long played = 0; !stopped && played < limits.getNodes(); played = playouts())
+        {
+            long round = Math.min(limits.getNodes() - played, (long) ROUND_PLAYOUTS * pool.getParallelism());
+            pool.invoke(new Playouts((int) round));
+            if(System.currentTimeMillis() >= deadline || arena.state(0) > NodeArena.EXPANDED) break;
+        }
+        return result(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Asks the search to stop as soon as it can. Safe to call from any thread.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+
+    /**
+     * Stops the playout threads for good. The search cannot be used afterwards.
+     */
+    public void shutdown()
+    {
+        stop();
+        pool.shutdownNow();
+    }
+
+    public int getThreads()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return the number of nodes in the tree of the last search
+     */
+    public int getTreeSize()
+    {
+        return arena.size();
+    }
+
+    private long playouts()
+    {
+        long playouts = 0;
+        for(Worker worker : workers) if(worker.generation == generation) playouts += worker.playouts;
+        return playouts;
+    }
+
+    private SearchResult result(long millis)
+    {
+        int[] pv = new int[PV_LENGTH];
+        int length = 0;
+        int bestChild = -1;
+        for(int node = 0; length < PV_LENGTH && arena.state(node) == NodeArena.EXPANDED; )
+        {
+            int best = -1;
+            for(int child = arena.firstChild(node), end = child + arena.childCount(node); child < end; child++)
+            {
+                if(arena.visits(child) > 0 && (best < 0 || arena.visits(child) > arena.visits(best))) best = child;
+            }
+            if(best < 0) break;
+            if(length == 0) bestChild = best;
+            pv[length++] = arena.move(best);
+            node = best;
+        }
+        int score = 0;
+        if(bestChild >= 0 && arena.state(bestChild) == NodeArena.MATED) score = Search.MATE - 1;
+        else if(bestChild >= 0) score = centipawns((double) arena.value(bestChild) / (NodeArena.VALUE_ONE * (double) arena.visits(bestChild)));
+        else if(arena.state(0) == NodeArena.MATED) score = -Search.MATE;
+
+        List<Long> counts = new ArrayList<>();
+        for(Worker worker : workers) if(worker.generation == generation && worker.playouts > 0) counts.add(worker.playouts);
+        long[] threadNodes = new long[Math.max(counts.size(), 1)];
+        for(int i = 0; i < counts.size(); i++) threadNodes[i] = counts.get(i);
+        return new SearchResult(length == 0 ? firstMove() : pv[0], score, length, millis, Arrays.copyOf(pv, length), threadNodes);
+    }
+
+    /**
+     * @return a legal move of the root when no playout finished, or {@link Move#NONE} if there is none
+     */
+    private int firstMove()
+    {
+        MoveList moves = new MoveList();
+        return MoveGenerator.generateLegal(root, root.sideToMove(), moves) == 0 ? Move.NONE : moves.get(0);
+    }
+
+    /**
+     * @param result an expected result between 0 and 1
+     * @return the evaluation that the logistic curve turns into that result
+     */
+    private static int centipawns(double result)
+    {
+        double clamped = Math.max(Math.min(result, 1 - 1e-9), 1e-9);
+        double score = -WIN_SCALE * Math.log(1 / clamped - 1);
+        return (int) Math.max(Math.min(score, Search.MATE_BOUND - 1), -(Search.MATE_BOUND - 1));
+    }
+
+    /**
+     * @return the expected result of the evaluation for the side to move, between 0 and 1
+     */
+    private static double expectedResult(int score)
+    {
+        return 1 / (1 + Math.exp(-score / WIN_SCALE));
+    }
+
+    /**
+     * A share of the playouts of a round, split in halves until it is small enough to run.
+     */
+    private final class Playouts extends RecursiveAction {
+        private final int count;
+
+        Playouts(int count) {
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if(count > BATCH_PLAYOUTS)
+            {
+                invokeAll(new Playouts(count / 2), new Playouts(count - count / 2));
+                return;
+            }
+            Worker worker = (Worker) Thread.currentThread();
+            if(worker.generation != generation)
+            {
+                worker.generation = generation;
+                worker.playouts = 0;
+            }
+            for(int i = 0; i < count && !stopped; i++)
+            {
+                if(System.currentTimeMillis() >= deadline)
+                {
+                    stopped = true;
+                    break;
+                }
+                worker.playout();
+                worker.playouts++;
+            }
+        }
+    }
+
+    /**
+     * A pool thread, with the board and lists its playouts work on.
+     */
+    private final class Worker extends ForkJoinWorkerThread {
+        private final BitBoard board = new BitBoard();
+        private final MoveList moves = new MoveList();
+        private final int[] childMoves = new int[MoveList.CAPACITY];
+        private final float[] childPriors = new float[MoveList.CAPACITY];
+        private final int[] path = new int[MAX_TREE_DEPTH + 1];
+        private final PawnCache pawnCache = new PawnCache(1 << 16);
+        private int generation;
+        private long playouts; //published to the caller when the round joins
+
+        Worker(ForkJoinPool pool) {
+            super(pool);
+            setDaemon(true);
+            setName("mcts-" + getPoolIndex());
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            workers.add(this);
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            workers.remove(this);
+            super.onTermination(exception);
+        }
+
+        /**
+         * Goes down the tree from the root to a leaf, expands it, plays out from it and adds the result to
+         * the path.
+         */
+        void playout()
+        {
+            board.copyFrom(root);
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            double result; //for the side to move on the board
+            while(true)
+            {
+                arena.add(node, VIRTUAL_LOSS, 0);
+                int state = arena.state(node);
+                if(state == NodeArena.MATED)
+                {
+                    result = 0;
+                    break;
+                }
+                if(state == NodeArena.DRAWN)
+                {
+                    result = 0.5;
+                    break;
+                }
+                if(state != NodeArena.EXPANDED || depth == MAX_TREE_DEPTH)
+                {
+                    //a new node is expanded by the first thread to reach it; the others only play out from it
+                    if(state == NodeArena.NEW && !arena.isFull() && arena.claim(node)) expand(node);
+                    state = arena.state(node);
+                    result = state == NodeArena.MATED ? 0 : state == NodeArena.DRAWN ? 0.5 : rollout();
+                    break;
+                }
+                node = select(node);
+                board.makeMove(arena.move(node));
+                path[++depth] = node;
+            }
+            //each node holds the result of the side that moved into it, the opposite of the side to move there
+            for(int i = depth; i >= 0; i--)
+            {
+                result = 1 - result;
+                arena.add(path[i], 1 - VIRTUAL_LOSS, Math.round(result * NodeArena.VALUE_ONE));
+            }
+        }
+
+        /**
+         * @return the child with the best PUCT score
+         */
+        private int select(int node)
+        {
+            int parentVisits = arena.visits(node);
+            double explore = EXPLORATION * Math.sqrt(Math.max(parentVisits, 1));
+            //unvisited children start a little below the parent, seen from the side to move at the parent
+            double firstPlay = parentVisits == 0 ? 0.5
+                    : 1 - (double) arena.value(node) / (NodeArena.VALUE_ONE * (double) parentVisits) - FIRST_PLAY_REDUCTION;
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for(int child = arena.firstChild(node), end = child + arena.childCount(node); child < end; child++)
+            {
+                int visits = arena.visits(child);
+                double average = visits == 0 ? firstPlay : (double) arena.value(child) / (NodeArena.VALUE_ONE * (double) visits);
+                double score = average + explore * arena.prior(child) / (1 + visits);
+                if(score > bestScore)
+                {
+                    bestScore = score;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        private void expand(int node)
+        {
+            int count = MoveGenerator.generateLegal(board, board.sideToMove(), moves);
+            if(count == 0 || board.halfmoveClock() >= 100)
+            {
+                boolean mated = count == 0 && board.isInCheck(board.sideToMove());
+                arena.finish(node, mated ? NodeArena.MATED : NodeArena.DRAWN);
+                return;
+            }
+            float total = 0;
+            for(int i = 0; i < count; i++)
+            {
+                childMoves[i] = moves.get(i);
+                childPriors[i] = weight(board, childMoves[i]);
+                total += childPriors[i];
+            }
+            for(int i = 0; i < count; i++) childPriors[i] /= total;
+            arena.expand(node, childMoves, childPriors, count);
+        }
+
+        /**
+         * Plays a few weighted random moves and evaluates the position they lead to.
+         * @return the expected result for the side to move on the board before the playout
+         */
+        private double rollout()
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int plies = 0;
+            for(; plies < PLAYOUT_PLIES; plies++)
+            {
+                if(board.halfmoveClock() >= 100) return 0.5;
+                int count = MoveGenerator.generateLegal(board, board.sideToMove(), moves);
+                if(count == 0)
+                {
+                    double result = board.isInCheck(board.sideToMove()) ? 0 : 0.5;
+                    return plies % 2 == 0 ? result : 1 - result;
+                }
+                float total = 0;
+                for(int i = 0; i < count; i++)
+                {
+                    childPriors[i] = weight(board, moves.get(i));
+                    total += childPriors[i];
+                }
+                float pick = random.nextFloat() * total;
+                int chosen = 0;
+                while(chosen < count - 1 && (pick -= childPriors[chosen]) >= 0) chosen++;
+                board.makeMove(moves.get(chosen));
+            }
+            double result = expectedResult(Evaluation.evaluate(board, pawnCache));
+            return plies % 2 == 0 ? result : 1 - result;
+        }
+    }
+
+    /**
+     * @return the unnormalized prior of a legal move: 1 for a quiet move, more for captures of valuable
+     * pieces and for promotions to a queen
+     */
+    private static float weight(BitBoard board, int move)
+    {
+        int to = Move.to(move);
+        float weight = 1;
+        if(board.colourAt(to) == 1 - board.sideToMove()) weight += 1 + Evaluation.PIECE_VALUES[board.typeAt(to)] / 100f;
+        else if(to == board.epSquare() && board.typeAt(Move.from(move)) == BitBoard.PAWN) weight += 2;
+        if(Move.promotion(move) == BitBoard.QUEEN) weight += 8;
+        return weight;
+    }
+}
@@ -0,0 +1,189 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+
+/**
+ * Hands out the legal moves of a position one at a time, the likely best first, generating them in stages
+ * so that an early cutoff saves the work of the later stages:
+ * <ol>
+ *     <li>the move from the transposition table, tested for legality but not generated</li>
+ *     <li>captures and queen promotions, the most valuable victim first and among those the least valuable
+ *     attacker first (MVV-LVA)</li>
+ *     <li>the killer moves of the ply: quiet moves that caused a cutoff in a sibling position</li>
+ *     <li>the other quiet moves, ordered by the butterfly history table of the search, which counts the
+ *     cutoffs of each move by its from and to squares</li>
+ * </ol>
+ * The quiescence search only wants the captures: {@link #initNoisy} skips every stage but the second.
+ * <p>
+ * Moves are never handed out twice. A picker belongs to one ply of one search and is reused for every
+ * position searched at that ply, so picking allocates nothing.
+ */
+class MovePicker {
+    private static final int HASH = 0;
+    private static final int GENERATE_NOISY = 1;
+    private static final int NOISY = 2;
+    private static final int FIRST_KILLER = 3;
+    private static final int SECOND_KILLER = 4;
+    private static final int GENERATE_QUIET = 5;
+    private static final int QUIET = 6;
+    private static final int DONE = 7;
+
+    private final MoveList moves = new MoveList();
+    private final int[] scores = new int[MoveList.CAPACITY];
+    private BitBoard board;
+    private int hashMove;
+    private int firstKiller;
+    private int secondKiller;
+    private int[] history;
+    private int stage;
+    private int index;
+    private boolean noisyOnly;
+
+    /**
+     * Starts picking the moves of a new position.
+     * @param board the position, which must not change until the last move is picked, other than by moves
+     *              played and taken back
+     * @param hashMove the move from the transposition table, or {@link Move#NONE}
+     * @param firstKiller the newest killer move of the ply, or {@link Move#NONE}
+     * @param secondKiller the older killer move of the ply, or {@link Move#NONE}
+     * @param history the history scores of the side to move, indexed by from * 64 + to
+     */
+    void init(BitBoard board, int hashMove, int firstKiller, int secondKiller, int[] history)
+    {
+        this.board = board;
+        this.hashMove = hashMove;
+        this.firstKiller = firstKiller;
+        this.secondKiller = secondKiller;
+        this.history = history;
+        noisyOnly = false;
+        stage = HASH;
+    }
+
+    /**
+     * Starts picking only the captures and queen promotions of a new position, by MVV-LVA.
+     * @param board the position, see {@link #init}
+     */
+    void initNoisy(BitBoard board)
+    {
+        this.board = board;
+        hashMove = Move.NONE;
+        noisyOnly = true;
+        stage = GENERATE_NOISY;
+    }
+
+    /**
+     * @return the next move, or {@link Move#NONE} when every legal move has been picked
+     */
+    int next()
+    {
+        switch(stage)
+        {
+            case HASH:
+                stage = GENERATE_NOISY;
+                if(hashMove != Move.NONE && MoveGenerator.isLegal(board, hashMove)) return hashMove;
+                hashMove = Move.NONE;
+                //fall through
+            case GENERATE_NOISY:
+                MoveGenerator.generateNoisy(board, board.sideToMove(), moves);
+                for(int i = 0; i < moves.size(); i++) scores[i] = mvvLva(moves.get(i));
+                index = 0;
+                stage = NOISY;
+                //fall through
+            case NOISY:
+                while(index < moves.size())
+                {
+                    int move = pickBest();
+                    if(move != hashMove) return move;
+                }
+                if(noisyOnly)
+                {
+                    stage = DONE;
+                    return Move.NONE;
+                }
+                stage = FIRST_KILLER;
+                //fall through
+            case FIRST_KILLER:
+                stage = SECOND_KILLER;
+                if(isUsableKiller(firstKiller)) return firstKiller;
+                //fall through
+            case SECOND_KILLER:
+                stage = GENERATE_QUIET;
+                if(secondKiller != firstKiller && isUsableKiller(secondKiller)) return secondKiller;
+                //fall through
+            case GENERATE_QUIET:
+                MoveGenerator.generateQuiet(board, board.sideToMove(), moves);
+                for(int i = 0; i < moves.size(); i++)
+                {
+                    int move = moves.get(i);
+                    scores[i] = history[Move.from(move) * 64 + Move.to(move)];
+                }
+                index = 0;
+                stage = QUIET;
+                //fall through
+            case QUIET:
+                while(index < moves.size())
+                {
+                    int move = pickBest();
+                    if(move != hashMove && move != firstKiller && move != secondKiller) return move;
+                }
+                stage = DONE;
+                //fall through
+            default:
+                return Move.NONE;
+        }
+    }
+
+    /**
+     * A killer comes from another position, so it must be legal here, and must be a quiet move, or the
+     * capture stage has already picked it.
+     */
+    private boolean isUsableKiller(int killer)
+    {
+        return killer != Move.NONE && killer != hashMove && isQuiet(board, killer) && MoveGenerator.isLegal(board, killer);
+    }
+
+    /**
+     * @return true if the move belongs to the quiet stage: it captures nothing and does not promote, or it
+     * promotes to a knight, bishop or rook, see {@link MoveGenerator#generateQuiet}
+     */
+    static boolean isQuiet(BitBoard board, int move)
+    {
+        int to = Move.to(move);
+        if(Move.promotion(move) != 0) return Move.promotion(move) != BitBoard.QUEEN;
+        if(board.colourAt(to) == 1 - board.sideToMove()) return false;
+        return !(board.typeAt(Move.from(move)) == BitBoard.PAWN && to == board.epSquare());
+    }
+
+    private int mvvLva(int move)
+    {
+        int victim = board.typeAt(Move.to(move));
+        //en passant, or a promotion onto an empty square
+        if(victim < 0) victim = BitBoard.PAWN;
+        int score = 10 * Evaluation.PIECE_VALUES[victim] - board.typeAt(Move.from(move));
+        if(Move.promotion(move) != 0) score += Evaluation.PIECE_VALUES[Move.promotion(move)];
+        return score;
+    }
+
+    /**
+     * Selection sort step: swaps the best scored of the remaining moves into place and returns it.
+     */
+    private int pickBest()
+    {
+        int best = index;
+        for(int i = index + 1; i < moves.size(); i++)
+        {
+            if(scores[i] > scores[best]) best = i;
+        }
+        int move = moves.get(best);
+        moves.set(best, moves.get(index));
+        moves.set(index, move);
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        index++;
+        return move;
+    }
+}
@@ -0,0 +1,218 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The weights of an efficiently updatable neural network (NNUE) evaluation, read from a memory mapped
+ * file, so loading costs nothing up front and every search thread shares the same pages. Immutable.
+ * <p>
+ * The input layer is HalfKP: for each side, one input per square of its king, piece other than a king and
+ * square of that piece, 64 * 10 * 64 inputs. Each side sees the board from its own point of view, so black
+ * squares are mirrored and the pieces are split into its own and the enemy's. The inputs feed a hidden layer
+ * of int16 accumulators per side, see {@link Nnue}; the output is a dot product of both halves, clipped to
+ * 0-127, with the output weights.
+ * <p>
+ * The file is little endian:
+ * <ul>
+ *     <li>header: the magic number {@link #MAGIC}, the version, the hidden layer size and the divisor of
+ *     the output, one int each</li>
+ *     <li>input weights: int16, {@link #FEATURES} rows of one weight per hidden unit</li>
+ *     <li>hidden biases: int16, one per hidden unit</li>
+ *     <li>output weights: int16, for the hidden units of the side to move, then those of the other side,
+ *     each at most {@link #MAX_OUTPUT_WEIGHT} in size, so a product with a clipped unit fits in an int16</li>
+ *     <li>output bias: one int</li>
+ * </ul>
+ * The score is the output divided by the divisor, in centipawns for the side to move.
+ */
+public final class Network {
+    public static final int MAGIC = 0x45554E43; //"CNUE" in a little endian file
+    public static final int VERSION = 1;
+    public static final int FEATURES = 64 * 10 * 64;
+    public static final int MAX_OUTPUT_WEIGHT = Short.MAX_VALUE / 127;
+    public static final int CLIP = 127;
+    /** System property holding the path of the network file the engine loads, none by default. */
+    public static final String FILE_PROPERTY = "chess.nnue";
+
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer weights;
+    private final int hidden;
+    private final int divisor;
+    private final int biasOffset;
+    private final int outputOffset;
+    private final int outputBias;
+
+    private Network(ByteBuffer weights) {
+        this.weights = weights;
+        if(weights.capacity() < HEADER_BYTES || weights.getInt(0) != MAGIC) throw new IllegalArgumentException("Not a network file");
+        if(weights.getInt(4) != VERSION) throw new IllegalArgumentException("Unknown network version: " + weights.getInt(4));
+        hidden = weights.getInt(8);
+        divisor = weights.getInt(12);
+        if(hidden <= 0 || hidden > 4096 || divisor <= 0) throw new IllegalArgumentException("Bad network header");
+        biasOffset = HEADER_BYTES + 2 * FEATURES * hidden;
+        outputOffset = biasOffset + 2 * hidden;
+        if(weights.capacity() != outputOffset + 4 * hidden + 4) throw new IllegalArgumentException("Network file has the wrong size");
+        for(int i = 0; i < 2 * hidden; i++)
+        {
+            if(Math.abs(weights.getShort(outputOffset + 2 * i)) > MAX_OUTPUT_WEIGHT)
+            {
+                throw new IllegalArgumentException("Output weight out of range: " + weights.getShort(outputOffset + 2 * i));
+            }
+        }
+        outputBias = weights.getInt(outputOffset + 4 * hidden);
+    }
+
+    /**
+     * Maps a network file into memory.
+     * @param file the network file
+     * @return the network
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a network file
+     */
+    public static Network load(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if(channel.size() > Integer.MAX_VALUE) throw new IllegalArgumentException("Network file too large: " + file);
+            return new Network(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * @return the network in the file named by the {@link #FILE_PROPERTY} system property, or null if it is not set
+     * @throws IOException if the file cannot be read
+     */
+    public static Network fromConfig() throws IOException
+    {
+        String file = System.getProperty(FILE_PROPERTY);
+        return file == null ? null : load(Paths.get(file));
+    }
+
+    /**
+     * @param perspective the colour index of the side whose accumulator gets the input
+     * @param king the square of the king of that side
+     * @param code the code of the piece, colour * 6 + type + 1, not a king
+     * @param square the square of the piece
+     * @return the index of the input
+     */
+    public static int featureIndex(int perspective, int king, int code, int square)
+    {
+        int colour = (code - 1) / 6;
+        int type = (code - 1) % 6;
+        if(perspective == BitBoard.BLACK)
+        {
+            king ^= 56;
+            square ^= 56;
+        }
+        int piece = (colour == perspective ? 0 : 5) + type;
+        return (king * 10 + piece) * 64 + square;
+    }
+
+    public int getHidden()
+    {
+        return hidden;
+    }
+
+    public int getDivisor()
+    {
+        return divisor;
+    }
+
+    public int getOutputBias()
+    {
+        return outputBias;
+    }
+
+    /**
+     * @return the mapped file, little endian; read only
+     */
+    ByteBuffer weights()
+    {
+        return weights;
+    }
+
+    /**
+     * @return the byte offset of the row of input weights of the feature
+     */
+    int featureOffset(int feature)
+    {
+        return HEADER_BYTES + 2 * feature * hidden;
+    }
+
+    int biasOffset()
+    {
+        return biasOffset;
+    }
+
+    /**
+     * @param them false for the weights of the side to move, true for those of the other side
+     */
+    int outputOffset(boolean them)
+    {
+        return them ? outputOffset + 2 * hidden : outputOffset;
+    }
+
+    /**
+     * Writes a network that counts material, to try the evaluation out before a trained network exists.
+     * The first ten hidden units of each side count its own and the enemy pieces by type, eight per piece,
+     * and only the units of the side to move feed the output.
+     * @param file the file to write
+     * @param hidden the hidden layer size, at least 10
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeMaterialNetwork(Path file, int hidden) throws IOException
+    {
+        if(hidden < 10) throw new IllegalArgumentException("The hidden layer needs at least 10 units");
+        int divisor = 2;
+        int perPiece = 8;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 2 * FEATURES * hidden + 4 * hidden + 4 + 2 * hidden)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hidden).putInt(divisor);
+        for(int feature = 0; feature < FEATURES; feature++)
+        {
+            int piece = (feature >>> 6) % 10;
+            for(int unit = 0; unit < hidden; unit++) buffer.putShort((short) (unit == piece ? perPiece : 0));
+        }
+        for(int unit = 0; unit < hidden; unit++) buffer.putShort((short) 0);
+        for(int unit = 0; unit < 2 * hidden; unit++)
+        {
+            int weight = 0;
+            //the output is perPiece * weight / divisor per piece, which is its value rounded to 4 centipawns
+            if(unit < 5) weight = Math.round(Evaluation.PIECE_VALUES[unit] / 4f);
+            else if(unit < 10) weight = -Math.round(Evaluation.PIECE_VALUES[unit - 5] / 4f);
+            buffer.putShort((short) weight);
+        }
+        buffer.putInt(0);
+        buffer.flip();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while(buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /**
+     * Usage: {@code Network <file> [hidden]} writes a material counting network, see {@link #writeMaterialNetwork}.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            System.err.println("Usage: Network <file> [hidden]");
+            System.exit(2);
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        writeMaterialNetwork(file, args.length > 1 ? Integer.parseInt(args[1]) : 256);
+        System.out.println("Wrote " + Files.size(file) + " bytes to " + file);
+    }
+}
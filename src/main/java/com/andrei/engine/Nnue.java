@@ -0,0 +1,165 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Evaluates positions with a {@link Network}, keeping the hidden layer accumulators of every ply of a search
+ * so each move only adds and subtracts the weight rows of the few inputs it changes.
+ * <p>
+ * The accumulators form a stack indexed by ply. {@link #refresh} computes the root from scratch; after
+ * every move or null move played at ply p, {@link #update} derives ply p + 1 from ply p, and taking the move
+ * back costs nothing, since ply p is still there. The changed squares are found by comparing the mailbox of
+ * the board with the one saved at the parent ply, so the update works for any kind of move. When a king
+ * moves, all the inputs of its side change, and that side is computed from scratch instead.
+ * <p>
+ * An evaluator belongs to one search thread; the network may be shared.
+ */
+public class Nnue {
+    private final Network network;
+    private final NnueKernels kernels;
+    private final ByteBuffer weights;
+    private final int hidden;
+    private final short[][] accumulators; //per ply, the white half then the black half
+    private final long[][] mailboxes; //per ply, the mailbox words the accumulators were computed for
+    private final int[][] kings; //per ply, the king squares of both colours
+
+    /**
+     * @param network the weights
+     * @param maxPly the number of plies of the stack
+     */
+    public Nnue(Network network, int maxPly) {
+        this(network, maxPly, true);
+    }
+
+    /**
+     * @param allowVector false to use the scalar loops even if the Vector API is available
+     */
+    public Nnue(Network network, int maxPly, boolean allowVector) {
+        this.network = network;
+        this.kernels = allowVector ? NnueKernels.best() : new ScalarNnueKernels();
+        this.weights = network.weights();
+        this.hidden = network.getHidden();
+        accumulators = new short[maxPly][2 * hidden];
+        mailboxes = new long[maxPly][8];
+        kings = new int[maxPly][2];
+    }
+
+    /**
+     * @return true if the evaluations run on the Vector API, false if on scalar loops
+     */
+    public boolean isVectorized()
+    {
+        return !(kernels instanceof ScalarNnueKernels);
+    }
+
+    public Network getNetwork()
+    {
+        return network;
+    }
+
+    /**
+     * Computes the accumulators of the ply from scratch.
+     * @param board the position at the ply
+     */
+    public void refresh(BitBoard board, int ply)
+    {
+        for(int row = 0; row < 8; row++) mailboxes[ply][row] = board.mailbox(row);
+        for(int side = BitBoard.WHITE; side <= BitBoard.BLACK; side++) refresh(board, ply, side);
+    }
+
+    private void refresh(BitBoard board, int ply, int side)
+    {
+        short[] accumulator = accumulators[ply];
+        int offset = side * hidden;
+        int king = board.kingSquare(side);
+        kings[ply][side] = king;
+        for(int i = 0; i < hidden; i++) accumulator[offset + i] = weights.getShort(network.biasOffset() + 2 * i);
+        if(king < 0) return;
+        for(long pieces = board.occupied() & ~board.pieces(BitBoard.WHITE, BitBoard.KING)
+                & ~board.pieces(BitBoard.BLACK, BitBoard.KING); pieces != 0; pieces &= pieces - 1)
+        {
+            int square = Long.numberOfTrailingZeros(pieces);
+            int feature = Network.featureIndex(side, king, board.codeAt(square), square);
+            kernels.add(accumulator, offset, weights, network.featureOffset(feature), hidden);
+        }
+    }
+
+    /**
+     * Derives the accumulators of the ply from those of the ply before, after a move or null move.
+     * @param board the position at the ply
+     * @param ply the ply the move led to, at least 1
+     */
+    public void update(BitBoard board, int ply)
+    {
+        short[] parent = accumulators[ply - 1];
+        short[] child = accumulators[ply];
+        int refreshed = 0; //bit set of the colours computed from scratch
+        for(int side = BitBoard.WHITE; side <= BitBoard.BLACK; side++)
+        {
+            if(board.kingSquare(side) != kings[ply - 1][side])
+            {
+                refresh(board, ply, side);
+                refreshed |= 1 << side;
+            }
+            else
+            {
+                System.arraycopy(parent, side * hidden, child, side * hidden, hidden);
+                kings[ply][side] = kings[ply - 1][side];
+            }
+        }
+        for(int row = 0; row < 8; row++)
+        {
+            long before = mailboxes[ply - 1][row];
+            long after = board.mailbox(row);
+            mailboxes[ply][row] = after;
+            for(long changed = before ^ after; changed != 0; )
+            {
+                int shift = Long.numberOfTrailingZeros(changed) & ~7;
+                changed &= ~(0xFFL << shift);
+                int square = row * 8 + (shift >>> 3);
+                int removed = (int) (before >>> shift) & 0xFF;
+                int added = (int) (after >>> shift) & 0xFF;
+                for(int side = BitBoard.WHITE; side <= BitBoard.BLACK; side++)
+                {
+                    if((refreshed & (1 << side)) != 0) continue;
+                    int offset = side * hidden;
+                    int king = kings[ply][side];
+                    if(isInput(removed))
+                    {
+                        int feature = Network.featureIndex(side, king, removed, square);
+                        kernels.subtract(child, offset, weights, network.featureOffset(feature), hidden);
+                    }
+                    if(isInput(added))
+                    {
+                        int feature = Network.featureIndex(side, king, added, square);
+                        kernels.add(child, offset, weights, network.featureOffset(feature), hidden);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the piece code is an input of the network: a piece other than a king
+     */
+    private static boolean isInput(int code)
+    {
+        return code != 0 && (code - 1) % 6 != BitBoard.KING;
+    }
+
+    /**
+     * @param board the position at the ply, to read the side to move
+     * @return the score in centipawns, positive if the side to move is ahead
+     */
+    public int evaluate(BitBoard board, int ply)
+    {
+        int us = board.sideToMove();
+        short[] accumulator = accumulators[ply];
+        long output = network.getOutputBias()
+                + (long) kernels.clippedDot(accumulator, us * hidden, weights, network.outputOffset(false), hidden)
+                + kernels.clippedDot(accumulator, (1 - us) * hidden, weights, network.outputOffset(true), hidden);
+        return (int) Math.max(Math.min(output / network.getDivisor(), Search.MATE_BOUND - 1), -(Search.MATE_BOUND - 1));
+    }
+}
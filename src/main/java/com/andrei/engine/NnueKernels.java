@@ -0,0 +1,45 @@
+package com.andrei.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The inner loops of the neural network evaluation, over int16 accumulators and little endian int16
+ * weights in the network file. {@link #best()} picks the vectorized loops when the jdk.incubator.vector
+ * module is present at run time, started with {@code --add-modules jdk.incubator.vector}, and the scalar
+ * loops otherwise. Both give the same results.
+ */
+interface NnueKernels {
+    /**
+     * Adds a row of weights to an accumulator, lane by lane, wrapping around like int16 arithmetic.
+     */
+    void add(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length);
+
+    /**
+     * Subtracts a row of weights from an accumulator, lane by lane, wrapping around like int16 arithmetic.
+     */
+    void subtract(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length);
+
+    /**
+     * @return the sum of the accumulator values, each clipped to 0-{@link Network#CLIP}, times the weights
+     */
+    int clippedDot(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length);
+
+    /**
+     * @return the vectorized kernels if the Vector API is available, the scalar ones otherwise
+     */
+    static NnueKernels best()
+    {
+        if(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+        {
+            try
+            {
+                return new VectorNnueKernels();
+            }
+            catch(LinkageError e)
+            {
+                //the module is there but this module cannot read it: fall back to the scalar loops
+            }
+        }
+        return new ScalarNnueKernels();
+    }
+}
@@ -0,0 +1,175 @@
+package com.andrei.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The nodes of a Monte Carlo search tree, see {@link Mcts}, as parallel arrays of primitives indexed by
+ * node number. The arrays are allocated once and reused by every search, so growing a tree of millions of
+ * nodes creates no objects for the garbage collector. The children of a node are allocated together, in
+ * consecutive slots, by bumping a shared counter; nothing is freed until {@link #reset}.
+ * <p>
+ * Node 0 is the root. The expansion state goes from {@link #NEW} to {@link #EXPANDING}, claimed by one
+ * thread with a compare-and-set, then to {@link #EXPANDED} or one of the terminal states. The children are
+ * written before the release of the new state, so a thread that reads an expanded state with acquire also
+ * sees them. Visits and values are updated atomically by every thread going through the node.
+ */
+final class NodeArena {
+    static final int NEW = 0;
+    static final int EXPANDING = 1;
+    static final int EXPANDED = 2;
+    static final int MATED = 3; //no legal move and in check: lost for the side to move
+    static final int DRAWN = 4; //stalemate or fifty move rule
+
+    /** Bytes taken by one node in the arrays. */
+    static final int NODE_BYTES = 32;
+    /** A value of 1, a win for the side that moved into the node; values are sums of fixed point results. */
+    static final long VALUE_ONE = 1 << 16;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int[] moves; //the move leading to the node
+    private final float[] priors; //the share of the visits the selection aims to give the node at first
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] states;
+    private final int[] visits; //including virtual losses of the playouts going through the node
+    private final long[] values; //sum of the results, for the side that moved into the node
+    private final AtomicInteger next = new AtomicInteger(1);
+
+    /**
+     * @param capacity the number of nodes, at least 1
+     */
+    NodeArena(int capacity) {
+        moves = new int[capacity];
+        priors = new float[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        states = new int[capacity];
+        visits = new int[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Frees every node and makes node 0 a new root. Only called while no search runs.
+     */
+    void reset()
+    {
+        next.set(1);
+        clear(0, 0, 0);
+    }
+
+    private void clear(int node, int move, float prior)
+    {
+        moves[node] = move;
+        priors[node] = prior;
+        firstChild[node] = 0;
+        childCount[node] = 0;
+        states[node] = NEW;
+        visits[node] = 0;
+        values[node] = 0;
+    }
+
+    /**
+     * Allocates the children of a node that is being expanded and publishes the new state.
+     * @param moves the moves of the children
+     * @param priors the priors of the children, in the same order
+     * @return false if the arena is full, in which case the node stays new
+     */
+    boolean expand(int node, int[] moves, float[] priors, int count)
+    {
+        int first = next.getAndAdd(count);
+        if(first + count > this.moves.length || first + count < 0)
+        {
+            next.set(this.moves.length); //stops the counter short of overflowing
+            INTS.setRelease(states, node, NEW);
+            return false;
+        }
+        for(int i = 0; i < count; i++) clear(first + i, moves[i], priors[i]);
+        firstChild[node] = first;
+        childCount[node] = count;
+        INTS.setRelease(states, node, EXPANDED);
+        return true;
+    }
+
+    /**
+     * @return true if this thread now owns the expansion of the node
+     */
+    boolean claim(int node)
+    {
+        return INTS.compareAndSet(states, node, NEW, EXPANDING);
+    }
+
+    /**
+     * Marks a node being expanded as terminal.
+     * @param state {@link #MATED} or {@link #DRAWN}
+     */
+    void finish(int node, int state)
+    {
+        INTS.setRelease(states, node, state);
+    }
+
+    int state(int node)
+    {
+        return (int) INTS.getAcquire(states, node);
+    }
+
+    int move(int node)
+    {
+        return moves[node];
+    }
+
+    float prior(int node)
+    {
+        return priors[node];
+    }
+
+    int firstChild(int node)
+    {
+        return firstChild[node];
+    }
+
+    int childCount(int node)
+    {
+        return childCount[node];
+    }
+
+    int visits(int node)
+    {
+        return (int) INTS.getOpaque(visits, node);
+    }
+
+    long value(int node)
+    {
+        return (long) LONGS.getOpaque(values, node);
+    }
+
+    /**
+     * Adds visits and a result to the node.
+     */
+    void add(int node, int visits, long value)
+    {
+        INTS.getAndAdd(this.visits, node, visits);
+        if(value != 0) LONGS.getAndAdd(values, node, value);
+    }
+
+    boolean isFull()
+    {
+        return next.get() >= moves.length;
+    }
+
+    /**
+     * @return the number of nodes in use
+     */
+    int size()
+    {
+        return Math.min(next.get(), moves.length);
+    }
+
+    int capacity()
+    {
+        return moves.length;
+    }
+}
@@ -0,0 +1,173 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * An opening book read from a memory mapped file written by {@link BookBuilder}: the moves played in each
+ * position of a game collection, with their weights. A probe is a binary search of the mapped file, so a book
+ * move costs no search and nothing on the heap, and every thread shares the pages. Immutable.
+ * <p>
+ * The file has the layout of a Polyglot book: entries of 16 bytes, big endian, sorted by key:
+ * <ul>
+ *     <li>the key of the position, 8 bytes, compared unsigned</li>
+ *     <li>the move, 2 bytes: the target square in bits 0-5, the start square in bits 6-11 and the promotion
+ *     piece, 1 for a knight to 4 for a queen, in bits 12-14; castling is the king taking its own rook</li>
+ *     <li>the weight, 2 bytes: how good the move scored, 2 points for a win and 1 for a draw, scaled down
+ *     when the best move of the position has more than 65535</li>
+ *     <li>the number of games that played the move, 4 bytes, in the learn field of Polyglot</li>
+ * </ul>
+ * The entries of a position go from the highest weight down. The keys are the Zobrist keys of
+ * {@link BitBoard#key()}, not the Polyglot ones, so the files have the same layout as Polyglot books but
+ * are not interchangeable with them. Moves are checked against the legal moves, so a key shared by two
+ * positions never gives an illegal move.
+ */
+public final class OpeningBook {
+    public static final int ENTRY_BYTES = 16;
+    /** System property holding the path of the book file the engine plays from, none by default. */
+    public static final String FILE_PROPERTY = "chess.book";
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private OpeningBook(ByteBuffer entries) {
+        if(entries.capacity() % ENTRY_BYTES != 0) throw new IllegalArgumentException("Book file has the wrong size");
+        this.entries = entries;
+        size = entries.capacity() / ENTRY_BYTES;
+    }
+
+    /**
+     * Maps a book file into memory.
+     * @param file the book file
+     * @return the book
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a book file
+     */
+    public static OpeningBook load(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if(channel.size() > Integer.MAX_VALUE) throw new IllegalArgumentException("Book file too large: " + file);
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    /**
+     * @return the book in the file named by the {@link #FILE_PROPERTY} system property, or null if it is not set
+     * @throws IOException if the file cannot be read
+     */
+    public static OpeningBook fromConfig() throws IOException
+    {
+        String file = System.getProperty(FILE_PROPERTY);
+        return file == null ? null : load(Paths.get(file));
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the index of the first entry of the key, or of the first entry with a greater key
+     */
+    private int first(long key)
+    {
+        int low = 0;
+        int high = size;
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(Long.compareUnsigned(entries.getLong(middle * ENTRY_BYTES), key) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @param board the position, left unchanged
+     * @return the legal book move with the highest weight, or {@link Move#NONE} if the position is not in the book
+     */
+    public int bestMove(BitBoard board)
+    {
+        long key = board.key();
+        for(int i = first(key); i < size && entries.getLong(i * ENTRY_BYTES) == key; i++)
+        {
+            int move = move(i);
+            if(MoveGenerator.isLegal(board, move)) return move;
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Picks a book move at random, each legal move with a chance in proportion to its weight, so the engine
+     * does not always play the same opening.
+     * @param board the position, left unchanged
+     * @return the move, or {@link Move#NONE} if the position is not in the book
+     */
+    public int randomMove(BitBoard board, Random random)
+    {
+        long key = board.key();
+        int start = first(key);
+        long total = 0;
+        for(int i = start; i < size && entries.getLong(i * ENTRY_BYTES) == key; i++)
+        {
+            if(MoveGenerator.isLegal(board, move(i))) total += weight(i);
+        }
+        if(total == 0) return Move.NONE;
+        long pick = (long) (random.nextDouble() * total);
+        for(int i = start; ; i++)
+        {
+            if(!MoveGenerator.isLegal(board, move(i))) continue;
+            pick -= weight(i);
+            if(pick < 0) return move(i);
+        }
+    }
+
+    /**
+     * @param board the position, left unchanged
+     * @return the number of book entries of the position
+     */
+    public int count(BitBoard board)
+    {
+        long key = board.key();
+        int start = first(key);
+        int end = start;
+        while(end < size && entries.getLong(end * ENTRY_BYTES) == key) end++;
+        return end - start;
+    }
+
+    /**
+     * @return the move of the entry, encoded with {@link Move}
+     */
+    private int move(int entry)
+    {
+        int move = entries.getShort(entry * ENTRY_BYTES + 8) & 0xFFFF;
+        return Move.of(move >>> 6 & 63, move & 63, move >>> 12 & 7);
+    }
+
+    private int weight(int entry)
+    {
+        return entries.getShort(entry * ENTRY_BYTES + 10) & 0xFFFF;
+    }
+
+    /**
+     * @return the move in the Polyglot encoding of a book entry
+     */
+    static int encode(int move)
+    {
+        return Move.to(move) | Move.from(move) << 6 | Move.promotion(move) << 12;
+    }
+}
@@ -0,0 +1,137 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.TranspositionTable;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A fixed size cache of {@link PawnStructure} results, indexed by the pawn key of the board. Most moves
+ * of a search leave the pawns alone, so sibling nodes and their subtrees find the entry of their parent.
+ * <p>
+ * Each entry is four longs: the pawn key, the packed structure score, then the shield of each colour for
+ * a king on each file, one byte per file. A new entry replaces the old one in its slot. An empty entry
+ * holds what a board without pawns would get, so it needs no marker. A cache belongs to one search thread.
+ */
+public class PawnCache {
+    /** System property holding the size of the cache of each search thread, like "1MB". */
+    public static final String SIZE_PROPERTY = "chess.pawnhash";
+    private static final String DEFAULT_SIZE = "1MB";
+
+    private static final int ENTRY_LONGS = 4;
+    private static final int ENTRY_SHIFT = 5; //32 bytes per entry
+
+    private final long[] entries;
+    private final int mask;
+    private long probes;
+    private long hits;
+
+    /**
+     * Creates an empty cache. The size is rounded down to a power of two, and is at least one entry.
+     * @param bytes the size of the cache in bytes, at most 1 GB
+     */
+    public PawnCache(long bytes) {
+        int size = (int) Long.highestOneBit(Math.max(Math.min(bytes, 1L << 30) >>> ENTRY_SHIFT, 1));
+        entries = new long[size * ENTRY_LONGS];
+        mask = size - 1;
+    }
+
+    /**
+     * @return a new empty cache, with the size given by the {@link #SIZE_PROPERTY} system property, 1 MB if it is not set
+     * @throws IllegalArgumentException if the size cannot be read
+     */
+    public static PawnCache fromConfig()
+    {
+        return new PawnCache(TranspositionTable.parseSize(System.getProperty(SIZE_PROPERTY, DEFAULT_SIZE)));
+    }
+
+    /**
+     * Finds the entry of the pawns of the board, computing it if it is not in the cache.
+     * @return the index of the entry, for {@link #score} and {@link #shield}
+     */
+    public int probe(BitBoard board)
+    {
+        long key = board.pawnKey();
+        int index = ((int) key & mask) * ENTRY_LONGS;
+        probes++;
+        if(entries[index] == key)
+        {
+            hits++;
+            return index;
+        }
+        long white = board.pieces(BitBoard.WHITE, BitBoard.PAWN);
+        long black = board.pieces(BitBoard.BLACK, BitBoard.PAWN);
+        entries[index] = key;
+        entries[index + 1] = PawnStructure.score(white, black);
+        entries[index + 2] = shields(white, BitBoard.WHITE);
+        entries[index + 3] = shields(black, BitBoard.BLACK);
+        return index;
+    }
+
+    private static long shields(long pawns, int colour)
+    {
+        long shields = 0;
+        for(int file = 0; file < 8; file++) shields |= (long) PawnStructure.shield(pawns, colour, file) << (file * 8);
+        return shields;
+    }
+
+    /**
+     * @param entry an index returned by {@link #probe}
+     * @return the packed structure score, see {@link PawnStructure#score}
+     */
+    public long score(int entry)
+    {
+        return entries[entry + 1];
+    }
+
+    /**
+     * @param entry an index returned by {@link #probe}
+     * @return the shield bonus of the colour for a king on the file, see {@link PawnStructure#shield}
+     */
+    public int shield(int entry, int colour, int file)
+    {
+        return (int) (entries[entry + 2 + colour] >>> (file * 8)) & 0xFF;
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public void clear()
+    {
+        Arrays.fill(entries, 0);
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * @return the size of the cache in bytes
+     */
+    public long size()
+    {
+        return (long) entries.length * Long.BYTES;
+    }
+
+    public long probes()
+    {
+        return probes;
+    }
+
+    public long hits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the share of probes that found their entry, 0 if there were no probes
+     */
+    public double hitRate()
+    {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "pawn cache %d KB, %d probes, %.1f%% hits", size() >>> 10, probes, 100 * hitRate());
+    }
+}
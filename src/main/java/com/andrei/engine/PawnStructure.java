@@ -0,0 +1,105 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.PieceSquareTables;
+
+/**
+ * The pawn structure terms of the evaluation: passed, isolated, doubled and backward pawns, and the shield
+ * of pawns in front of the king. Cannot be instantiated.
+ * <p>
+ * All of them depend on the pawns alone, so they are cached by the pawn key of the board, see
+ * {@link PawnCache}. The shield also depends on where the king is; it is computed for a king on each of the
+ * eight files, and the evaluation picks the one for the file its king is on.
+ */
+public class PawnStructure {
+    private PawnStructure() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    //bonus of a passed pawn, by the rank seen from its own side
+    private static final int[] PASSED_MIDDLEGAME = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_ENDGAME = {0, 10, 15, 25, 45, 75, 120, 0};
+    private static final long ISOLATED = PieceSquareTables.pack(-10, -15);
+    private static final long DOUBLED = PieceSquareTables.pack(-10, -20); //per pawn behind another on its file
+    private static final long BACKWARD = PieceSquareTables.pack(-8, -10);
+    //middlegame bonus of a shield pawn one and two squares in front of the king's rank
+    private static final int SHIELD_NEAR = 10;
+    private static final int SHIELD_FAR = 5;
+
+    private static final long[] ADJACENT_FILES = new long[8];
+    //indexed by colour, then square: the squares in front of a pawn on its own and the adjacent files
+    private static final long[][] FRONT_SPAN = new long[2][64];
+    //indexed by colour, then square: the squares on the adjacent files level with a pawn or behind it
+    private static final long[][] SUPPORT_SPAN = new long[2][64];
+
+    static {
+        for(int file = 0; file < 8; file++)
+        {
+            if(file > 0) ADJACENT_FILES[file] |= BitBoard.FILE_A << (file - 1);
+            if(file < 7) ADJACENT_FILES[file] |= BitBoard.FILE_A << (file + 1);
+        }
+        for(int square = 0; square < 64; square++)
+        {
+            int rank = square >>> 3;
+            long files = ADJACENT_FILES[square & 7] | BitBoard.FILE_A << (square & 7);
+            long above = rank == 7 ? 0 : -1L << ((rank + 1) * 8);
+            long below = rank == 0 ? 0 : -1L >>> ((8 - rank) * 8);
+            FRONT_SPAN[BitBoard.WHITE][square] = files & above;
+            FRONT_SPAN[BitBoard.BLACK][square] = files & below;
+            SUPPORT_SPAN[BitBoard.WHITE][square] = ADJACENT_FILES[square & 7] & ~above;
+            SUPPORT_SPAN[BitBoard.BLACK][square] = ADJACENT_FILES[square & 7] & ~below;
+        }
+    }
+
+    /**
+     * @param white the white pawns
+     * @param black the black pawns
+     * @return the packed middlegame and endgame scores of the structure terms, white minus black, see
+     * {@link PieceSquareTables#pack}; the shield is not included
+     */
+    public static long score(long white, long black)
+    {
+        return score(white, black, BitBoard.WHITE) - score(black, white, BitBoard.BLACK);
+    }
+
+    private static long score(long own, long enemy, int colour)
+    {
+        long score = 0;
+        long enemyAttacks = BitBoard.pawnAttacks(enemy, 1 - colour);
+        for(long pawns = own; pawns != 0; pawns &= pawns - 1)
+        {
+            int square = Long.numberOfTrailingZeros(pawns);
+            int file = square & 7;
+            int rank = colour == BitBoard.WHITE ? square >>> 3 : 7 - (square >>> 3);
+            long front = FRONT_SPAN[colour][square];
+            //on its own file: a pawn in front of it makes it the doubled one, and blocks it like an enemy pawn
+            long ownFile = front & (BitBoard.FILE_A << file);
+            if((own & ownFile) != 0) score += DOUBLED;
+            else if((enemy & front) == 0) score += PieceSquareTables.pack(PASSED_MIDDLEGAME[rank], PASSED_ENDGAME[rank]);
+
+            if((own & ADJACENT_FILES[file]) == 0) score += ISOLATED;
+            else if((own & SUPPORT_SPAN[colour][square]) == 0)
+            {
+                //no pawn can defend it, and advancing walks into an enemy pawn capture
+                int stop = colour == BitBoard.WHITE ? square + 8 : square - 8;
+                if((enemyAttacks & (1L << stop)) != 0) score += BACKWARD;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @param pawns the pawns of the colour
+     * @param colour the colour index of the king
+     * @param file the file of the king
+     * @return the middlegame bonus of the pawns on the king's file and the files beside it, one or two squares
+     * in front of the first rank of the colour
+     */
+    public static int shield(long pawns, int colour, int file)
+    {
+        long files = ADJACENT_FILES[file] | BitBoard.FILE_A << file;
+        long near = colour == BitBoard.WHITE ? 0xFF00L : 0xFF000000000000L;
+        long far = colour == BitBoard.WHITE ? 0xFF0000L : 0xFF0000000000L;
+        return SHIELD_NEAR * Long.bitCount(pawns & files & near) + SHIELD_FAR * Long.bitCount(pawns & files & far);
+    }
+}
@@ -0,0 +1,29 @@
+package com.andrei.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plain loops for the neural network evaluation, used when the Vector API is not available.
+ */
+final class ScalarNnueKernels implements NnueKernels {
+    @Override
+    public void add(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length) {
+        for(int i = 0; i < length; i++) accumulator[offset + i] += weights.getShort(weightOffset + 2 * i);
+    }
+
+    @Override
+    public void subtract(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length) {
+        for(int i = 0; i < length; i++) accumulator[offset + i] -= weights.getShort(weightOffset + 2 * i);
+    }
+
+    @Override
+    public int clippedDot(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length) {
+        int sum = 0;
+        for(int i = 0; i < length; i++)
+        {
+            int value = Math.min(Math.max(accumulator[offset + i], 0), Network.CLIP);
+            sum += value * weights.getShort(weightOffset + 2 * i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,603 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+import com.andrei.game.TranspositionTable;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the best move of the side to move with a negamax alpha-beta search and iterative deepening.
+ * <p>
+ * Each iteration searches one ply deeper than the last. Every iteration starts with the best line of the one
+ * before, which it finds again in the transposition table, so the moves most likely to cause cutoffs are
+ * searched first and the deeper iteration costs little more than if it had been searched alone. The search
+ * keeps the principal variation in a triangular table: the line found below every ply, copied up a ply each
+ * time a move raises alpha.
+ * <p>
+ * At depth 0 a quiescence search takes over: the side to move may stand on the static evaluation or try
+ * its captures, until the position is quiet, so the search never stops in the middle of an exchange.
+ * Captures that lose material by static exchange evaluation are skipped, and so are captures that cannot
+ * bring the evaluation up to alpha even if the piece is won for nothing (delta pruning).
+ * <p>
+ * Positions are evaluated with {@link Evaluation}, or with a neural network once one is given to
+ * {@link #setNetwork}; the search then keeps its accumulators up to date on every move. Each search object
+ * keeps its evaluations in an {@link EvalCache} and the pawn structure terms in a {@link PawnCache}, both
+ * sized by their system properties and kept from one search to the next. Endgames with a table given to
+ * {@link #setTablebases} are not searched but looked up.
+ * <p>
+ * Above the quiescence search the tree is searched selectively: see {@link SearchFeature} for the parts
+ * that can be switched off with {@link #setFeatures}.
+ * <p>
+ * The search stops at the depth, node or time limit. An iteration cut short is thrown away and the result of
+ * the last completed iteration is returned. Positions repeated since the last capture or pawn move and
+ * positions under the fifty move rule are scored as draws.
+ * <p>
+ * The moves of every position come from a {@link MovePicker}: the hash move, then the captures, then two
+ * killer moves per ply, then the quiet moves ordered by a history table, which counts how often each move
+ * caused a cutoff, weighted by the depth. The history belongs to the search object and is halved at the
+ * start of every search.
+ * <p>
+ * A search object plays on its own copy of the board and is used by one thread at a time; it may share its
+ * transposition table with other searches, see {@link SmpSearch}.
+ */
+public class Search {
+    public static final int INFINITY = 32767;
+    public static final int MATE = 32000; //score of being mated at the root, mated in n plies scores -(MATE - n)
+    static final int MATE_BOUND = MATE - 2 * SearchLimits.MAX_DEPTH - 200;
+    private static final int MAX_PLY = 2 * SearchLimits.MAX_DEPTH + 32;
+    private static final int CHECK_INTERVAL = 1023; //limits are checked every 1024 nodes
+    private static final int HISTORY_MAX = 1 << 16;
+    private static final int DELTA_MARGIN = 200; //what the position may gain besides the captured piece
+    private static final int ASPIRATION_DEPTH = 4; //iterations from this depth on start with a narrow window
+    private static final int ASPIRATION_WINDOW = 30;
+    private static final int NULL_MOVE_DEPTH = 3;
+    private static final int VERIFY_DEPTH = 8; //from this depth on a null move cutoff is verified
+    private static final int LMR_DEPTH = 3;
+    private static final int LMR_MOVES = 3; //moves searched before reductions start
+    private static final int[] FUTILITY_MARGINS = {0, 200, 350}; //indexed by the depth left
+    //reductions by depth and move number, growing with the logarithm of both
+    private static final int[][] REDUCTIONS = new int[64][64];
+
+    static {
+        for(int depth = 1; depth < 64; depth++)
+        {
+            for(int move = 1; move < 64; move++) REDUCTIONS[depth][move] = (int) (0.75 + Math.log(depth) * Math.log(move) / 2.25);
+        }
+    }
+
+    private final TranspositionTable table;
+    private final BitBoard board = new BitBoard();
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final int[][] killers = new int[MAX_PLY][2]; //the newest killer first
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private int rootScore; //the score of the root move heading pv[0]
+    private long[] keys = new long[MAX_PLY]; //keys of the game and of the current line, for repetitions
+    private int rootKeyIndex;
+    private final int[][] history = new int[2][64 * 64]; //indexed by colour, then from * 64 + to
+
+    private final int id; //0 for a search on its own or the main thread of a parallel search
+    private Nnue nnue; //null for the classical evaluation
+    private Tablebases tablebases; //null when no tablebase is loaded
+    private final EvalCache evalCache = EvalCache.fromConfig();
+    private final PawnCache pawnCache = PawnCache.fromConfig();
+    private final EnumSet<SearchFeature> features = EnumSet.allOf(SearchFeature.class);
+    //the features, read once per search
+    private boolean pvs;
+    private boolean aspiration;
+    private boolean nullMove;
+    private boolean lmr;
+    private boolean futility;
+    private SearchLimits limits;
+    private long deadline;
+    private long nodes;
+    private volatile long publishedNodes; //nodes, published to other threads every CHECK_INTERVAL nodes
+    private LongSupplier nodeCounter = () -> nodes; //the nodes counted against the node limit
+    private boolean aborted;
+    private volatile boolean stopped;
+
+    public Search(TranspositionTable table) {
+        this(table, 0);
+    }
+
+    /**
+     * @param id the index of the thread in a parallel search; helpers with an odd index start one ply deeper
+     */
+    Search(TranspositionTable table, int id) {
+        this.table = table;
+        this.id = id;
+        for(int i = 0; i < MAX_PLY; i++) pickers[i] = new MovePicker();
+    }
+
+    /**
+     * @return true if the score is a mate score: some side is mated in a number of plies
+     */
+    public static boolean isMateScore(int score)
+    {
+        return Math.abs(score) >= MATE_BOUND;
+    }
+
+    /**
+     * Searches the position to the given limits.
+     * @param root the position, left unchanged
+     * @param history the keys of the positions of the game before the root, oldest first, used to find
+     *                repetitions; may be empty
+     * @param limits when to stop
+     * @return the best move found, with its score and principal variation
+     */
+    public SearchResult search(BitBoard root, long[] history, SearchLimits limits)
+    {
+        stopped = false;
+        return run(root, history, limits);
+    }
+
+    /**
+     * Runs a search without clearing the stop flag, so a parallel search can stop its helpers before they start.
+     */
+    SearchResult run(BitBoard root, long[] history, SearchLimits limits)
+    {
+        long start = System.currentTimeMillis();
+        board.copyFrom(root);
+        if(nnue != null) nnue.refresh(board, 0);
+        if(keys.length < history.length + MAX_PLY) keys = new long[history.length + MAX_PLY];
+        System.arraycopy(history, 0, keys, 0, history.length);
+        rootKeyIndex = history.length;
+        this.limits = limits;
+        deadline = limits.getMillis() == SearchLimits.NO_LIMIT ? Long.MAX_VALUE : start + limits.getMillis();
+        nodes = 0;
+        publishedNodes = 0;
+        aborted = false;
+        if(id == 0) table.newSearch();
+        for(int[] colourHistory : this.history)
+        {
+            for(int i = 0; i < colourHistory.length; i++) colourHistory[i] >>= 1;
+        }
+        for(int[] plyKillers : killers) Arrays.fill(plyKillers, Move.NONE);
+        pvs = features.contains(SearchFeature.PVS);
+        aspiration = features.contains(SearchFeature.ASPIRATION);
+        nullMove = features.contains(SearchFeature.NULL_MOVE);
+        lmr = features.contains(SearchFeature.LMR);
+        futility = features.contains(SearchFeature.FUTILITY);
+
+        int[] bestLine = new int[0];
+        int bestScore = 0;
+        int completed = 0;
+        for(int depth = Math.min(1 + (id & 1), limits.getDepth()); depth <= limits.getDepth(); depth++)
+        {
+            int score = searchRoot(depth, bestScore);
+            if(aborted)
+            {
+                //the first iteration cut short still gives the best of the root moves it searched, but no depth
+                if(completed == 0 && pvLength[0] > 0)
+                {
+                    bestLine = Arrays.copyOf(pv[0], pvLength[0]);
+                    bestScore = rootScore;
+                }
+                break;
+            }
+            bestLine = Arrays.copyOf(pv[0], pvLength[0]);
+            bestScore = score;
+            completed = depth;
+            //a mate within the depth searched cannot be improved on by searching deeper
+            if(isMateScore(score) && MATE - Math.abs(score) <= depth) break;
+        }
+        if(bestLine.length == 0)
+        {
+            //an iteration aborted before it found a line: fall back to any legal move
+            MoveList legal = new MoveList();
+            MoveGenerator.generateLegal(board, board.sideToMove(), legal);
+            if(!legal.isEmpty()) bestLine = new int[]{legal.get(0)};
+        }
+        int bestMove = bestLine.length == 0 ? Move.NONE : bestLine[0];
+        publishedNodes = nodes;
+        return new SearchResult(bestMove, bestScore, completed, nodes, System.currentTimeMillis() - start, bestLine);
+    }
+
+    /**
+     * Chooses the selective parts of the search used from the next search on.
+     * @param features the features to use, the others are switched off
+     */
+    public void setFeatures(Set<SearchFeature> features)
+    {
+        this.features.clear();
+        this.features.addAll(features);
+    }
+
+    /**
+     * Chooses the evaluation used from the next search on.
+     * @param network the network to evaluate with, or null for the classical evaluation
+     */
+    public void setNetwork(Network network)
+    {
+        nnue = network == null ? null : new Nnue(network, MAX_PLY);
+        evalCache.clear();
+    }
+
+    /**
+     * Chooses the endgame tables probed from the next search on. Below the root, a position of a material
+     * set with a table is scored by its distance to mate, or as a draw, without searching it.
+     * @param tablebases the tables, or null to probe none
+     */
+    public void setTablebases(Tablebases tablebases)
+    {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * @return the cache of the evaluations of this search, for its hit rate
+     */
+    public EvalCache getEvalCache()
+    {
+        return evalCache;
+    }
+
+    /**
+     * @return the cache of the pawn structure terms of this search, for its hit rate
+     */
+    public PawnCache getPawnCache()
+    {
+        return pawnCache;
+    }
+
+    /**
+     * @return a copy of the features in use
+     */
+    public EnumSet<SearchFeature> getFeatures()
+    {
+        return EnumSet.copyOf(features);
+    }
+
+    /**
+     * Asks a running search to stop as soon as it can. Safe to call from any thread.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+
+    /**
+     * Clears the stop flag and the published node count before a parallel search starts this search with
+     * {@link #run}, so no thread sees the counts of the last search.
+     */
+    void prepare()
+    {
+        stopped = false;
+        publishedNodes = 0;
+    }
+
+    /**
+     * @param nodeCounter gives the nodes counted against the node limit, for example those of every thread
+     */
+    void setNodeCounter(LongSupplier nodeCounter)
+    {
+        this.nodeCounter = nodeCounter;
+    }
+
+    /**
+     * Safe to call from any thread.
+     * @return the nodes searched so far, up to date within 1024 nodes
+     */
+    long publishedNodes()
+    {
+        return publishedNodes;
+    }
+
+    /**
+     * Searches one iteration, with an aspiration window around the score of the last one if it is enabled:
+     * a score outside the window widens it on that side, doubling the step each time.
+     */
+    private int searchRoot(int depth, int lastScore)
+    {
+        if(!aspiration || depth < ASPIRATION_DEPTH || isMateScore(lastScore)) return negamax(depth, -INFINITY, INFINITY, 0, false);
+        int delta = ASPIRATION_WINDOW;
+        int alpha = Math.max(lastScore - delta, -INFINITY);
+        int beta = Math.min(lastScore + delta, INFINITY);
+        while(true)
+        {
+            int score = negamax(depth, alpha, beta, 0, false);
+            if(aborted) return score;
+            if(score <= alpha) alpha = Math.max(score - delta, -INFINITY);
+            else if(score >= beta) beta = Math.min(score + delta, INFINITY);
+            else return score;
+            delta *= 2;
+        }
+    }
+
+    /**
+     * @param allowNull false right after a null move, so two null moves never follow each other, and in the
+     *                  verification search of a null move cutoff
+     */
+    private int negamax(int depth, int alpha, int beta, int ply, boolean allowNull)
+    {
+        pvLength[ply] = ply;
+        if((nodes & CHECK_INTERVAL) == 0)
+        {
+            publishedNodes = nodes;
+            if(shouldStop()) aborted = true;
+        }
+        if(aborted) return 0;
+        nodes++;
+        long key = board.key();
+        keys[rootKeyIndex + ply] = key;
+        if(ply > 0 && isDraw(ply)) return 0;
+        if(ply > 0 && tablebases != null && Long.bitCount(board.occupied()) <= tablebases.maxPieces())
+        {
+            int value = tablebases.probe(board);
+            if(value == Tablebase.DRAW) return 0;
+            if(value != Tablebases.UNKNOWN)
+            {
+                int mate = MATE - ply - Tablebase.plies(value);
+                return Tablebase.isWin(value) ? mate : -mate;
+            }
+        }
+
+        boolean inCheck = board.isInCheck(board.sideToMove());
+        if(inCheck) depth++; //check extension, so the search does not stop right after a check
+        if(ply >= MAX_PLY - 1) return evaluate(ply);
+        if(depth <= 0) return searchCaptures(alpha, beta, ply, false); //in check the depth was extended
+
+        int hashMove = Move.NONE;
+        long entry = table.probe(key);
+        if(entry != 0)
+        {
+            hashMove = TranspositionTable.move(entry);
+            if(ply > 0 && TranspositionTable.depth(entry) >= depth)
+            {
+                int value = fromTable(TranspositionTable.value(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if(bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && value >= beta)
+                        || (bound == TranspositionTable.UPPER && value <= alpha))
+                {
+                    return value;
+                }
+            }
+        }
+
+        boolean pvNode = beta - alpha > 1;
+        int side = board.sideToMove();
+        int staticEval = inCheck ? -INFINITY : evaluate(ply);
+
+        if(nullMove && allowNull && !pvNode && !inCheck && depth >= NULL_MOVE_DEPTH && staticEval >= beta
+                && !isMateScore(beta) && hasPieces(side))
+        {
+            int reduced = depth - 3 - depth / 4;
+            board.makeNullMove();
+            if(nnue != null) nnue.update(board, ply + 1);
+            int score = -negamax(reduced, -beta, -beta + 1, ply + 1, false);
+            board.unmakeNullMove();
+            if(aborted) return 0;
+            //deep down a zugzwang can hide behind the null move, so the cutoff must hold without it
+            if(score >= beta && depth >= VERIFY_DEPTH) score = negamax(reduced, beta - 1, beta, ply, false);
+            if(aborted) return 0;
+            if(score >= beta) return isMateScore(score) ? beta : score; //a mate found by passing is not proven
+        }
+
+        boolean frontier = futility && !pvNode && !inCheck && depth < FUTILITY_MARGINS.length && !isMateScore(alpha);
+        int futilityValue = frontier ? staticEval + FUTILITY_MARGINS[depth] : 0;
+
+        MovePicker picker = pickers[ply];
+        picker.init(board, hashMove, killers[ply][0], killers[ply][1], history[side]);
+
+        int alphaStart = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = Move.NONE;
+        int moveCount = 0;
+        for(int move = picker.next(); move != Move.NONE; move = picker.next())
+        {
+            moveCount++;
+            boolean quiet = MovePicker.isQuiet(board, move);
+            boolean killer = move == killers[ply][0] || move == killers[ply][1];
+            board.makeMove(move);
+            boolean givesCheck = board.isInCheck(board.sideToMove());
+            if(frontier && futilityValue <= alpha && quiet && !givesCheck && moveCount > 1)
+            {
+                board.unmakeMove(move);
+                if(futilityValue > bestScore) bestScore = futilityValue;
+                continue;
+            }
+            if(nnue != null) nnue.update(board, ply + 1);
+            int score;
+            if(moveCount == 1) score = -negamax(depth - 1, -beta, -alpha, ply + 1, true);
+            else
+            {
+                boolean fullSearch = true;
+                score = -INFINITY;
+                if(lmr && depth >= LMR_DEPTH && moveCount > LMR_MOVES && quiet && !inCheck && !givesCheck && !killer)
+                {
+                    int reduction = REDUCTIONS[Math.min(depth, 63)][Math.min(moveCount, 63)] - (pvNode ? 1 : 0);
+                    reduction = Math.min(Math.max(reduction, 0), depth - 2);
+                    if(reduction > 0)
+                    {
+                        score = -negamax(depth - 1 - reduction, -alpha - 1, -alpha, ply + 1, true);
+                        fullSearch = score > alpha;
+                    }
+                }
+                if(fullSearch && pvs)
+                {
+                    score = -negamax(depth - 1, -alpha - 1, -alpha, ply + 1, true);
+                    fullSearch = score > alpha && score < beta;
+                }
+                if(fullSearch) score = -negamax(depth - 1, -beta, -alpha, ply + 1, true);
+            }
+            board.unmakeMove(move);
+            if(aborted) return 0;
+            if(score > bestScore)
+            {
+                bestScore = score;
+                bestMove = move;
+                if(score > alpha)
+                {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if(ply == 0) rootScore = score;
+                    if(alpha >= beta)
+                    {
+                        if(quiet) updateQuietCutoff(move, depth, ply);
+                        break;
+                    }
+                }
+            }
+        }
+        if(moveCount == 0) return inCheck ? -(MATE - ply) : 0;
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > alphaStart ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(key, depth, bound, bestMove, toTable(bestScore, ply));
+        return bestScore;
+    }
+
+    private int evaluate(int ply)
+    {
+        long key = board.key();
+        int score = evalCache.probe(key);
+        if(score != EvalCache.MISS) return score;
+        score = nnue == null ? Evaluation.evaluate(board, pawnCache) : nnue.evaluate(board, ply);
+        evalCache.store(key, score);
+        return score;
+    }
+
+    /**
+     * @return true if the side has a piece other than its king and pawns, so passing is unlikely to be its
+     * best move
+     */
+    private boolean hasPieces(int colour)
+    {
+        return (board.colour(colour) & ~board.pieces(colour, BitBoard.PAWN) & ~board.pieces(colour, BitBoard.KING)) != 0;
+    }
+
+    private int quiesce(int alpha, int beta, int ply)
+    {
+        pvLength[ply] = ply;
+        if((nodes & CHECK_INTERVAL) == 0)
+        {
+            publishedNodes = nodes;
+            if(shouldStop()) aborted = true;
+        }
+        if(aborted) return 0;
+        nodes++;
+        if(ply >= MAX_PLY - 1) return evaluate(ply);
+        return searchCaptures(alpha, beta, ply, board.isInCheck(board.sideToMove()));
+    }
+
+    /**
+     * The quiescence search of a node already counted: searches the captures only, since the side to move
+     * is not forced to move and may take the static evaluation instead. In check every evasion is searched,
+     * since standing pat is not an option.
+     */
+    private int searchCaptures(int alpha, int beta, int ply, boolean inCheck)
+    {
+        MovePicker picker = pickers[ply];
+        int bestScore;
+        int standPat = 0;
+        if(inCheck)
+        {
+            picker.init(board, Move.NONE, Move.NONE, Move.NONE, history[board.sideToMove()]);
+            bestScore = -INFINITY;
+        }
+        else
+        {
+            standPat = evaluate(ply);
+            if(standPat >= beta) return standPat;
+            if(standPat > alpha) alpha = standPat;
+            picker.initNoisy(board);
+            bestScore = standPat;
+        }
+
+        for(int move = picker.next(); move != Move.NONE; move = picker.next())
+        {
+            if(!inCheck)
+            {
+                int victim = board.typeAt(Move.to(move));
+                int gain = victim < 0 || victim == BitBoard.KING ? Evaluation.PIECE_VALUES[BitBoard.PAWN]
+                        : Evaluation.PIECE_VALUES[victim];
+                if(Move.promotion(move) == 0 && standPat + gain + DELTA_MARGIN <= alpha) continue;
+                if(!StaticExchange.isAtLeast(board, move, 0)) continue;
+            }
+            board.makeMove(move);
+            if(nnue != null) nnue.update(board, ply + 1);
+            int score = -quiesce(-beta, -alpha, ply + 1);
+            board.unmakeMove(move);
+            if(aborted) return 0;
+            if(score > bestScore)
+            {
+                bestScore = score;
+                if(score > alpha)
+                {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if(alpha >= beta) break;
+                }
+            }
+        }
+        //in check, no evasion means mate
+        if(bestScore == -INFINITY) return -(MATE - ply);
+        return bestScore;
+    }
+
+    private void updatePv(int ply, int move)
+    {
+        pv[ply][ply] = move;
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    /**
+     * A quiet move that caused a cutoff becomes the newest killer of the ply and gains history.
+     */
+    private void updateQuietCutoff(int move, int depth, int ply)
+    {
+        int[] plyKillers = killers[ply];
+        if(plyKillers[0] != move)
+        {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+        int[] colourHistory = history[board.sideToMove()];
+        int index = Move.from(move) * 64 + Move.to(move);
+        colourHistory[index] = Math.min(colourHistory[index] + depth * depth, HISTORY_MAX);
+    }
+
+    /**
+     * A position is a draw under the fifty move rule, or if it appeared before since the last capture or
+     * pawn move, with the same side to move.
+     */
+    private boolean isDraw(int ply)
+    {
+        int clock = board.halfmoveClock();
+        if(clock >= 100) return true;
+        int index = rootKeyIndex + ply;
+        long key = keys[index];
+        for(int back = 4; back <= clock && back <= index; back += 2)
+        {
+            if(keys[index - back] == key) return true;
+        }
+        return false;
+    }
+
+    private boolean shouldStop()
+    {
+        return stopped || nodeCounter.getAsLong() >= limits.getNodes() || System.currentTimeMillis() >= deadline;
+    }
+
+    //MATE SCORES are stored relative to the node, so they stay right when the position is found at another ply
+
+    private static int toTable(int score, int ply)
+    {
+        if(score >= MATE_BOUND) return score + ply;
+        if(score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply)
+    {
+        if(score >= MATE_BOUND) return score - ply;
+        if(score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,41 @@
+package com.andrei.engine;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * The selective parts of the {@link Search}, each of which can be switched off on its own to measure what
+ * it gains, see {@link Search#setFeatures}. All of them are on by default.
+ */
+public enum SearchFeature {
+    /** Principal variation search: moves after the first are searched with a null window, and again with
+     * the full window only if they turn out better. */
+    PVS,
+    /** Each iteration starts with a narrow window around the score of the last one, widened when the
+     * score falls outside. */
+    ASPIRATION,
+    /** A position where passing the move still fails high is cut off after a reduced search. Skipped in
+     * check and when the side to move has only pawns, where passing may be the best move (zugzwang). */
+    NULL_MOVE,
+    /** Late move reductions: quiet moves ordered late are searched shallower first. */
+    LMR,
+    /** Near the leaves, quiet moves that cannot bring the evaluation up to alpha are skipped. */
+    FUTILITY;
+
+    /** System property listing features to switch off, separated by commas, like "lmr,futility". */
+    public static final String DISABLED_PROPERTY = "chess.search.disabled";
+
+    /**
+     * @return every feature but those named by the {@link #DISABLED_PROPERTY} system property
+     * @throws IllegalArgumentException if the property names an unknown feature
+     */
+    public static EnumSet<SearchFeature> fromConfig()
+    {
+        EnumSet<SearchFeature> features = EnumSet.allOf(SearchFeature.class);
+        for(String name : System.getProperty(DISABLED_PROPERTY, "").split(","))
+        {
+            if(!name.isBlank()) features.remove(valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        return features;
+    }
+}
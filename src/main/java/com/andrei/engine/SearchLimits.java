@@ -0,0 +1,55 @@
+package com.andrei.engine;
+
+/**
+ * The limits of a search: a maximum depth, a maximum number of nodes and a time budget.
+ * The search stops at whichever limit is reached first. Immutable.
+ */
+public final class SearchLimits {
+    public static final int MAX_DEPTH = 64;
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final int depth;
+    private final long nodes;
+    private final long millis;
+
+    /**
+     * @param depth the deepest iteration to search, 1 to {@link #MAX_DEPTH}
+     * @param nodes the number of nodes after which the search stops, or {@link #NO_LIMIT}
+     * @param millis the time after which the search stops, in milliseconds, or {@link #NO_LIMIT}
+     * @throws IllegalArgumentException if a limit is not positive or the depth is above MAX_DEPTH
+     */
+    public SearchLimits(int depth, long nodes, long millis) {
+        if(depth < 1 || depth > MAX_DEPTH) throw new IllegalArgumentException("The depth must be between 1 and " + MAX_DEPTH);
+        if(nodes < 1 || millis < 1) throw new IllegalArgumentException("The node and time limits must be positive");
+        this.depth = depth;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    public static SearchLimits depth(int depth)
+    {
+        return new SearchLimits(depth, NO_LIMIT, NO_LIMIT);
+    }
+
+    public static SearchLimits nodes(long nodes)
+    {
+        return new SearchLimits(MAX_DEPTH, nodes, NO_LIMIT);
+    }
+
+    public static SearchLimits time(long millis)
+    {
+        return new SearchLimits(MAX_DEPTH, NO_LIMIT, millis);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
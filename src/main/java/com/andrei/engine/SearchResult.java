@@ -0,0 +1,128 @@
+package com.andrei.engine;
+
+import com.andrei.game.Move;
+
+/**
+ * The outcome of a search: the best move with its score, and the line the search expects to follow.
+ * Immutable.
+ */
+public final class SearchResult {
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long millis;
+    private final int[] pv;
+    private final long[] threadNodes;
+
+    /**
+     * Creates the result of a search run by one thread.
+     * @param pv the principal variation, starting with the best move; copied
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, long millis, int[] pv) {
+        this(bestMove, score, depth, millis, pv, new long[]{nodes});
+    }
+
+    /**
+     * Creates the result of a search run by several threads.
+     * @param pv the principal variation, starting with the best move; copied
+     * @param threadNodes the nodes searched by each thread, the main thread first; copied
+     */
+    public SearchResult(int bestMove, int score, int depth, long millis, int[] pv, long[] threadNodes) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.millis = millis;
+        this.pv = pv.clone();
+        this.threadNodes = threadNodes.clone();
+        long nodes = 0;
+        for(long count : threadNodes) nodes += count;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return the best move, encoded with {@link Move}, or {@link Move#NONE} if the side to move has no legal move
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return the score in centipawns for the side to move, or a mate score, see {@link Search#isMateScore}
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the depth of the last iteration that was searched completely
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the nodes searched by all the threads together
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return a copy of the nodes searched by each thread, the main thread first
+     */
+    public long[] getThreadNodes() {
+        return threadNodes.clone();
+    }
+
+    public int getThreads() {
+        return threadNodes.length;
+    }
+
+    /**
+     * @return the nodes searched per second by all the threads together
+     */
+    public long getNps() {
+        return nodes * 1000 / Math.max(millis, 1);
+    }
+
+    /**
+     * @param thread the index of the thread, 0 for the main thread
+     * @return the nodes searched per second by the thread
+     */
+    public long getNps(int thread) {
+        return threadNodes[thread] * 1000 / Math.max(millis, 1);
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return a copy of the principal variation
+     */
+    public int[] getPv() {
+        return pv.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("depth ").append(depth);
+        if(Search.isMateScore(score))
+        {
+            int plies = Search.MATE - Math.abs(score);
+            text.append(" score mate ").append(score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+        }
+        else text.append(" score cp ").append(score);
+        text.append(" nodes ").append(nodes).append(" time ").append(millis).append(" nps ").append(getNps());
+        if(threadNodes.length > 1)
+        {
+            //nodes per second of each thread, to see how evenly the work is spread
+            text.append(" threads");
+            for(int i = 0; i < threadNodes.length; i++) text.append(' ').append(getNps(i));
+        }
+        text.append(" pv");
+        for(int move : pv) text.append(' ').append(Move.toString(move));
+        return text.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+import com.andrei.game.TranspositionTable;
+
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches one position with several threads at once, Lazy SMP style: every thread runs the same iterative
+ * deepening search on its own copy of the board, and they share only the transposition table. A thread that
+ * finishes a subtree stores it in the table, and the others find it there instead of searching it again.
+ * <p>
+ * The threads would search the same moves in the same order if nothing told them apart, so helpers with an
+ * odd index start their iterations one ply deeper than the others, and each thread orders its quiet moves by
+ * its own history table. The main thread runs on the caller of {@link #search}; when it finishes, the helpers
+ * are stopped and the result of the main thread is returned, with the nodes of every thread.
+ * <p>
+ * The node limit counts the nodes of every thread together. A parallel search is used by one caller at a
+ * time, like a {@link Search}.
+ */
+public class SmpSearch {
+    /** System property holding the number of search threads used by default. */
+    public static final String THREADS_PROPERTY = "chess.threads";
+
+    private final Search[] workers;
+    private final ExecutorService helpers; //null when there is only the main thread
+
+    /**
+     * @param table the table shared by the threads
+     * @param threads the number of threads, including the one calling {@link #search}
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public SmpSearch(TranspositionTable table, int threads) {
+        if(threads < 1) throw new IllegalArgumentException("A search needs at least one thread: " + threads);
+        workers = new Search[threads];
+        for(int i = 0; i < threads; i++) workers[i] = new Search(table, i);
+        workers[0].setNodeCounter(this::nodes);
+        helpers = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, task -> {
+            Thread thread = new Thread(task, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the number of threads given by the {@link #THREADS_PROPERTY} system property, 1 if it is not set
+     * @throws IllegalArgumentException if the property is not a positive number
+     */
+    public static int threadsFromConfig()
+    {
+        String threads = System.getProperty(THREADS_PROPERTY, "1");
+        try
+        {
+            int value = Integer.parseInt(threads.trim());
+            if(value < 1) throw new IllegalArgumentException("Invalid thread count: " + threads);
+            return value;
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid thread count: " + threads, e);
+        }
+    }
+
+    /**
+     * Searches the position with every thread, see {@link Search#search}.
+     * @param root the position, left unchanged
+     * @param history the keys of the positions of the game before the root, oldest first
+     * @param limits when to stop
+     * @return the result of the main thread, with the nodes searched by each thread
+     */
+    public SearchResult search(BitBoard root, long[] history, SearchLimits limits)
+    {
+        for(Search worker : workers) worker.prepare();
+        //helpers stop when the main thread does, so only the main thread needs the node limit
+        SearchLimits helperLimits = new SearchLimits(limits.getDepth(), SearchLimits.NO_LIMIT, limits.getMillis());
+        Future<?>[] running = new Future<?>[workers.length - 1];
+        for(int i = 1; i < workers.length; i++)
+        {
+            Search worker = workers[i];
+            running[i - 1] = helpers.submit(() -> worker.run(root, history, helperLimits));
+        }
+        SearchResult main = workers[0].run(root, history, limits);
+        for(int i = 1; i < workers.length; i++) workers[i].stop();
+        for(Future<?> helper : running)
+        {
+            try
+            {
+                helper.get();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch(ExecutionException e)
+            {
+                throw new IllegalStateException("A search thread failed", e.getCause());
+            }
+        }
+        if(workers.length == 1) return main;
+        long[] threadNodes = new long[workers.length];
+        for(int i = 0; i < workers.length; i++) threadNodes[i] = workers[i].publishedNodes();
+        return new SearchResult(main.getBestMove(), main.getScore(), main.getDepth(), main.getMillis(),
+                main.getPv(), threadNodes);
+    }
+
+    /**
+     * Chooses the selective parts of the search of every thread, see {@link Search#setFeatures}.
+     */
+    public void setFeatures(Set<SearchFeature> features)
+    {
+        for(Search worker : workers) worker.setFeatures(features);
+    }
+
+    /**
+     * Chooses the evaluation of every thread, see {@link Search#setNetwork}. The threads share the weights.
+     */
+    public void setNetwork(Network network)
+    {
+        for(Search worker : workers) worker.setNetwork(network);
+    }
+
+    /**
+     * Chooses the endgame tables of every thread, see {@link Search#setTablebases}. The threads share the files.
+     */
+    public void setTablebases(Tablebases tablebases)
+    {
+        for(Search worker : workers) worker.setTablebases(tablebases);
+    }
+
+    /**
+     * Asks every thread to stop as soon as it can. Safe to call from any thread.
+     */
+    public void stop()
+    {
+        for(Search worker : workers) worker.stop();
+    }
+
+    /**
+     * Stops the helper threads for good. The search cannot be used afterwards.
+     */
+    public void shutdown()
+    {
+        stop();
+        if(helpers != null) helpers.shutdownNow();
+    }
+
+    /**
+     * @return the evaluation cache of the main thread; the helpers have their own, with similar hit rates
+     */
+    public EvalCache getEvalCache()
+    {
+        return workers[0].getEvalCache();
+    }
+
+    /**
+     * @return the pawn cache of the main thread; the helpers have their own, with similar hit rates
+     */
+    public PawnCache getPawnCache()
+    {
+        return workers[0].getPawnCache();
+    }
+
+    public int getThreads()
+    {
+        return workers.length;
+    }
+
+    /**
+     * @return the nodes searched so far by every thread
+     */
+    private long nodes()
+    {
+        long nodes = 0;
+        for(Search worker : workers) nodes += worker.publishedNodes();
+        return nodes;
+    }
+}
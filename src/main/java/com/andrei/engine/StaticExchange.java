@@ -0,0 +1,87 @@
+package com.andrei.engine;
+
+import com.andrei.game.Attacks;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+
+/**
+ * Static exchange evaluation: what a capture wins or loses in material once both sides have taken back on
+ * the target square with their cheapest attackers, each side free to stop when going on would lose more.
+ * Cannot be instantiated.
+ * <p>
+ * The attackers come from {@link BitBoard#attackersTo}, the attack tables the check test uses. Each capture
+ * takes the attacker off the occupancy, so the sliders behind it (x-rays) join the exchange. Pins are
+ * ignored, so the result is an estimate, good enough to tell winning captures from losing ones.
+ * <p>
+ * The search only needs to know whether a capture reaches a threshold, which can be decided without
+ * keeping the list of gains, so nothing is allocated.
+ */
+public class StaticExchange {
+    private StaticExchange() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    private static final int KING_VALUE = 20000;
+
+    /**
+     * @param board the position, with the side to move making the move
+     * @param move a move of the side to move, usually a capture or promotion
+     * @param threshold the material gain to test for, in centipawns
+     * @return true if the move wins at least the threshold once the exchange on its target square is over
+     */
+    public static boolean isAtLeast(BitBoard board, int move, int threshold)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int side = board.sideToMove();
+        int onSquare = board.typeAt(from); //the piece the other side can take next
+        int victim = board.colourAt(to) == 1 - side ? board.typeAt(to) : -1;
+        long occupied = board.occupied() ^ (1L << from);
+        if(onSquare == BitBoard.PAWN && to == board.epSquare())
+        {
+            victim = BitBoard.PAWN;
+            occupied ^= 1L << ((from & ~7) | (to & 7));
+        }
+
+        //what the side to move is ahead of the threshold, or behind it on the other side's turns
+        int swap = (victim < 0 ? 0 : value(victim)) - threshold;
+        if(Move.promotion(move) != 0)
+        {
+            onSquare = Move.promotion(move);
+            swap += value(onSquare) - value(BitBoard.PAWN);
+        }
+        if(swap < 0) return false;
+        swap = value(onSquare) - swap;
+        if(swap <= 0) return true; //even losing the piece keeps the threshold
+
+        long queens = board.pieces(BitBoard.WHITE, BitBoard.QUEEN) | board.pieces(BitBoard.BLACK, BitBoard.QUEEN);
+        long rooks = board.pieces(BitBoard.WHITE, BitBoard.ROOK) | board.pieces(BitBoard.BLACK, BitBoard.ROOK) | queens;
+        long bishops = board.pieces(BitBoard.WHITE, BitBoard.BISHOP) | board.pieces(BitBoard.BLACK, BitBoard.BISHOP) | queens;
+        long attackers = board.attackersTo(to, occupied);
+        int result = 1; //1 while the side to move keeps the threshold
+        while(true)
+        {
+            side = 1 - side;
+            attackers &= occupied;
+            long own = attackers & board.colour(side);
+            if(own == 0) break;
+            result ^= 1;
+            //the cheapest attacker takes next
+            int type = BitBoard.PAWN;
+            long piece = own & board.pieces(side, type);
+            while(piece == 0) piece = own & board.pieces(side, ++type);
+            //a king may only take if the other side has nothing left to take it back with
+            if(type == BitBoard.KING) return ((attackers & ~board.colour(side)) != 0 ? result ^ 1 : result) != 0;
+            swap = value(type) - swap;
+            if(swap < result) break;
+            occupied ^= Long.lowestOneBit(piece);
+            attackers |= (Attacks.rook(to, occupied) & rooks) | (Attacks.bishop(to, occupied) & bishops);
+        }
+        return result != 0;
+    }
+
+    private static int value(int type)
+    {
+        return type == BitBoard.KING ? KING_VALUE : Evaluation.PIECE_VALUES[type];
+    }
+}
@@ -0,0 +1,443 @@
+package com.andrei.engine;
+
+import com.andrei.game.BitBoard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The perfect play values of every position of one material set, like king and queen against king, read
+ * from a memory mapped file written by {@link TablebaseGenerator}. The file is never copied to the heap:
+ * probes read the mapped pages, shared by every thread. Immutable.
+ * <p>
+ * A material set is named by the pieces of each side, the kings first, like "KQvK" or "KBNvK". The side
+ * with more material is white in the file; {@link Tablebases} flips the colours of positions where black
+ * has it. Every position has one entry per side to move, a byte:
+ * <ul>
+ *     <li>{@link #DRAW}: neither side can force a mate</li>
+ *     <li>1 to {@link #MAX_PLIES} + 1: the plies to mate, plus one, with best play by both sides; an odd
+ *     number of plies is a win for the side to move, an even one a loss, so 1 is checkmate</li>
+ *     <li>{@link #ILLEGAL}: two pieces on one square, adjacent kings, a pawn on the first or last row, or
+ *     the side not to move in check</li>
+ * </ul>
+ * The index of a position holds the squares of the pieces in the order of {@link #getCodes}, six bits each,
+ * below the index of the white king. The board is turned so the white king stands in the a1-d1-d4 triangle,
+ * or only mirrored onto files a to d when there are pawns, which divides the size by about 6 or 2; with the
+ * king on the diagonal, the first piece off the diagonal goes below it. Castling
+ * rights are not part of the tables, and neither are en passant squares: an entry is the value of the
+ * position without the en passant capture. Where a double step allows the capture, the generator and
+ * {@link Tablebases#probe} weigh it against the entry, with {@link #better}.
+ * <p>
+ * The file is little endian: a header of the magic number {@link #MAGIC}, the version, the number of
+ * pieces and the number of positions, one int each, then the entries of every position with white to move
+ * and of every position with black to move.
+ */
+public final class Tablebase {
+    public static final int MAGIC = 0x31425443; //"CTB1" in a little endian file
+    public static final int VERSION = 1;
+    /** The most pieces of a material set, kings included; 6 would not fit the index in an int. */
+    public static final int MAX_PIECES = 5;
+    public static final String EXTENSION = ".ctb";
+    public static final int DRAW = 0;
+    public static final int ILLEGAL = 255;
+    /** The longest mate an entry holds, in plies. */
+    public static final int MAX_PLIES = 252;
+    static final int UNKNOWN = 254; //an entry the generator has not solved yet
+    static final int HEADER_BYTES = 16;
+
+    private static final String LETTERS = "PNBRQK"; //indexed by type
+    //the squares of the white king in a table without pawns, and with pawns, and the reverse maps
+    private static final int[][] KING_SQUARES = new int[2][];
+    private static final int[][] KING_INDEX = new int[2][64];
+
+    static {
+        int[] triangle = new int[10];
+        int[] half = new int[32];
+        int count = 0;
+        Arrays.fill(KING_INDEX[0], -1);
+        Arrays.fill(KING_INDEX[1], -1);
+        for(int square = 0; square < 64; square++)
+        {
+            int rank = square >>> 3;
+            int file = square & 7;
+            if(file > 3) continue;
+            KING_INDEX[1][square] = square / 8 * 4 + file;
+            half[KING_INDEX[1][square]] = square;
+            if(rank <= file)
+            {
+                KING_INDEX[0][square] = count;
+                triangle[count++] = square;
+            }
+        }
+        KING_SQUARES[0] = triangle;
+        KING_SQUARES[1] = half;
+    }
+
+    private final String material;
+    private final int[] codes; //colour * 6 + type of each piece, in index order
+    private final long key;
+    private final boolean pawns;
+    private final int size; //positions per side to move
+    private final ByteBuffer data;
+
+    /**
+     * @param material the name of the material set
+     * @param data the file, little endian, header included; checked against the material
+     */
+    Tablebase(String material, ByteBuffer data) {
+        codes = parse(material);
+        this.material = name(codes);
+        key = key(codes);
+        pawns = hasPawns(codes);
+        size = size(codes);
+        this.data = data;
+        if(data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC) throw new IllegalArgumentException("Not a tablebase file: " + material);
+        if(data.getInt(4) != VERSION) throw new IllegalArgumentException("Unknown tablebase version: " + data.getInt(4));
+        if(data.getInt(8) != codes.length || data.getInt(12) != size || data.capacity() != HEADER_BYTES + 2L * size)
+        {
+            throw new IllegalArgumentException("Tablebase file does not hold " + material);
+        }
+    }
+
+    /**
+     * Maps a tablebase file into memory. The material set is read from the name of the file, like KQvK.ctb.
+     * @param file the tablebase file
+     * @return the tablebase
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a tablebase file of its material set
+     */
+    public static Tablebase load(Path file) throws IOException
+    {
+        String name = file.getFileName().toString();
+        if(!name.endsWith(EXTENSION)) throw new IllegalArgumentException("Not a tablebase file: " + file);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if(channel.size() > Integer.MAX_VALUE) throw new IllegalArgumentException("Tablebase file too large: " + file);
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            return new Tablebase(name.substring(0, name.length() - EXTENSION.length()), data);
+        }
+    }
+
+    /**
+     * Reads the name of a material set, with or without the "v" between the sides: "KQvK" and "KQK" are
+     * the same set. The side with more material becomes white.
+     * @return the codes of the pieces, colour * 6 + type, in index order: the white king, the other white
+     * pieces from the queen down, the black king and the other black pieces
+     * @throws IllegalArgumentException if the name is not a material set of 3 to {@link #MAX_PIECES} pieces
+     */
+    public static int[] parse(String material)
+    {
+        String name = material.toUpperCase(Locale.ROOT);
+        int split = name.indexOf('V');
+        if(split < 0) split = name.indexOf('K', 1);
+        if(split <= 0 || !name.startsWith("K")) throw new IllegalArgumentException("Bad material set: " + material);
+        String white = name.substring(0, split);
+        String black = name.substring(name.charAt(split) == 'V' ? split + 1 : split);
+        int[] counts = new int[12];
+        if(!count(white, BitBoard.WHITE, counts) || !count(black, BitBoard.BLACK, counts))
+        {
+            throw new IllegalArgumentException("Bad material set: " + material);
+        }
+        if(compareSides(counts) < 0) counts = flip(counts);
+        int[] codes = new int[white.length() + black.length()];
+        if(codes.length < 3 || codes.length > MAX_PIECES) throw new IllegalArgumentException("Bad number of pieces: " + material);
+        int next = 0;
+        for(int colour = BitBoard.WHITE; colour <= BitBoard.BLACK; colour++)
+        {
+            for(int type = BitBoard.KING; type >= BitBoard.PAWN; type--)
+            {
+                for(int i = 0; i < counts[colour * 6 + type]; i++) codes[next++] = colour * 6 + type;
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * @return false if the side is not one king followed by other pieces
+     */
+    private static boolean count(String side, int colour, int[] counts)
+    {
+        if(side.isEmpty() || side.charAt(0) != 'K') return false;
+        for(int i = 0; i < side.length(); i++)
+        {
+            int type = LETTERS.indexOf(side.charAt(i));
+            if(type < 0 || (type == BitBoard.KING) != (i == 0)) return false;
+            counts[colour * 6 + type]++;
+        }
+        return true;
+    }
+
+    /**
+     * @param counts the number of pieces of each code
+     * @return above 0 if white has more material, by piece values, then by the number of pieces, then by
+     * the strongest pieces; 0 for the same pieces on both sides
+     */
+    static int compareSides(int[] counts)
+    {
+        int whiteValue = 0;
+        int blackValue = 0;
+        for(int type = BitBoard.PAWN; type < BitBoard.KING; type++)
+        {
+            whiteValue += counts[type] * Evaluation.PIECE_VALUES[type];
+            blackValue += counts[6 + type] * Evaluation.PIECE_VALUES[type];
+        }
+        if(whiteValue != blackValue) return Integer.compare(whiteValue, blackValue);
+        for(int type = BitBoard.KING; type >= BitBoard.PAWN; type--)
+        {
+            if(counts[type] != counts[6 + type]) return Integer.compare(counts[type], counts[6 + type]);
+        }
+        return 0;
+    }
+
+    private static int[] flip(int[] counts)
+    {
+        int[] flipped = new int[12];
+        for(int code = 0; code < 12; code++) flipped[(code + 6) % 12] = counts[code];
+        return flipped;
+    }
+
+    /**
+     * @return the name of the material set of the pieces, white first, like "KQvK"
+     */
+    static String name(int[] codes)
+    {
+        StringBuilder name = new StringBuilder();
+        for(int colour = BitBoard.WHITE; colour <= BitBoard.BLACK; colour++)
+        {
+            if(colour == BitBoard.BLACK) name.append('v');
+            for(int type = BitBoard.KING; type >= BitBoard.PAWN; type--)
+            {
+                for(int code : codes) if(code == colour * 6 + type) name.append(LETTERS.charAt(type));
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return the key of the material: the number of pieces of every code, four bits each
+     */
+    static long key(int[] codes)
+    {
+        long key = 0;
+        for(int code : codes) key += 1L << (code << 2);
+        return key;
+    }
+
+    private static boolean hasPawns(int[] codes)
+    {
+        for(int code : codes) if(code % 6 == BitBoard.PAWN) return true;
+        return false;
+    }
+
+    /**
+     * @return the key of the material with the colours swapped
+     */
+    static long flipKey(long key)
+    {
+        return (key >>> 24) | (key & 0xFFFFFFL) << 24;
+    }
+
+    /**
+     * @return the positions per side to move of a material set
+     */
+    static int size(int[] codes)
+    {
+        return KING_SQUARES[hasPawns(codes) ? 1 : 0].length << (6 * (codes.length - 1));
+    }
+
+    /**
+     * @param squares the squares of the pieces in index order, left unchanged
+     * @return the index of the position, after turning the board so the white king is in its part
+     */
+    int index(int[] squares)
+    {
+        int packed = 0;
+        for(int i = 0; i < codes.length; i++) packed |= squares[i] << (6 * i);
+        return packedIndex(packed);
+    }
+
+    /**
+     * @param squares the squares of the pieces in index order, six bits each, the first in the lowest bits
+     * @return the index of the position, see {@link #index(int[])}
+     */
+    int packedIndex(int squares)
+    {
+        int king = squares & 63;
+        int transform = 0;
+        if((king & 7) > 3) transform |= 1;
+        if(!pawns)
+        {
+            if(king >>> 3 > 3) transform |= 2;
+            king = transform(king, transform);
+            if(king >>> 3 > (king & 7)) transform |= 4;
+            //on the diagonal, the first piece off it chooses between the two sides, so the index is unique
+            for(int i = 1; i < codes.length && king >>> 3 == (king & 7); i++)
+            {
+                int square = transform(squares >>> (6 * i) & 63, transform);
+                if(square >>> 3 > (square & 7)) transform |= 4;
+                if(square >>> 3 != (square & 7)) break;
+            }
+        }
+        int index = KING_INDEX[pawns ? 1 : 0][transform(squares & 63, transform)];
+        for(int i = 1; i < codes.length; i++) index = index << 6 | transform(squares >>> (6 * i) & 63, transform);
+        return index;
+    }
+
+    /**
+     * @param transform 1 mirrors the files, 2 the ranks, 4 then swaps the files and ranks
+     */
+    private static int transform(int square, int transform)
+    {
+        if((transform & 1) != 0) square ^= 7;
+        if((transform & 2) != 0) square ^= 56;
+        if((transform & 4) != 0) square = (square & 7) << 3 | square >>> 3;
+        return square;
+    }
+
+    /**
+     * Fills the squares of the pieces of a position, in index order.
+     */
+    void squares(int index, int[] squares)
+    {
+        for(int i = codes.length - 1; i > 0; i--)
+        {
+            squares[i] = index & 63;
+            index >>>= 6;
+        }
+        squares[0] = KING_SQUARES[pawns ? 1 : 0][index];
+    }
+
+    /**
+     * @param side the colour index of the side to move, with the stronger side white
+     * @param index the index of the position
+     * @return the entry of the position
+     */
+    int value(int side, int index)
+    {
+        return data.get(offset(side, index)) & 0xFF;
+    }
+
+    /**
+     * @return the position of the entry in the file
+     */
+    int offset(int side, int index)
+    {
+        return HEADER_BYTES + side * size + index;
+    }
+
+    /**
+     * @return true if the entry is a win for the side to move
+     */
+    public static boolean isWin(int value)
+    {
+        return value != DRAW && value < UNKNOWN && (value & 1) == 0;
+    }
+
+    /**
+     * @return true if the entry is a loss for the side to move, checkmate included
+     */
+    public static boolean isLoss(int value)
+    {
+        return value < UNKNOWN && (value & 1) == 1;
+    }
+
+    /**
+     * @return the plies to mate of a win or a loss
+     */
+    public static int plies(int value)
+    {
+        return value - 1;
+    }
+
+    /**
+     * The entry of a position where the side to move chooses between two lines: the faster win, else the
+     * draw, else the slower loss.
+     * @param value the entry of one line, {@link #UNKNOWN} while the generator has not solved it
+     * @param known the entry of the other line, a win, a draw or a loss
+     * @return the entry of the position, unknown when it depends on the unknown line; a win is taken over an
+     * unknown line, which can only hold a mate at least as long as the pass of the generator
+     */
+    static int better(int value, int known)
+    {
+        if(isWin(known)) return isWin(value) ? Math.min(value, known) : known;
+        if(isWin(value)) return value;
+        if(value == UNKNOWN) return UNKNOWN;
+        if(value == DRAW || known == DRAW) return DRAW;
+        return Math.max(value, known); //two losses
+    }
+
+    public String getMaterial()
+    {
+        return material;
+    }
+
+    /**
+     * @return a copy of the codes of the pieces, colour * 6 + type, in index order
+     */
+    public int[] getCodes()
+    {
+        return codes.clone();
+    }
+
+    /**
+     * @return a view of the whole file, header included, for writing it
+     */
+    ByteBuffer data()
+    {
+        return data.duplicate().clear();
+    }
+
+    /**
+     * @return the codes of the pieces, not copied
+     */
+    int[] codes()
+    {
+        return codes;
+    }
+
+    /**
+     * @return the key of the material, see {@link Tablebases}
+     */
+    long getKey()
+    {
+        return key;
+    }
+
+    public boolean hasPawns()
+    {
+        return pawns;
+    }
+
+    /**
+     * @return the positions per side to move
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the longest mate in the table, in plies
+     */
+    public int longestMate()
+    {
+        int longest = 0;
+        for(int i = HEADER_BYTES; i < data.capacity(); i++)
+        {
+            int value = data.get(i) & 0xFF;
+            if(value != DRAW && value < UNKNOWN) longest = Math.max(longest, plies(value));
+        }
+        return longest;
+    }
+
+    @Override
+    public String toString() {
+        return material + " " + size + " positions per side";
+    }
+}
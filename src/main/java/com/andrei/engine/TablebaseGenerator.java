@@ -0,0 +1,470 @@
+package com.andrei.engine;
+
+import com.andrei.game.Attacks;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds {@link Tablebase} files by retrograde analysis: the values are found backwards from the mates,
+ * one ply further from them on every pass over the table.
+ * <p>
+ * The first pass marks the illegal positions, the checkmates, lost in 0 plies, and the stalemates. Pass n
+ * then solves every position mated in n plies: the side to move wins in n plies if a move reaches a loss in
+ * n - 1 plies, and loses in n plies if every move reaches a win in at most n - 1 plies. Only entries solved
+ * by an earlier pass count, so the distances are those of best play. The passes stop once one solves nothing
+ * and every table the captures and promotions lead to has run out of longer mates; the positions left are
+ * draws.
+ * <p>
+ * A pass only looks at the candidates the last one marked: every position solved with a mate takes back
+ * the moves that can lead to it, so only positions one move before a new mate are tried again, together
+ * with the positions that can capture or promote while the tables they lead to still hold longer mates.
+ * <p>
+ * A capture or a promotion leaves the table, so the tables of every material set reachable that way are
+ * generated first and probed from memory. So does an en passant capture: a double step an enemy pawn can
+ * take is worth the better of the entry it reaches and the captures, for the opponent, and the positions
+ * with such a step are tried again on every pass, like those with a capture. Each pass is split into slices of the table solved in parallel on
+ * a fork join pool, each worker on its own board. Workers read entries other workers may be writing, which
+ * is safe: an entry written during the pass holds n plies and is not used before the next pass.
+ * <p>
+ * Usage: {@code TablebaseGenerator <directory> <material>...}, like {@code TablebaseGenerator tb KQK KRK KPK
+ * KBNK}, writes the tables of the material sets and of those they lead to into the directory.
+ */
+public class TablebaseGenerator {
+    private static final int SLICE = 1 << 14; //entries per task
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final ForkJoinPool pool;
+    private final Map<Long, Tablebase> tables = new HashMap<>(); //generated, by material key
+    private final Map<Long, Integer> longest = new HashMap<>(); //the longest mate of each, in plies
+    private Tablebases generated = new Tablebases(List.of());
+    //bit sets over the entries of the table being solved: the candidates of the pass, those of the next pass,
+    //and the positions with a capture or a promotion, which tables already solved may decide at any pass
+    private long[] candidates;
+    private long[] nextCandidates;
+    private long[] exits;
+
+    /**
+     * @param threads the number of worker threads
+     */
+    public TablebaseGenerator(int threads) {
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Generates the table of a material set, after those of every set a capture or a promotion turns it into.
+     * Tables are kept in memory and generated once.
+     * @param material the name of the set, like "KQvK" or "KQK"
+     * @return the table
+     * @throws IllegalArgumentException if the name is not a material set, or if it has mates longer than
+     * {@link Tablebase#MAX_PLIES}
+     */
+    public Tablebase generate(String material)
+    {
+        int[] codes = Tablebase.parse(material);
+        long key = Tablebase.key(codes);
+        Tablebase table = tables.get(key);
+        if(table != null) return table;
+        int longestAfter = 0; //the longest mate of the tables the captures and promotions lead to
+        for(int[] next : successors(codes))
+        {
+            if(next.length > 2) longestAfter = Math.max(longestAfter, longest.get(generate(Tablebase.name(next)).getKey()));
+        }
+        table = solve(codes, longestAfter);
+        tables.put(key, table);
+        longest.put(key, table.longestMate());
+        generated = new Tablebases(tables.values());
+        return table;
+    }
+
+    /**
+     * @return the pieces left after every capture of a piece other than a king, and after every promotion
+     */
+    private static List<int[]> successors(int[] codes)
+    {
+        List<int[]> successors = new ArrayList<>();
+        for(int i = 0; i < codes.length; i++)
+        {
+            if(codes[i] % 6 == BitBoard.KING) continue;
+            int[] captured = new int[codes.length - 1];
+            for(int j = 0, next = 0; j < codes.length; j++) if(j != i) captured[next++] = codes[j];
+            successors.add(captured);
+            if(codes[i] % 6 != BitBoard.PAWN) continue;
+            for(int promotion = BitBoard.KNIGHT; promotion <= BitBoard.QUEEN; promotion++)
+            {
+                int[] promoted = codes.clone();
+                promoted[i] = codes[i] - BitBoard.PAWN + promotion;
+                successors.add(promoted);
+            }
+        }
+        return successors;
+    }
+
+    private Tablebase solve(int[] codes, int longestAfter)
+    {
+        int size = Tablebase.size(codes);
+        byte[] data = new byte[Tablebase.HEADER_BYTES + 2 * size];
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, Tablebase.MAGIC).putInt(4, Tablebase.VERSION).putInt(8, codes.length).putInt(12, size);
+        Tablebase table = new Tablebase(Tablebase.name(codes), buffer);
+        //sizes are multiples of 64, so a word of the bit sets never spans two slices
+        candidates = new long[2 * size / 64];
+        nextCandidates = new long[2 * size / 64];
+        exits = new long[2 * size / 64];
+        try
+        {
+            for(int plies = 0; ; plies++)
+            {
+                if(plies > Tablebase.MAX_PLIES) throw new IllegalArgumentException(table.getMaterial() + " has mates longer than " + Tablebase.MAX_PLIES + " plies");
+                if(pass(table, data, plies, plies <= longestAfter + 1) == 0 && plies > longestAfter) break;
+            }
+        }
+        finally
+        {
+            candidates = nextCandidates = exits = null;
+        }
+        for(int i = Tablebase.HEADER_BYTES; i < data.length; i++)
+        {
+            if((data[i] & 0xFF) == Tablebase.UNKNOWN) data[i] = Tablebase.DRAW;
+        }
+        return table;
+    }
+
+    /**
+     * @param plies 0 for the first pass, then the plies to mate solved by the pass
+     * @param withExits true if the positions with a capture or a promotion may be solved by the pass
+     * @return the number of entries solved
+     */
+    private long pass(Tablebase table, byte[] data, int plies, boolean withExits)
+    {
+        int entries = 2 * table.getSize();
+        List<Slice> tasks = new ArrayList<>();
+        for(int start = 0; start < entries; start += SLICE)
+        {
+            tasks.add(new Slice(table, data, plies, withExits, start, Math.min(start + SLICE, entries)));
+        }
+        pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        long solved = 0;
+        for(Slice task : tasks) solved += task.join();
+        long[] used = candidates;
+        candidates = nextCandidates;
+        nextCandidates = used;
+        Arrays.fill(nextCandidates, 0);
+        return solved;
+    }
+
+    /**
+     * Solves the candidate entries of a range, white to move first, on its own board, and marks the
+     * positions that can move into the new mates as the candidates of the next pass.
+     */
+    private final class Slice extends RecursiveTask<Long> {
+        private final Tablebase table;
+        private final byte[] data;
+        private final int plies;
+        private final boolean withExits;
+        private final int start;
+        private final int end;
+        private final int[] codes;
+        private final int[] squares;
+        private final int[] placed; //the squares of the pieces on the board, -1 before the first position
+        private final int[] nextCodes; //the pieces after a capture or a promotion
+        private final int[] nextSquares;
+        private final BitBoard board = new BitBoard();
+        private final MoveList moves = new MoveList();
+
+        Slice(Tablebase table, byte[] data, int plies, boolean withExits, int start, int end) {
+            this.table = table;
+            this.data = data;
+            this.plies = plies;
+            this.withExits = withExits;
+            this.start = start;
+            this.end = end;
+            codes = table.codes();
+            squares = new int[codes.length];
+            placed = new int[codes.length];
+            Arrays.fill(placed, -1);
+            nextCodes = new int[codes.length];
+            nextSquares = new int[codes.length];
+        }
+
+        @Override
+        protected Long compute() {
+            long solved = 0;
+            int size = table.getSize();
+            for(int word = start >>> 6; word < end >>> 6; word++)
+            {
+                //the first pass looks at every entry, the others at the candidates
+                long entries = plies == 0 ? -1 : candidates[word] | (withExits ? exits[word] : 0);
+                for(; entries != 0; entries &= entries - 1)
+                {
+                    int entry = word << 6 | Long.numberOfTrailingZeros(entries);
+                    int offset = Tablebase.HEADER_BYTES + entry;
+                    if(plies > 0 && (data[offset] & 0xFF) != Tablebase.UNKNOWN) continue;
+                    int side = entry < size ? BitBoard.WHITE : BitBoard.BLACK;
+                    table.squares(entry - side * size, squares);
+                    int value = plies == 0 ? first(side, entry) : solve(side);
+                    if(plies == 0 || value != Tablebase.UNKNOWN) data[offset] = (byte) value;
+                    if(value == Tablebase.UNKNOWN) continue;
+                    solved++;
+                    if(value != Tablebase.DRAW && value != Tablebase.ILLEGAL) markPredecessors(side);
+                }
+            }
+            return solved;
+        }
+
+        /**
+         * @return the entry of the position after the first pass
+         */
+        private int first(int side, int entry)
+        {
+            if(table.index(squares) != entry - side * table.getSize()) return Tablebase.ILLEGAL;
+            long occupied = 0;
+            for(int i = 0; i < codes.length; i++)
+            {
+                long bit = 1L << squares[i];
+                if((occupied & bit) != 0) return Tablebase.ILLEGAL;
+                if(codes[i] % 6 == BitBoard.PAWN && (bit & (BitBoard.RANK_1 | BitBoard.RANK_8)) != 0) return Tablebase.ILLEGAL;
+                occupied |= bit;
+            }
+            place(side);
+            if((BitBoard.kingAttacks(board.pieces(BitBoard.WHITE, BitBoard.KING)) & board.pieces(BitBoard.BLACK, BitBoard.KING)) != 0
+                    || board.isInCheck(1 - side))
+            {
+                return Tablebase.ILLEGAL;
+            }
+            if(MoveGenerator.generateLegal(board, side, moves) == 0) return board.isInCheck(side) ? 1 : Tablebase.DRAW;
+            for(int i = 0; i < moves.size(); i++)
+            {
+                int move = moves.get(i);
+                if(Move.promotion(move) != 0 || (occupied & (1L << Move.to(move))) != 0 || allowsEnPassant(move))
+                {
+                    exits[entry >>> 6] |= 1L << entry; //the slice owns the word
+                    break;
+                }
+            }
+            return Tablebase.UNKNOWN;
+        }
+
+        /**
+         * @return the entry of the position if it is mated in the plies of the pass, otherwise unknown
+         */
+        private int solve(int side)
+        {
+            place(side);
+            MoveGenerator.generateLegal(board, side, moves);
+            int longestWin = 0; //the longest win of the opponent after a move, in plies
+            for(int i = 0; i < moves.size(); i++)
+            {
+                int value = next(side, moves.get(i));
+                //only entries of earlier passes are final
+                if(value == Tablebase.DRAW || value >= Tablebase.UNKNOWN || Tablebase.plies(value) >= plies)
+                {
+                    longestWin = -1;
+                    continue;
+                }
+                //a win for this side: any loss solved by the last pass is the shortest, or it would be solved
+                if(Tablebase.isLoss(value)) return value + 1;
+                if(longestWin >= 0) longestWin = Math.max(longestWin, Tablebase.plies(value));
+            }
+            return longestWin < 0 ? Tablebase.UNKNOWN : longestWin + 2;
+        }
+
+        /**
+         * @return the entry of the position after the move, for the opponent
+         */
+        private int next(int side, int move)
+        {
+            int from = Move.from(move);
+            int to = Move.to(move);
+            int moved = -1;
+            int captured = -1;
+            for(int i = 0; i < codes.length; i++)
+            {
+                if(squares[i] == from) moved = i;
+                else if(squares[i] == to) captured = i;
+            }
+            if(captured < 0 && Move.promotion(move) == 0)
+            {
+                squares[moved] = to;
+                int index = table.index(squares);
+                squares[moved] = from;
+                int value = data[table.offset(1 - side, index)] & 0xFF;
+                return allowsEnPassant(move) ? withEnPassant(move, value) : value;
+            }
+            int count = 0;
+            for(int i = 0; i < codes.length; i++)
+            {
+                if(i == captured) continue;
+                nextCodes[count] = i == moved && Move.promotion(move) != 0 ? side * 6 + Move.promotion(move) : codes[i];
+                nextSquares[count++] = i == moved ? to : squares[i];
+            }
+            return generated.probe(nextCodes, nextSquares, count, 1 - side);
+        }
+
+        /**
+         * @return true if the move is a double step of a pawn onto a square beside an enemy pawn
+         */
+        private boolean allowsEnPassant(int move)
+        {
+            int from = Move.from(move);
+            int to = Move.to(move);
+            int side = board.sideToMove();
+            return board.typeAt(from) == BitBoard.PAWN && Math.abs(to - from) == 16
+                    && (Attacks.PAWN[side][(from + to) >>> 1] & board.pieces(1 - side, BitBoard.PAWN)) != 0;
+        }
+
+        /**
+         * @param move a double step an enemy pawn may take en passant
+         * @param quiet the entry the step reaches, for the opponent, without the capture
+         * @return the entry for the opponent with the legal captures weighed in, or quiet if there is none
+         */
+        private int withEnPassant(int move, int quiet)
+        {
+            board.makeMove(move);
+            int ep = board.epSquare();
+            int opponent = board.sideToMove();
+            board.setEpSquare(-1);
+            boolean others = MoveGenerator.hasLegalMove(board, opponent); //moves other than the captures
+            board.setEpSquare(ep);
+            int best = Tablebase.UNKNOWN;
+            for(long pawns = Attacks.PAWN[1 - opponent][ep] & board.pieces(opponent, BitBoard.PAWN); pawns != 0; pawns &= pawns - 1)
+            {
+                int capture = Move.of(Long.numberOfTrailingZeros(pawns), ep);
+                if(!MoveGenerator.isLegal(board, capture)) continue;
+                board.makeMove(capture);
+                int after = generated.probe(board); //the tables of the captures are complete
+                board.unmakeMove(capture);
+                int value = after == Tablebase.DRAW ? Tablebase.DRAW : after + 1;
+                best = best == Tablebase.UNKNOWN ? value : Tablebase.better(best, value);
+            }
+            board.unmakeMove(move);
+            if(best == Tablebase.UNKNOWN) return quiet;
+            return others ? Tablebase.better(quiet, best) : best;
+        }
+
+        /**
+         * Marks every position of the table that moves into this one with the other side to move, by taking
+         * back each move of a piece of that side that is neither a capture nor a promotion.
+         * @param side the colour index of the side to move in this position
+         */
+        private void markPredecessors(int side)
+        {
+            int mover = 1 - side;
+            long occupied = 0;
+            for(int square : squares) occupied |= 1L << square;
+            for(int i = 0; i < codes.length; i++)
+            {
+                if(codes[i] / 6 != mover) continue;
+                int to = squares[i];
+                long origins;
+                switch(codes[i] % 6)
+                {
+                    case BitBoard.PAWN:
+                        int back = mover == BitBoard.WHITE ? -8 : 8;
+                        origins = 0;
+                        if((occupied & (1L << (to + back))) == 0)
+                        {
+                            origins = 1L << (to + back);
+                            int row = mover == BitBoard.WHITE ? 3 : 4; //the row a double step lands on
+                            if(to >>> 3 == row && (occupied & (1L << (to + 2 * back))) == 0) origins |= 1L << (to + 2 * back);
+                        }
+                        origins &= ~(BitBoard.RANK_1 | BitBoard.RANK_8);
+                        break;
+                    case BitBoard.KNIGHT: origins = Attacks.KNIGHT[to]; break;
+                    case BitBoard.BISHOP: origins = Attacks.bishop(to, occupied); break;
+                    case BitBoard.ROOK: origins = Attacks.rook(to, occupied); break;
+                    case BitBoard.QUEEN: origins = Attacks.queen(to, occupied); break;
+                    default: origins = Attacks.KING[to];
+                }
+                for(origins &= ~occupied; origins != 0; origins &= origins - 1)
+                {
+                    squares[i] = Long.numberOfTrailingZeros(origins);
+                    int entry = mover * table.getSize() + table.index(squares);
+                    LONGS.getAndBitwiseOr(nextCandidates, entry >>> 6, 1L << entry);
+                }
+                squares[i] = to;
+            }
+        }
+
+        /**
+         * Sets the board to the position of the squares, with the side to move and nothing else.
+         */
+        private void place(int side)
+        {
+            for(int i = 0; i < codes.length; i++) if(placed[i] >= 0) board.remove(placed[i], codes[i] / 6, codes[i] % 6);
+            for(int i = 0; i < codes.length; i++)
+            {
+                board.put(squares[i], codes[i] / 6, codes[i] % 6);
+                placed[i] = squares[i];
+            }
+            board.setSideToMove(side);
+        }
+    }
+
+    /**
+     * Writes a table to a directory, in a file named after its material set, like KQvK.ctb.
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Tablebase table, Path directory) throws IOException
+    {
+        ByteBuffer buffer = table.data();
+        try(FileChannel channel = FileChannel.open(directory.resolve(table.getMaterial() + Tablebase.EXTENSION),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while(buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 2)
+        {
+            System.err.println("Usage: TablebaseGenerator <directory> <material>...");
+            System.exit(2);
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        TablebaseGenerator generator = new TablebaseGenerator(Runtime.getRuntime().availableProcessors());
+        try
+        {
+            for(int i = 1; i < args.length; i++)
+            {
+                long start = System.nanoTime();
+                Tablebase table = generator.generate(args[i]);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                System.out.println(table + ", longest mate " + table.longestMate() + " plies, " + millis + " ms");
+            }
+            for(Tablebase table : generator.tables.values()) write(table, directory);
+        }
+        finally
+        {
+            generator.shutdown();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.andrei.engine;
+
+import com.andrei.game.Attacks;
+import com.andrei.game.BitBoard;
+import com.andrei.game.Move;
+import com.andrei.game.MoveGenerator;
+import com.andrei.game.MoveList;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of {@link Tablebase} files, probed by position: the set finds the file of the material on the
+ * board, flips the colours when black has the stronger side and reads the entry of the position. Positions
+ * with two kings alone are draws without a file. Immutable and safe to probe from any thread.
+ * <p>
+ * Probes answer like {@link com.andrei.game.ChessBoard#isCheckMate}, but for the whole game ahead: whether
+ * the side to move wins, draws or loses with best play and in how many plies, see {@link #isWin},
+ * {@link #isDraw} and {@link #bestMove}. Positions with castling rights are not in the tables; those with
+ * an en passant square are probed without it and with each en passant capture.
+ */
+public final class Tablebases {
+    /** System property holding the directory of the tablebase files the engine loads, none by default. */
+    public static final String DIRECTORY_PROPERTY = "chess.tablebases";
+    /** Returned by {@link #probe} for a position without a table. */
+    public static final int UNKNOWN = -1;
+
+    //the tables sorted by material key, searched without boxing the key
+    private final long[] keys;
+    private final Tablebase[] tables;
+    private final int maxPieces;
+
+    public Tablebases(Collection<Tablebase> tables) {
+        Map<Long, Tablebase> byKey = new TreeMap<>();
+        int maxPieces = 2;
+        for(Tablebase table : tables)
+        {
+            byKey.put(table.getKey(), table);
+            maxPieces = Math.max(maxPieces, table.codes().length);
+        }
+        keys = new long[byKey.size()];
+        this.tables = new Tablebase[byKey.size()];
+        int next = 0;
+        for(Map.Entry<Long, Tablebase> entry : byKey.entrySet())
+        {
+            keys[next] = entry.getKey();
+            this.tables[next++] = entry.getValue();
+        }
+        this.maxPieces = maxPieces;
+    }
+
+    /**
+     * Maps every tablebase file of a directory into memory.
+     * @throws IOException if the directory or a file cannot be read
+     * @throws IllegalArgumentException if a file is not a tablebase file of its material set
+     */
+    public static Tablebases load(Path directory) throws IOException
+    {
+        List<Tablebase> tables = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Tablebase.EXTENSION))
+        {
+            for(Path file : files) tables.add(Tablebase.load(file));
+        }
+        return new Tablebases(tables);
+    }
+
+    /**
+     * @return the tablebases in the directory named by the {@link #DIRECTORY_PROPERTY} system property, or
+     * null if it is not set
+     * @throws IOException if the directory or a file cannot be read
+     */
+    public static Tablebases fromConfig() throws IOException
+    {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return directory == null ? null : load(Paths.get(directory));
+    }
+
+    /**
+     * @return the most pieces of a position that can have a table, kings included
+     */
+    public int maxPieces()
+    {
+        return maxPieces;
+    }
+
+    /**
+     * @return the table of the material set, by its name, or null if the set has none
+     */
+    public Tablebase get(String material)
+    {
+        return find(Tablebase.key(Tablebase.parse(material)));
+    }
+
+    /**
+     * @return the table of the material key, or null
+     */
+    private Tablebase find(long key)
+    {
+        int i = Arrays.binarySearch(keys, key);
+        return i < 0 ? null : tables[i];
+    }
+
+    /**
+     * @param board the position, left unchanged; with an en passant square, the board is changed and set
+     *              back during the probe
+     * @return the entry of the position, see {@link Tablebase}, or {@link #UNKNOWN} if it has no table
+     */
+    public int probe(BitBoard board)
+    {
+        int count = Long.bitCount(board.occupied());
+        if(count > maxPieces || board.castlingRights() != 0) return UNKNOWN;
+        if(board.epSquare() >= 0) return probeEnPassant(board);
+        if(count == 2) return Tablebase.DRAW;
+        long key = 0;
+        for(int code = 0; code < 12; code++) key += (long) Long.bitCount(board.pieces(code / 6, code % 6)) << (code << 2);
+        Tablebase table = find(key);
+        boolean flip = table == null;
+        if(flip) table = find(Tablebase.flipKey(key));
+        if(table == null) return UNKNOWN;
+        int[] codes = table.codes();
+        int squares = 0; //six bits per piece, in the order of the table
+        for(int i = 0; i < count; )
+        {
+            int code = flip ? (codes[i] + 6) % 12 : codes[i];
+            for(long pieces = board.pieces(code / 6, code % 6); pieces != 0; pieces &= pieces - 1)
+            {
+                int square = Long.numberOfTrailingZeros(pieces);
+                squares |= (flip ? square ^ 56 : square) << (6 * i++);
+            }
+        }
+        return table.value(flip ? 1 - board.sideToMove() : board.sideToMove(), table.packedIndex(squares));
+    }
+
+    /**
+     * Probes a position right after a double step an enemy pawn can take: the entry without the capture,
+     * unless the capture is the only move, weighed against the entry of every legal capture.
+     */
+    private int probeEnPassant(BitBoard board)
+    {
+        int ep = board.epSquare();
+        int side = board.sideToMove();
+        board.setEpSquare(-1);
+        int quiet = probe(board);
+        boolean others = MoveGenerator.hasLegalMove(board, side); //moves other than the capture
+        board.setEpSquare(ep);
+        if(quiet == UNKNOWN) return UNKNOWN;
+        int best = UNKNOWN;
+        for(long pawns = Attacks.PAWN[1 - side][ep] & board.pieces(side, BitBoard.PAWN); pawns != 0; pawns &= pawns - 1)
+        {
+            int capture = Move.of(Long.numberOfTrailingZeros(pawns), ep);
+            if(!MoveGenerator.isLegal(board, capture)) continue;
+            board.makeMove(capture);
+            int after = probe(board);
+            board.unmakeMove(capture);
+            if(after == UNKNOWN) return UNKNOWN;
+            int value = after == Tablebase.DRAW ? Tablebase.DRAW : after + 1; //one ply more, for the other side
+            best = best == UNKNOWN ? value : Tablebase.better(best, value);
+        }
+        if(best == UNKNOWN) return quiet;
+        return others ? Tablebase.better(quiet, best) : best;
+    }
+
+    /**
+     * Probes a position given as a list of pieces, for the generator.
+     * @param codes the codes of the pieces, colour * 6 + type, in any order
+     * @param squares their squares
+     * @param count the number of pieces
+     * @param side the colour index of the side to move
+     * @return the entry of the position, or {@link #UNKNOWN} if it has no table
+     */
+    int probe(int[] codes, int[] squares, int count, int side)
+    {
+        if(count == 2) return Tablebase.DRAW;
+        long key = 0;
+        for(int i = 0; i < count; i++) key += 1L << (codes[i] << 2);
+        Tablebase table = find(key);
+        boolean flip = table == null;
+        if(flip) table = find(Tablebase.flipKey(key));
+        if(table == null) return UNKNOWN;
+        int[] order = table.codes();
+        int[] ordered = new int[count];
+        boolean[] used = new boolean[count];
+        for(int i = 0; i < count; i++)
+        {
+            int code = flip ? (order[i] + 6) % 12 : order[i];
+            int piece = 0;
+            while(used[piece] || codes[piece] != code) piece++;
+            used[piece] = true;
+            ordered[i] = flip ? squares[piece] ^ 56 : squares[piece];
+        }
+        return table.value(flip ? 1 - side : side, table.index(ordered));
+    }
+
+    /**
+     * @return true if the side to move wins the position with best play, false if it does not or the
+     * position has no table
+     */
+    public boolean isWin(BitBoard board)
+    {
+        int value = probe(board);
+        return value != UNKNOWN && Tablebase.isWin(value);
+    }
+
+    /**
+     * @return true if neither side can force a mate, false if one can or the position has no table
+     */
+    public boolean isDraw(BitBoard board)
+    {
+        return probe(board) == Tablebase.DRAW;
+    }
+
+    /**
+     * Chooses a move with perfect play: the fastest mate when the side to move wins, a drawing move when it
+     * draws and the longest defence when it loses.
+     * @param board the position, left unchanged
+     * @return the move, or {@link Move#NONE} if the position has no table or no legal move
+     */
+    public int bestMove(BitBoard board)
+    {
+        if(probe(board) == UNKNOWN) return Move.NONE;
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegal(new BitBoard(board), board.sideToMove(), moves);
+        BitBoard child = new BitBoard(board);
+        int best = Move.NONE;
+        int bestRank = Integer.MIN_VALUE;
+        for(int i = 0; i < moves.size(); i++)
+        {
+            child.makeMove(moves.get(i));
+            int value = probe(child);
+            child.unmakeMove(moves.get(i));
+            int rank = rank(value);
+            if(rank > bestRank)
+            {
+                bestRank = rank;
+                best = moves.get(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param value the entry of the position after a move, for the opponent
+     * @return how good the move is for the side that played it, higher is better
+     */
+    private static int rank(int value)
+    {
+        if(value == UNKNOWN) return -2 * Tablebase.MAX_PLIES; //left the tables, by a promotion to a set without one
+        if(value == Tablebase.DRAW) return 0;
+        if(Tablebase.isLoss(value)) return 2 * Tablebase.MAX_PLIES - Tablebase.plies(value);
+        return Tablebase.plies(value) - 2 * Tablebase.MAX_PLIES;
+    }
+}
@@ -0,0 +1,63 @@
+package com.andrei.engine;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The loops of the neural network evaluation written with the Vector API, at the widest vector size of the
+ * CPU: 128 bits with NEON or SSE, 256 with AVX2, 512 with AVX-512. Only loaded when the jdk.incubator.vector
+ * module is present, see {@link NnueKernels#best()}.
+ * <p>
+ * The dot product multiplies in int16, which cannot overflow since the clipped values are at most 127 and
+ * the output weights at most {@link Network#MAX_OUTPUT_WEIGHT}, then widens the products to int32 lanes to sum them.
+ */
+final class VectorNnueKernels implements NnueKernels {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, SHORTS.vectorShape());
+
+    @Override
+    public void add(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length) {
+        int i = 0;
+        for(int bound = SHORTS.loopBound(length); i < bound; i += SHORTS.length())
+        {
+            ShortVector row = ShortVector.fromByteBuffer(SHORTS, weights, weightOffset + 2 * i, ByteOrder.LITTLE_ENDIAN);
+            ShortVector.fromArray(SHORTS, accumulator, offset + i).add(row).intoArray(accumulator, offset + i);
+        }
+        for(; i < length; i++) accumulator[offset + i] += weights.getShort(weightOffset + 2 * i);
+    }
+
+    @Override
+    public void subtract(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length) {
+        int i = 0;
+        for(int bound = SHORTS.loopBound(length); i < bound; i += SHORTS.length())
+        {
+            ShortVector row = ShortVector.fromByteBuffer(SHORTS, weights, weightOffset + 2 * i, ByteOrder.LITTLE_ENDIAN);
+            ShortVector.fromArray(SHORTS, accumulator, offset + i).sub(row).intoArray(accumulator, offset + i);
+        }
+        for(; i < length; i++) accumulator[offset + i] -= weights.getShort(weightOffset + 2 * i);
+    }
+
+    @Override
+    public int clippedDot(short[] accumulator, int offset, ByteBuffer weights, int weightOffset, int length) {
+        IntVector sums = IntVector.zero(INTS);
+        int i = 0;
+        for(int bound = SHORTS.loopBound(length); i < bound; i += SHORTS.length())
+        {
+            ShortVector clipped = ShortVector.fromArray(SHORTS, accumulator, offset + i).max((short) 0).min((short) Network.CLIP);
+            ShortVector products = clipped.mul(ShortVector.fromByteBuffer(SHORTS, weights, weightOffset + 2 * i, ByteOrder.LITTLE_ENDIAN));
+            sums = sums.add((IntVector) products.convertShape(VectorOperators.S2I, INTS, 0))
+                    .add((IntVector) products.convertShape(VectorOperators.S2I, INTS, 1));
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for(; i < length; i++)
+        {
+            sum += Math.min(Math.max(accumulator[offset + i], 0), Network.CLIP) * weights.getShort(weightOffset + 2 * i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,231 @@
+package com.andrei.game;
+
+/**
+ * Precomputed attack tables, indexed by square (x*8 + y). Cannot be instantiated.
+ * <p>
+ * Knights, kings and pawns have a fixed attack set per square. Sliding pieces use magic bitboards:
+ * the blockers on the relevant rays of a square are multiplied by a magic number, and the top bits
+ * of the product index a table holding the attack set for exactly those blockers. So a rook, bishop
+ * or queen attack set costs one (or two) table lookups.
+ * <p>
+ * The tables are built once, when the class is loaded, and shared by every board. The magic numbers
+ * were found offline by trying sparse random numbers until one indexed every blocker subset of a square
+ * without a harmful collision; Java has no portable PEXT, so the multiply is the indexing used everywhere.
+ */
+public class Attacks {
+    private Attacks() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static final long[] KNIGHT = new long[64];
+    public static final long[] KING = new long[64];
+    public static final long[][] PAWN = new long[2][64]; //indexed by colour, then square
+
+    //directions that go towards higher square numbers, then their opposites
+    private static final int NORTH = 0, EAST = 1, NORTH_EAST = 2, NORTH_WEST = 3;
+    private static final int SOUTH = 4, WEST = 5, SOUTH_WEST = 6, SOUTH_EAST = 7;
+    private static final int[] DX = {1, 0, 1, 1, -1, 0, -1, -1};
+    private static final int[] DY = {0, 1, 1, -1, 0, -1, -1, 1};
+    private static final int[] ROOK_DIRECTIONS = {NORTH, EAST, SOUTH, WEST};
+    private static final int[] BISHOP_DIRECTIONS = {NORTH_EAST, NORTH_WEST, SOUTH_WEST, SOUTH_EAST};
+    private static final long[][] RAYS = new long[8][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    private static final long[] ROOK_MASK = new long[64];
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final long[] ROOK_TABLE;
+
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] BISHOP_TABLE;
+
+    private static final long[] ROOK_MAGIC = {
+            0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+            0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+            0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+            0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+            0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+            0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+            0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+            0x0442000A00049020L, 0x2100040080020080L, 0x0800120400900148L, 0x0010040A00128541L,
+            0x2800804000800030L, 0x1010002000400041L, 0x4000200011004100L, 0x0610008410800800L,
+            0x0400802402800800L, 0xC100020080800400L, 0x0002000802000401L, 0x0182085882000401L,
+            0x0220204000808000L, 0x2860100040024022L, 0x0001002004110040L, 0x99101042000A0020L,
+            0x0004080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+            0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+            0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+            0x0000209300488001L, 0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+            0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x4000002840840112L
+    };
+
+    private static final long[] BISHOP_MAGIC = {
+            0xA010041108003100L, 0x006082020A002900L, 0x6810010619200000L, 0x08281A0520000408L,
+            0x0001104001000400L, 0x0018901008048400L, 0x00040A0210245280L, 0x000200210808A402L,
+            0x9140048410821200L, 0x0800091010820041L, 0x20504804832202C0L, 0x0100091401081000L,
+            0x8021011140000012L, 0x0810020804450400L, 0x208B0542109008A2L, 0x0080084A08040204L,
+            0x0040E2A80811244CL, 0x2505022008008108L, 0x0430220100420040L, 0x010A040420220040L,
+            0x1105000290400000L, 0x0093001200822120L, 0x4000A62048043004L, 0x280120048A015004L,
+            0x006090002A020814L, 0x44042000240800D0L, 0x01102800040A4400L, 0x1004080080220040L,
+            0x0001001011004024L, 0x0010044000805040L, 0x0914041200820100L, 0x0004821012821480L,
+            0x0024040500C05021L, 0x0088611002080200L, 0x0116080A00040020L, 0x4000020080080080L,
+            0x2450450140840040L, 0x0000880201484100L, 0x0222020404020092L, 0x8081110600002E00L,
+            0x2842101105000801L, 0x1100809008001025L, 0x00020202221C0400L, 0x0422014022009020L,
+            0x0210046102100C00L, 0xC004008082029102L, 0x00AA461801101200L, 0x0404080080201108L,
+            0x020542108C205002L, 0x0410544804100100L, 0x0040910841100000L, 0x0400200042021100L,
+            0x00004204850400C0L, 0x0200100410A42102L, 0x1040020801210102L, 0x0805040410420000L,
+            0x2884804130100200L, 0x800C262201242000L, 0x1058000194108800L, 0x0014221054420204L,
+            0x0104000012A02200L, 0x0200881003300100L, 0x0140400202840100L, 0x0402020801010201L
+    };
+
+    static {
+        for(int square = 0; square < 64; square++)
+        {
+            long bit = 1L << square;
+            KNIGHT[square] = BitBoard.knightAttacks(bit);
+            KING[square] = BitBoard.kingAttacks(bit);
+            PAWN[BitBoard.WHITE][square] = BitBoard.pawnAttacks(bit, BitBoard.WHITE);
+            PAWN[BitBoard.BLACK][square] = BitBoard.pawnAttacks(bit, BitBoard.BLACK);
+            for(int dir = 0; dir < 8; dir++)
+            {
+                int x = (square >>> 3) + DX[dir];
+                int y = (square & 7) + DY[dir];
+                while(x >= 0 && x < 8 && y >= 0 && y < 8)
+                {
+                    RAYS[dir][square] |= 1L << (x * 8 + y);
+                    x += DX[dir];
+                    y += DY[dir];
+                }
+            }
+        }
+        for(int square = 0; square < 64; square++)
+        {
+            for(int dir = 0; dir < 8; dir++)
+            {
+                long line = RAYS[dir][square] | RAYS[(dir + 4) % 8][square] | (1L << square);
+                long between = 0;
+                for(long ray = RAYS[dir][square]; ray != 0; )
+                {
+                    //walk the ray outwards from the square
+                    int target = dir < SOUTH ? Long.numberOfTrailingZeros(ray) : 63 - Long.numberOfLeadingZeros(ray);
+                    BETWEEN[square][target] = between;
+                    LINE[square][target] = line;
+                    between |= 1L << target;
+                    ray &= ~(1L << target);
+                }
+            }
+        }
+        ROOK_TABLE = initMagics(ROOK_DIRECTIONS, ROOK_MASK, ROOK_MAGIC, ROOK_SHIFT, ROOK_OFFSET);
+        BISHOP_TABLE = initMagics(BISHOP_DIRECTIONS, BISHOP_MASK, BISHOP_MAGIC, BISHOP_SHIFT, BISHOP_OFFSET);
+    }
+
+    public static long rook(int square, long occupied)
+    {
+        return ROOK_TABLE[ROOK_OFFSET[square]
+                + (int) (((occupied & ROOK_MASK[square]) * ROOK_MAGIC[square]) >>> ROOK_SHIFT[square])];
+    }
+
+    public static long bishop(int square, long occupied)
+    {
+        return BISHOP_TABLE[BISHOP_OFFSET[square]
+                + (int) (((occupied & BISHOP_MASK[square]) * BISHOP_MAGIC[square]) >>> BISHOP_SHIFT[square])];
+    }
+
+    public static long queen(int square, long occupied)
+    {
+        return rook(square, occupied) | bishop(square, occupied);
+    }
+
+    /**
+     * @return the squares strictly between the two squares if they share a line, column or diagonal, 0 otherwise
+     */
+    public static long between(int from, int to)
+    {
+        return BETWEEN[from][to];
+    }
+
+    /**
+     * @return the whole line, column or diagonal through both squares, or 0 if they are not aligned
+     */
+    public static long line(int from, int to)
+    {
+        return LINE[from][to];
+    }
+
+    /**
+     * Fills the masks, shifts, offsets and attack sets of every square for one kind of slider.
+     * The mask holds the squares whose occupancy matters: the rays without their last square,
+     * since a piece on the edge of the board blocks nothing behind it.
+     * @return the attack table shared by all the squares, each square owning a slice starting at its offset
+     */
+    private static long[] initMagics(int[] directions, long[] masks, long[] magics, int[] shifts, int[] offsets)
+    {
+        int size = 0;
+        for(int square = 0; square < 64; square++)
+        {
+            long mask = 0;
+            for(int dir : directions)
+            {
+                long ray = RAYS[dir][square];
+                int last = dir < SOUTH ? 63 - Long.numberOfLeadingZeros(ray) : Long.numberOfTrailingZeros(ray);
+                if(ray != 0) mask |= ray & ~(1L << last);
+            }
+            masks[square] = mask;
+            shifts[square] = 64 - Long.bitCount(mask);
+            offsets[square] = size;
+            size += 1 << Long.bitCount(mask);
+        }
+        long[] table = new long[size];
+        for(int square = 0; square < 64; square++)
+        {
+            fillTable(square, directions, masks[square], magics[square], shifts[square], table, offsets[square]);
+        }
+        return table;
+    }
+
+    /**
+     * Walks every blocker subset of the mask and stores its attack set in the slot picked by the magic.
+     * @throws IllegalStateException if the magic sends two different attack sets to the same slot
+     */
+    private static void fillTable(int square, int[] directions, long mask, long magic, int shift, long[] table, int offset)
+    {
+        int count = 1 << Long.bitCount(mask);
+        boolean[] used = new boolean[count];
+        long blockers = 0;
+        for(int i = 0; i < count; i++)
+        {
+            long attacks = slidingAttacks(square, blockers, directions);
+            int index = (int) ((blockers * magic) >>> shift);
+            if(used[index] && table[offset + index] != attacks)
+            {
+                throw new IllegalStateException("Bad magic number for square " + square);
+            }
+            used[index] = true;
+            table[offset + index] = attacks;
+            blockers = (blockers - mask) & mask; //next subset of the mask
+        }
+    }
+
+    /**
+     * Attack set of a slider found by walking its rays, used to fill the magic tables.
+     */
+    private static long slidingAttacks(int square, long occupied, int[] directions)
+    {
+        long attacks = 0;
+        for(int dir : directions)
+        {
+            long ray = RAYS[dir][square];
+            long blockers = ray & occupied;
+            if(blockers != 0)
+            {
+                //rays of the first four directions grow towards bit 63, so the nearest blocker is the lowest bit
+                int blocker = dir < SOUTH ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+                ray ^= RAYS[dir][blocker];
+            }
+            attacks |= ray;
+        }
+        return attacks;
+    }
+}
@@ -0,0 +1,706 @@
+package com.andrei.game;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a position: one 64 bit word per piece type and colour,
+ * plus an occupancy word per colour and one for the whole board.
+ * <p>
+ * Bit number x*8 + y stands for the tile (x,y), so bit 0 is the left hand corner (0,0)
+ * and bit 63 is the right hand corner (7,7), the same convention used by ChessBoard.
+ * Colours are indexed by {@link Colour#ordinal()}: 0 for white and 1 for black.
+ * <p>
+ * Next to the bitboards there is a mailbox holding one byte per square, the piece code
+ * (colour * 6 + type + 1, or 0 for an empty square), so the piece on a square is read without scanning
+ * the bitboards. The mailbox is packed eight squares to a word and lives in the same long array as the
+ * bitboards and the state word (castling rights, en passant square, halfmove clock, side to move and king
+ * squares). Copying a board is a single System.arraycopy, and the first {@link #POSITION_WORDS} words are
+ * all it takes to store a position.
+ * <p>
+ * The Zobrist key of the position is one of those words. Every change of a piece or of the state XORs
+ * the matching {@link Zobrist} numbers into it, so the key is always current and costs a few XORs per move.
+ * A second key covers the pawns alone, for caches of pawn structure evaluations; it is kept next to the
+ * position words, rebuilt from the pawns when a position is loaded.
+ * The middlegame and endgame piece-square scores of the pieces are summed the same way, see
+ * {@link PieceSquareTables}, so a static evaluation does not have to walk the board.
+ * <p>
+ * The board also keeps the attack set of the piece on every square, updated incrementally: placing or
+ * removing a piece recomputes the attacks of that piece and of the sliding pieces whose rays pass through
+ * the square, and nothing else. The attacked squares of a colour are the union of the attack sets of its
+ * pieces, folded again only when a query follows a change. The king squares are cached as well, so a
+ * check test is a single mask lookup.
+ */
+public class BitBoard {
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    //castling rights, the black ones are the white ones shifted by 2
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = 0x8080808080808080L;
+    public static final long RANK_1 = 0x00000000000000FFL;
+    public static final long RANK_8 = 0xFF00000000000000L;
+
+    //LAYOUT OF THE WORDS: words 0-11 are the pieces, index colour * 6 + type
+    private static final int COLOURS = 12;
+    private static final int OCCUPIED = 14;
+    private static final int STATE = 15;
+    private static final int MAILBOX = 16; //8 words, one byte per square
+    private static final int KEY = 24;
+    private static final int SCORE = 25; //packed piece-square scores, see PieceSquareTables
+    /** Number of words that define a position. The words after them are caches rebuilt from these. */
+    public static final int POSITION_WORDS = 26;
+    private static final int PAWN_KEY = 26; //Zobrist key of the pawns alone
+    private static final int ATTACKS_FROM = 27; //attack set of the piece on each square, 0 for empty squares
+    private static final int ATTACKED = 91; //squares attacked by each colour
+    private static final int WORDS = 93;
+
+    //LAYOUT OF THE STATE WORD: castling rights in bits 0-3
+    private static final int EP_SHIFT = 4; //en passant square + 1, 7 bits
+    private static final int CLOCK_SHIFT = 11; //halfmove clock, 16 bits
+    private static final int SIDE_SHIFT = 27; //colour index of the side to move
+    private static final int KING_SHIFT = 32; //king square + 1, one byte per colour
+    private static final long UNDO_STATE_MASK = (1L << 48) - 1;
+
+    //UNDO STACK: the state word of each move played with makeMove, with the captured piece code above it
+    private static final int UNDO_CAPACITY = 256;
+    private static final int CAPTURED_SHIFT = 48;
+    private static final long CASTLING_FLAG = 1L << 56;
+    private static final long EN_PASSANT_FLAG = 1L << 57;
+
+    private final long[] words = new long[WORDS];
+    //volatile so boards that are only read can be queried from several threads, see attackedBy
+    private volatile boolean attackedStale = false;
+    private long[] undo; //allocated by the first makeMove, so copies that are only read stay small
+    private int undoSize = 0;
+
+    public BitBoard() {
+    }
+
+    /**
+     * Creates a copy of the other board, with its attack maps but without its undo stack.
+     */
+    public BitBoard(BitBoard other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Overwrites this board with the other one in a single array copy. The undo stack is emptied.
+     */
+    public void copyFrom(BitBoard other)
+    {
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+        attackedStale = other.attackedStale;
+        undoSize = 0;
+    }
+
+    /**
+     * @return the words that define the position, {@link #POSITION_WORDS} longs
+     */
+    public long[] toWords()
+    {
+        return Arrays.copyOf(words, POSITION_WORDS);
+    }
+
+    /**
+     * Overwrites this board with a position stored by {@link #toWords()} and rebuilds the attack maps.
+     * The undo stack is emptied.
+     */
+    public void loadWords(long[] position)
+    {
+        System.arraycopy(position, 0, words, 0, POSITION_WORDS);
+        words[PAWN_KEY] = 0;
+        for(int square = 0; square < 64; square++)
+        {
+            int code = codeAt(square);
+            words[ATTACKS_FROM + square] = code == 0 ? 0 : attacksOf(square, (code - 1) / 6, (code - 1) % 6);
+            if(code != 0 && (code - 1) % 6 == PAWN) words[PAWN_KEY] ^= Zobrist.PIECES[code - 1][square];
+        }
+        attackedStale = true;
+        undoSize = 0;
+    }
+
+    /**
+     * Places a piece on an empty square.
+     * @param square the square index, 0-63
+     * @param colour the colour index of the piece
+     * @param type the type of the piece
+     */
+    public void put(int square, int colour, int type)
+    {
+        long bit = 1L << square;
+        words[colour * 6 + type] |= bit;
+        words[COLOURS + colour] |= bit;
+        words[OCCUPIED] |= bit;
+        words[KEY] ^= Zobrist.PIECES[colour * 6 + type][square];
+        words[SCORE] += PieceSquareTables.SCORES[colour * 6 + type][square];
+        setCode(square, colour * 6 + type + 1);
+        if(type == PAWN) words[PAWN_KEY] ^= Zobrist.PIECES[colour * 6 + type][square];
+        else if(type == KING) updateKingSquare(colour);
+        words[ATTACKS_FROM + square] = attacksOf(square, colour, type);
+        updateSliders(square);
+    }
+
+    /**
+     * Removes the given piece from the square.
+     * @param square the square index, 0-63
+     * @param colour the colour index of the piece
+     * @param type the type of the piece
+     */
+    public void remove(int square, int colour, int type)
+    {
+        long bit = ~(1L << square);
+        words[colour * 6 + type] &= bit;
+        words[COLOURS + colour] &= bit;
+        words[OCCUPIED] &= bit;
+        words[KEY] ^= Zobrist.PIECES[colour * 6 + type][square];
+        words[SCORE] -= PieceSquareTables.SCORES[colour * 6 + type][square];
+        setCode(square, 0);
+        if(type == PAWN) words[PAWN_KEY] ^= Zobrist.PIECES[colour * 6 + type][square];
+        else if(type == KING) updateKingSquare(colour);
+        words[ATTACKS_FROM + square] = 0;
+        updateSliders(square);
+    }
+
+    /**
+     * Removes the piece on the square, if there is one.
+     * @param square the square index, 0-63
+     */
+    public void clear(int square)
+    {
+        int code = codeAt(square);
+        if(code != 0) remove(square, (code - 1) / 6, (code - 1) % 6);
+    }
+
+    private void setCode(int square, int code)
+    {
+        int word = MAILBOX + (square >>> 3);
+        int shift = (square & 7) << 3;
+        words[word] = (words[word] & ~(0xFFL << shift)) | (long) code << shift;
+    }
+
+    /**
+     * @param square the square index, 0-63
+     * @return the code of the piece on the square, colour * 6 + type + 1, or 0 if the square is empty
+     */
+    public int codeAt(int square)
+    {
+        return codeAt(words, square);
+    }
+
+    /**
+     * @param position the words of a position, see {@link #toWords()}
+     * @param square the square index, 0-63
+     * @return the code of the piece on the square, colour * 6 + type + 1, or 0 if the square is empty
+     */
+    static int codeAt(long[] position, int square)
+    {
+        return (int) (position[MAILBOX + (square >>> 3)] >>> ((square & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * @param row the row, 0-7
+     * @return the piece codes of the eight squares of the row, one byte each, column a in the lowest byte;
+     * comparing the words of two positions finds the squares that changed
+     */
+    public long mailbox(int row)
+    {
+        return words[MAILBOX + row];
+    }
+
+    private void updateKingSquare(int colour)
+    {
+        long king = words[colour * 6 + KING];
+        int shift = KING_SHIFT + 8 * colour;
+        long value = king == 0 ? 0 : Long.numberOfTrailingZeros(king) + 1;
+        words[STATE] = (words[STATE] & ~(0xFFL << shift)) | value << shift;
+    }
+
+    /**
+     * Recomputes the attack sets of the sliding pieces that reach the square, since their rays
+     * are now blocked at the square, or run through it.
+     */
+    private void updateSliders(int square)
+    {
+        long occupied = words[OCCUPIED];
+        long queens = words[QUEEN] | words[6 + QUEEN];
+        long rooks = words[ROOK] | words[6 + ROOK] | queens;
+        long bishops = words[BISHOP] | words[6 + BISHOP] | queens;
+        long sliders = (Attacks.rook(square, occupied) & rooks) | (Attacks.bishop(square, occupied) & bishops);
+        for(; sliders != 0; sliders &= sliders - 1)
+        {
+            int slider = Long.numberOfTrailingZeros(sliders);
+            long bit = 1L << slider;
+            long attacks = 0;
+            if((rooks & bit) != 0) attacks |= Attacks.rook(slider, occupied);
+            if((bishops & bit) != 0) attacks |= Attacks.bishop(slider, occupied);
+            words[ATTACKS_FROM + slider] = attacks;
+        }
+        if(!attackedStale) attackedStale = true;
+    }
+
+    /**
+     * @return the attack set of a piece of the given colour and type standing on the square
+     */
+    private long attacksOf(int square, int colour, int type)
+    {
+        switch(type)
+        {
+            case PAWN: return Attacks.PAWN[colour][square];
+            case KNIGHT: return Attacks.KNIGHT[square];
+            case BISHOP: return Attacks.bishop(square, words[OCCUPIED]);
+            case ROOK: return Attacks.rook(square, words[OCCUPIED]);
+            case QUEEN: return Attacks.queen(square, words[OCCUPIED]);
+            default: return Attacks.KING[square];
+        }
+    }
+
+    /**
+     * Concurrent readers of an unchanged board may fold the maps at the same time; they compute the
+     * same values, and the stale flag is only cleared after the maps are written.
+     * @param colour the colour index of the attacking side
+     * @return every square attacked by a piece of the given colour
+     */
+    public long attackedBy(int colour)
+    {
+        if(attackedStale)
+        {
+            for(int c = WHITE; c <= BLACK; c++)
+            {
+                long union = 0;
+                for(long own = words[COLOURS + c]; own != 0; own &= own - 1)
+                {
+                    union |= words[ATTACKS_FROM + Long.numberOfTrailingZeros(own)];
+                }
+                words[ATTACKED + c] = union;
+            }
+            attackedStale = false;
+        }
+        return words[ATTACKED + colour];
+    }
+
+    /**
+     * @param colour the colour index of the king
+     * @return true if the king of the given colour is attacked, false if it is not or if there is no such king
+     */
+    public boolean isInCheck(int colour)
+    {
+        int king = kingSquare(colour);
+        return king >= 0 && (attackedBy(1 - colour) & (1L << king)) != 0;
+    }
+
+    public long pieces(int colour, int type)
+    {
+        return words[colour * 6 + type];
+    }
+
+    public long colour(int colour)
+    {
+        return words[COLOURS + colour];
+    }
+
+    public long occupied()
+    {
+        return words[OCCUPIED];
+    }
+
+    public boolean isOccupied(int square)
+    {
+        return (words[OCCUPIED] & (1L << square)) != 0;
+    }
+
+    /**
+     * @return the castling rights still available, a bit set of the castling constants
+     */
+    public int castlingRights()
+    {
+        return (int) words[STATE] & 15;
+    }
+
+    public void setCastlingRights(int castlingRights)
+    {
+        words[KEY] ^= Zobrist.CASTLING[castlingRights()] ^ Zobrist.CASTLING[castlingRights];
+        words[STATE] = (words[STATE] & ~15L) | castlingRights;
+    }
+
+    /**
+     * @return the square a pawn can capture onto en passant, or -1 if there is none
+     */
+    public int epSquare()
+    {
+        return ((int) (words[STATE] >>> EP_SHIFT) & 127) - 1;
+    }
+
+    public void setEpSquare(int epSquare)
+    {
+        int old = epSquare();
+        if(old >= 0) words[KEY] ^= Zobrist.EP_FILE[old & 7];
+        if(epSquare >= 0) words[KEY] ^= Zobrist.EP_FILE[epSquare & 7];
+        words[STATE] = (words[STATE] & ~(127L << EP_SHIFT)) | (long) (epSquare + 1) << EP_SHIFT;
+    }
+
+    /**
+     * @return the number of moves since the last capture or pawn move
+     */
+    public int halfmoveClock()
+    {
+        return (int) (words[STATE] >>> CLOCK_SHIFT) & 0xFFFF;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock)
+    {
+        words[STATE] = (words[STATE] & ~(0xFFFFL << CLOCK_SHIFT)) | (long) Math.min(halfmoveClock, 0xFFFF) << CLOCK_SHIFT;
+    }
+
+    /**
+     * @return the colour index of the side to move
+     */
+    public int sideToMove()
+    {
+        return (int) (words[STATE] >>> SIDE_SHIFT) & 1;
+    }
+
+    public void setSideToMove(int colour)
+    {
+        if(colour != sideToMove()) words[KEY] ^= Zobrist.BLACK_TO_MOVE;
+        words[STATE] = (words[STATE] & ~(1L << SIDE_SHIFT)) | (long) colour << SIDE_SHIFT;
+    }
+
+    /**
+     * @return the Zobrist key of the position, covering the pieces, side to move, castling rights and en
+     * passant column
+     */
+    public long key()
+    {
+        return words[KEY];
+    }
+
+    /**
+     * @return the Zobrist key of the pawns of both colours, and of nothing else
+     */
+    public long pawnKey()
+    {
+        return words[PAWN_KEY];
+    }
+
+    /**
+     * @return the material and piece-square score of the pieces for the middlegame, white minus black
+     */
+    public int middlegameScore()
+    {
+        return PieceSquareTables.middlegame(words[SCORE]);
+    }
+
+    /**
+     * @return the material and piece-square score of the pieces for the endgame, white minus black
+     */
+    public int endgameScore()
+    {
+        return PieceSquareTables.endgame(words[SCORE]);
+    }
+
+    /**
+     * @return how far the position is from the endgame, from 0 with only kings and pawns to
+     * {@link PieceSquareTables#MAX_PHASE} with all the pieces, capped there after promotions
+     */
+    public int phase()
+    {
+        int phase = 0;
+        for(int type = KNIGHT; type <= QUEEN; type++)
+        {
+            phase += PieceSquareTables.phaseWeight(type) * Long.bitCount(words[type] | words[6 + type]);
+        }
+        return Math.min(phase, PieceSquareTables.MAX_PHASE);
+    }
+
+    /**
+     * @param position the words of a position, see {@link #toWords()}
+     * @return the Zobrist key of the position
+     */
+    static long keyOf(long[] position)
+    {
+        return position[KEY];
+    }
+
+    /**
+     * @param rookSquare the starting square of a rook
+     * @return the castling right that rook gives, or 0 if the square is not a rook starting corner
+     */
+    public static int castlingRightOf(int rookSquare)
+    {
+        switch(rookSquare)
+        {
+            case 7: return WHITE_KINGSIDE;
+            case 0: return WHITE_QUEENSIDE;
+            case 63: return BLACK_KINGSIDE;
+            case 56: return BLACK_QUEENSIDE;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return the castling rights that disappear when a piece leaves or is captured on the square
+     */
+    private static int castlingRightsLost(int square)
+    {
+        switch(square)
+        {
+            case 4: return WHITE_KINGSIDE | WHITE_QUEENSIDE;
+            case 60: return BLACK_KINGSIDE | BLACK_QUEENSIDE;
+            default: return castlingRightOf(square);
+        }
+    }
+
+    /**
+     * @param colour the colour index of the king
+     * @return the square of the king of the given colour, or -1 if there is no such king
+     */
+    public int kingSquare(int colour)
+    {
+        return ((int) (words[STATE] >>> (KING_SHIFT + 8 * colour)) & 0xFF) - 1;
+    }
+
+    /**
+     * @param square the square index, 0-63
+     * @return the colour index of the piece on the square, or -1 if the square is empty
+     */
+    public int colourAt(int square)
+    {
+        int code = codeAt(square);
+        return code == 0 ? -1 : (code - 1) / 6;
+    }
+
+    /**
+     * @param square the square index, 0-63
+     * @return the type of the piece on the square, or -1 if the square is empty
+     */
+    public int typeAt(int square)
+    {
+        int code = codeAt(square);
+        return code == 0 ? -1 : (code - 1) % 6;
+    }
+
+    /**
+     * Plays a move. The captured piece, the kind of move and the state word (castling rights, en passant
+     * square, halfmove clock, side to move) are pushed on the undo stack, so unmakeMove can restore the
+     * position exactly. The turn passes to the other colour. The move is assumed to be legal. Castling is the
+     * king taking its own rook. A pawn reaching the last row without a promotion piece stays a pawn, the game
+     * promotes it afterwards.
+     * @param move the move, encoded with {@link Move}
+     */
+    public void makeMove(int move)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int code = codeAt(from);
+        int captured = codeAt(to);
+        int colour = (code - 1) / 6;
+        int type = (code - 1) % 6;
+
+        if(undo == null) undo = new long[UNDO_CAPACITY];
+        else if(undoSize == undo.length) undo = Arrays.copyOf(undo, undoSize * 2);
+        long entry = words[STATE] & UNDO_STATE_MASK;
+
+        int epSquare = -1;
+        boolean capture = captured != 0;
+        remove(from, colour, type);
+        if(capture && (captured - 1) / 6 == colour)
+        {
+            entry |= CASTLING_FLAG;
+            capture = false;
+            remove(to, colour, ROOK);
+            int row = from & ~7;
+            put(row + (to > from ? 6 : 2), colour, KING);
+            put(row + (to > from ? 5 : 3), colour, ROOK);
+        }
+        else
+        {
+            if(capture)
+            {
+                remove(to, (captured - 1) / 6, (captured - 1) % 6);
+            }
+            else if(type == PAWN && to == epSquare())
+            {
+                entry |= EN_PASSANT_FLAG;
+                capture = true;
+                int victim = (from & ~7) | (to & 7); //on the row the pawn left, in the column it goes to
+                captured = codeAt(victim);
+                remove(victim, 1 - colour, PAWN);
+            }
+            else if(type == PAWN && (to - from == 16 || from - to == 16)
+                    && (Attacks.PAWN[colour][(from + to) >>> 1] & pieces(1 - colour, PAWN)) != 0)
+            {
+                //only kept when an enemy pawn can take it, so the key does not tell equal positions apart
+                epSquare = (from + to) >>> 1;
+            }
+            put(to, colour, Move.promotion(move) == 0 ? type : Move.promotion(move));
+        }
+        undo[undoSize++] = entry | (long) captured << CAPTURED_SHIFT;
+
+        setCastlingRights(castlingRights() & ~(castlingRightsLost(from) | castlingRightsLost(to)));
+        setEpSquare(epSquare);
+        setHalfmoveClock(type == PAWN || capture ? 0 : halfmoveClock() + 1);
+        setSideToMove(1 - colour);
+    }
+
+    /**
+     * Takes back the last move played with makeMove, restoring the pieces and the position state.
+     * @param move the move that was played
+     */
+    public void unmakeMove(int move)
+    {
+        long entry = undo[--undoSize];
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int captured = (int) (entry >>> CAPTURED_SHIFT) & 0xFF;
+        if((entry & CASTLING_FLAG) != 0)
+        {
+            int colour = (captured - 1) / 6;
+            int row = from & ~7;
+            remove(row + (to > from ? 6 : 2), colour, KING);
+            remove(row + (to > from ? 5 : 3), colour, ROOK);
+            put(to, colour, ROOK);
+            put(from, colour, KING);
+        }
+        else
+        {
+            int code = codeAt(to);
+            int colour = (code - 1) / 6;
+            remove(to, colour, (code - 1) % 6);
+            put(from, colour, Move.promotion(move) == 0 ? (code - 1) % 6 : PAWN);
+            if(captured != 0)
+            {
+                int square = (entry & EN_PASSANT_FLAG) != 0 ? (from & ~7) | (to & 7) : to;
+                put(square, (captured - 1) / 6, (captured - 1) % 6);
+            }
+        }
+        long state = entry & UNDO_STATE_MASK;
+        words[KEY] ^= stateKey(words[STATE]) ^ stateKey(state);
+        words[STATE] = state;
+    }
+
+    /**
+     * Passes the move to the other side, for the null move pruning of a search. The en passant square is
+     * dropped and the halfmove clock reset, so repetitions are never looked for across a null move.
+     */
+    public void makeNullMove()
+    {
+        if(undo == null) undo = new long[UNDO_CAPACITY];
+        else if(undoSize == undo.length) undo = Arrays.copyOf(undo, undoSize * 2);
+        undo[undoSize++] = words[STATE] & UNDO_STATE_MASK;
+        setEpSquare(-1);
+        setHalfmoveClock(0);
+        setSideToMove(1 - sideToMove());
+    }
+
+    /**
+     * Takes back the null move played last with makeNullMove.
+     */
+    public void unmakeNullMove()
+    {
+        long state = undo[--undoSize] & UNDO_STATE_MASK;
+        words[KEY] ^= stateKey(words[STATE]) ^ stateKey(state);
+        words[STATE] = state;
+    }
+
+    private static long stateKey(long state)
+    {
+        return Zobrist.state((int) state & 15, ((int) (state >>> EP_SHIFT) & 127) - 1, (int) (state >>> SIDE_SHIFT) & 1);
+    }
+
+    /**
+     * @return the number of moves on the undo stack
+     */
+    public int undoSize()
+    {
+        return undoSize;
+    }
+
+    /**
+     * Checks if any piece of the given colour attacks the square, using the attack maps.
+     * @param square the square index, 0-63
+     * @param byColour the colour index of the attacking side
+     * @return true if the square is attacked by the given colour, false otherwise
+     */
+    public boolean isAttacked(int square, int byColour)
+    {
+        return (attackedBy(byColour) & (1L << square)) != 0;
+    }
+
+    /**
+     * Checks if any piece of the given colour attacks the square, with sliding pieces blocked by the
+     * given occupancy instead of the current one. Computed from the attack tables, not from the attack maps.
+     * The square is used as the origin of every kind of attack: if a knight standing on the square
+     * would reach an enemy knight, that knight attacks the square, and so on for the other pieces.
+     */
+    public boolean isAttacked(int square, int byColour, long occupied)
+    {
+        if((Attacks.KNIGHT[square] & pieces(byColour, KNIGHT)) != 0) return true;
+        if((Attacks.KING[square] & pieces(byColour, KING)) != 0) return true;
+        //a pawn of byColour attacks the square if a pawn of the other colour would attack the pawn from there
+        if((Attacks.PAWN[1 - byColour][square] & pieces(byColour, PAWN)) != 0) return true;
+        long queens = pieces(byColour, QUEEN);
+        if((Attacks.rook(square, occupied) & (pieces(byColour, ROOK) | queens)) != 0) return true;
+        return (Attacks.bishop(square, occupied) & (pieces(byColour, BISHOP) | queens)) != 0;
+    }
+
+    /**
+     * Finds the pieces of both colours attacking the square, with sliding pieces blocked by the given
+     * occupancy, like {@link #isAttacked(int, int, long)}. Pieces missing from the occupancy still count, so
+     * callers mask the result with it when they take pieces off.
+     * @param square the square index, 0-63
+     * @param occupied the occupancy the sliding pieces see
+     * @return the attackers of the square
+     */
+    public long attackersTo(int square, long occupied)
+    {
+        long rooks = words[ROOK] | words[6 + ROOK] | words[QUEEN] | words[6 + QUEEN];
+        long bishops = words[BISHOP] | words[6 + BISHOP] | words[QUEEN] | words[6 + QUEEN];
+        return (Attacks.KNIGHT[square] & (words[KNIGHT] | words[6 + KNIGHT]))
+                | (Attacks.KING[square] & (words[KING] | words[6 + KING]))
+                | (Attacks.PAWN[BLACK][square] & words[PAWN])
+                | (Attacks.PAWN[WHITE][square] & words[6 + PAWN])
+                | (Attacks.rook(square, occupied) & rooks)
+                | (Attacks.bishop(square, occupied) & bishops);
+    }
+
+    //SHIFT BASED ATTACK SETS, used to fill the tables in Attacks
+
+    public static long knightAttacks(long knights)
+    {
+        long l1 = (knights >>> 1) & ~FILE_H;
+        long l2 = (knights >>> 2) & ~(FILE_H | (FILE_H >>> 1));
+        long r1 = (knights << 1) & ~FILE_A;
+        long r2 = (knights << 2) & ~(FILE_A | (FILE_A << 1));
+        long h1 = l1 | r1;
+        long h2 = l2 | r2;
+        return (h1 << 16) | (h1 >>> 16) | (h2 << 8) | (h2 >>> 8);
+    }
+
+    public static long kingAttacks(long kings)
+    {
+        long attacks = ((kings << 1) & ~FILE_A) | ((kings >>> 1) & ~FILE_H);
+        long row = kings | attacks;
+        return attacks | (row << 8) | (row >>> 8);
+    }
+
+    /**
+     * White pawns attack towards row 7, black pawns towards row 0.
+     */
+    public static long pawnAttacks(long pawns, int colour)
+    {
+        if(colour == WHITE) return ((pawns << 9) & ~FILE_A) | ((pawns << 7) & ~FILE_H);
+        return ((pawns >>> 7) & ~FILE_A) | ((pawns >>> 9) & ~FILE_H);
+    }
+}
@@ -1,55 +1,80 @@
 package com.andrei.game;
 
-import com.andrei.pieces.*;
-
-import java.util.ArrayList;
+import com.andrei.pieces.Piece;
 
 /**
  * Models the chess board: an 8x8 matrix of tiles.
  * Each tile has a piece on it, or is empty. The constructor fills the board with the
  * pieces in their starting positions.
  * <p>
+ * The tiles are views of a {@link BitBoard}, which holds the whole position in one long array: the pieces,
+ * a mailbox of the squares and the castling rights, en passant square and halfmove clock. Pieces are shared
+ * immutable instances, so a board is cheap to copy and occupancy and attack queries are answered from the
+ * bitboards instead of walking the tiles.
+ * <p>
  * Has an optional parameter for testing purposes. In test mode, the board is filled
  * with 2 kings and a white queen allowing for testing of the game logic (check, checkmate, stalemate).
  */
 public class ChessBoard {
     public Tile[][] boardMatrix = new Tile[8][8];
+    private final BitBoard bitBoard = new BitBoard();
+
     public ChessBoard(boolean test) {
-        //ADD TILES: 8x8 matrix of tiles. Colour alternates between black and white.
+        addTiles();
+        // testing mode
+        if(test)
+        {
+            boardMatrix[7][7].setPiece(Piece.of(BitBoard.KING, Colour.BLACK));
+            boardMatrix[6][5].setPiece(Piece.of(BitBoard.KING, Colour.WHITE));
+            boardMatrix[0][6].setPiece(Piece.of(BitBoard.QUEEN, Colour.WHITE));
+            return;
+        }
+
+        //ADD PIECES: 8 pawns, 2 rooks, 2 knights, 2 bishops, 1 queen, 1 king for each colour.
+        addPieces(boardMatrix);
+        bitBoard.setCastlingRights(BitBoard.WHITE_KINGSIDE | BitBoard.WHITE_QUEENSIDE
+                | BitBoard.BLACK_KINGSIDE | BitBoard.BLACK_QUEENSIDE);
+    }
+
+    /**
+     * Creates a copy of the other board. The position is copied in one go from its bitboards,
+     * the move history is not copied.
+     * @param other the board to copy
+     */
+    public ChessBoard(ChessBoard other) {
+        this(other.bitBoard);
+    }
+
+    /**
+     * Creates a board holding the given position, for example one read with {@link Fen#parse}.
+     * @param position the position to copy
+     */
+    public ChessBoard(BitBoard position) {
+        addTiles();
+        bitBoard.copyFrom(position);
+    }
+
+    /**
+     * Adds the 8x8 matrix of tiles, views of the bitboards. Colour alternates between black and white.
+     */
+    private void addTiles()
+    {
         for(int i=0; i<8; i++)
         {
             for(int j=0; j < 8; j++)
             {
                 if(i%2 == 0)
                 {
-                    if(j%2 == 0) boardMatrix[i][j] = new Tile(i,j, Colour.BLACK);
-                    else boardMatrix[i][j] = new Tile(i,j,Colour.WHITE);
+                    if(j%2 == 0) boardMatrix[i][j] = new Tile(bitBoard,i,j,Colour.BLACK);
+                    else boardMatrix[i][j] = new Tile(bitBoard,i,j,Colour.WHITE);
                 }
                 else
                 {
-                    if(j%2 == 0) boardMatrix[i][j] = new Tile(i,j,Colour.WHITE);
-                    else boardMatrix[i][j] = new Tile(i,j,Colour.BLACK);
+                    if(j%2 == 0) boardMatrix[i][j] = new Tile(bitBoard,i,j,Colour.WHITE);
+                    else boardMatrix[i][j] = new Tile(bitBoard,i,j,Colour.BLACK);
                 }
             }
         }
-        // testing mode
-        if(test)
-        {
-            for(int i=0; i<8; i++)
-            {
-                for(int j=0; j < 8; j++)
-                {
-                    boardMatrix[i][j].setPiece(null);
-                }
-            }
-            boardMatrix[7][7].setPiece(new King(Colour.BLACK));
-            boardMatrix[6][5].setPiece(new King(Colour.WHITE));
-            boardMatrix[0][6].setPiece(new Queen(Colour.WHITE));
-            return;
-        }
-
-        //ADD PIECES: 8 pawns, 2 rooks, 2 knights, 2 bishops, 1 queen, 1 king for each colour.
-        addPieces(boardMatrix);
     }
 
     /**
@@ -61,100 +86,64 @@ public class ChessBoard {
         //ADD PAWNS
         for(int j=0; j < 8; j++)
         {
-            boardMatrix[1][j].setPiece(new Pawn(Colour.WHITE));
+            boardMatrix[1][j].setPiece(Piece.of(BitBoard.PAWN, Colour.WHITE));
 
-            boardMatrix[6][j].setPiece(new Pawn(Colour.BLACK));
+            boardMatrix[6][j].setPiece(Piece.of(BitBoard.PAWN, Colour.BLACK));
         }
         //ADD KNIGHTS
-        boardMatrix[0][1].setPiece(new Knight(Colour.WHITE));
-        boardMatrix[0][6].setPiece(new Knight(Colour.WHITE));
+        boardMatrix[0][1].setPiece(Piece.of(BitBoard.KNIGHT, Colour.WHITE));
+        boardMatrix[0][6].setPiece(Piece.of(BitBoard.KNIGHT, Colour.WHITE));
 
 
-        boardMatrix[7][1].setPiece(new Knight(Colour.BLACK));
+        boardMatrix[7][1].setPiece(Piece.of(BitBoard.KNIGHT, Colour.BLACK));
 
-        boardMatrix[7][6].setPiece(new Knight(Colour.BLACK));
+        boardMatrix[7][6].setPiece(Piece.of(BitBoard.KNIGHT, Colour.BLACK));
 
         //ADD ROOKS
-        boardMatrix[0][0].setPiece(new Rook(Colour.WHITE));
-        boardMatrix[0][7].setPiece(new Rook(Colour.WHITE));
+        boardMatrix[0][0].setPiece(Piece.of(BitBoard.ROOK, Colour.WHITE));
+        boardMatrix[0][7].setPiece(Piece.of(BitBoard.ROOK, Colour.WHITE));
 
-        boardMatrix[7][0].setPiece(new Rook(Colour.BLACK));
-        boardMatrix[7][7].setPiece(new Rook(Colour.BLACK));
+        boardMatrix[7][0].setPiece(Piece.of(BitBoard.ROOK, Colour.BLACK));
+        boardMatrix[7][7].setPiece(Piece.of(BitBoard.ROOK, Colour.BLACK));
         //ADD BISHOPS
-        boardMatrix[0][2].setPiece(new Bishop(Colour.WHITE));
-        boardMatrix[0][5].setPiece(new Bishop(Colour.WHITE));
+        boardMatrix[0][2].setPiece(Piece.of(BitBoard.BISHOP, Colour.WHITE));
+        boardMatrix[0][5].setPiece(Piece.of(BitBoard.BISHOP, Colour.WHITE));
 
-        boardMatrix[7][2].setPiece(new Bishop(Colour.BLACK));
-        boardMatrix[7][5].setPiece(new Bishop(Colour.BLACK));
+        boardMatrix[7][2].setPiece(Piece.of(BitBoard.BISHOP, Colour.BLACK));
+        boardMatrix[7][5].setPiece(Piece.of(BitBoard.BISHOP, Colour.BLACK));
 
         //ADD QUEENS
-        boardMatrix[0][3].setPiece(new Queen(Colour.WHITE));
+        boardMatrix[0][3].setPiece(Piece.of(BitBoard.QUEEN, Colour.WHITE));
 
-        boardMatrix[7][3].setPiece(new Queen(Colour.BLACK));
+        boardMatrix[7][3].setPiece(Piece.of(BitBoard.QUEEN, Colour.BLACK));
         //ADD KINGS
-        boardMatrix[0][4].setPiece(new King(Colour.WHITE));
+        boardMatrix[0][4].setPiece(Piece.of(BitBoard.KING, Colour.WHITE));
 
-        boardMatrix[7][4].setPiece(new King(Colour.BLACK));
+        boardMatrix[7][4].setPiece(Piece.of(BitBoard.KING, Colour.BLACK));
     }
 
 
     /**
      * Checks if the king of the given colour is in check.
-     * The method will automatically find the king of the given colour.
-     * It will then check if any of the other pieces can move to the king's position.
-     * If any of the other pieces can move to the king's position, the king is in check.
-     * The method checkMove() return 0 if the move is valid.
+     * The cached square of the king is tested against the attack map of the enemy pieces.
      * @param colour the colour of the king to find
      * @return boolean value indicating whether the king of the given colour is in check
      */
     public boolean isInCheck(Colour colour)
     {
-        Tile king;
-        if(colour == Colour.WHITE)
-        {
-            king = findKing(Colour.WHITE);
-        }
-        else //Colour.BLACK
-        {
-            king = findKing(Colour.BLACK);
-        }
-
-        for(int i=0; i<8; i++)
-        {
-            for(int j=0; j < 8; j++)
-            {
-                Tile sourceTile = boardMatrix[i][j];
-                if(sourceTile.getPiece()!= null && sourceTile != king)
-                {
-                    if(sourceTile.getPiece().checkMove(this,sourceTile,king)==0)
-                    {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return bitBoard.isInCheck(colour.ordinal());
     }
 
     /**
-     * Finds the king of the given colour.
-     * Iterates through the board matrix and returns the tile containing the king of the given colour.
+     * Finds the king of the given colour using the cached king square.
      * @param colour the colour of the king to find
-     * @return the tile containing the king of the given colour
+     * @return the tile containing the king of the given colour, or null if there is no such king
      */
     public Tile findKing(Colour colour)
     {
-        for(int i=0; i<8; i++)
-        {
-            for(int j=0; j < 8; j++)
-            {
-                if(boardMatrix[i][j].getPiece() instanceof King && boardMatrix[i][j].getPiece().getColour() == colour)
-                {
-                    return  boardMatrix[i][j];
-                }
-            }
-        }
-        return null;
+        int king = bitBoard.kingSquare(colour.ordinal());
+        if(king < 0) return null;
+        return boardMatrix[king >>> 3][king & 7];
     }
 
     /**
@@ -182,42 +171,42 @@ public class ChessBoard {
 
     /**
      * Checks if the player of the given colour has any legal moves.
-     * Iterates through the board matrix and checks if any of the pieces of the given colour has any legal moves.
-     * Of those legal moves, it checks if any of them do NOT cause check for our player. If at least
-     * one move that does not cause check is found, the method returns false, i.e. the player has at least one legal move.
-     * If no legal moves are found that do not cause check, the method returns true, i.e. the player has no more legal
-     * moves to play.
+     * The pieces giving check and the pinned pieces are found once, then the legal moves of the given
+     * colour are visited one by one, and the generation stops at the first one.
+     * If no legal moves are found, the method returns true, i.e. the player has no more legal moves to play.
      * @param colour the colour for the player
      * @return boolean value indicating whether the king of the given colour has any legal moves
      */
     private boolean noMoreLegalMoves(Colour colour) {
-        for(int i=0; i<8; i++)
-        {
-            for(int j=0; j < 8; j++)
-            {
-                if(boardMatrix[i][j].getPiece() != null && boardMatrix[i][j].getPiece().getColour() == colour)
-                {
-                    Piece piece = boardMatrix[i][j].getPiece();
-                    ArrayList<Tile> arr = piece.getLegalMoves(this,boardMatrix[i][j]);
-                    for(Tile candidateTile : arr)
-                    {
-                        if(!causesCheck(boardMatrix[i][j],candidateTile,colour))
-                        {
-                            return false;
-                        }
-                    }
-                }
-            }
-        }
-        return true;
+        return !MoveGenerator.hasLegalMove(bitBoard, colour.ordinal());
     }
 
 
+    /**
+     * Generates all the legal moves of the given colour into a reusable list, without allocating.
+     * @param colour the colour of the player
+     * @param moves the list to fill, cleared first
+     * @return the number of legal moves
+     */
+    public int generateMoves(Colour colour, MoveList moves)
+    {
+        return MoveGenerator.generateLegal(bitBoard, colour.ordinal(), moves);
+    }
+
+    /**
+     * Visits the legal moves of the given colour until the visitor returns false.
+     * @return true if every move was visited, false if the visitor stopped early
+     */
+    public boolean forEachMove(Colour colour, MoveVisitor visitor)
+    {
+        return MoveGenerator.forEachLegalMove(bitBoard, colour.ordinal(), visitor);
+    }
+
     /**
      * Checks if the move from start to end causes check for the player of the given colour.
-     * The piece is temporarily moved to the end tile and then the method checks if the king of the given colour is in check.
-     * Then the piece is moved back to the start tile and the method returns the boolean value indicating whether the king
-     * of the given colour is in check.
+     * The move is not played: the legal targets of the piece are computed from the pieces giving check
+     * and the pinned pieces, so the board is left untouched. The move is assumed to be valid for the
+     * piece on the start tile, i.e. its checkMove returned 0.
      * @param start the tile where the piece is located
      * @param end the tile where the piece is going to move
      * @param colour the colour of the player
@@ -225,11 +214,10 @@ public class ChessBoard {
      */
     public boolean causesCheck(Tile start, Tile end, Colour colour)
     {
-        Piece aux = Game.movePiece(start,end);
-        boolean ok = this.isInCheck(colour);
-        start.setPiece(aux);
-        Game.swapPieces(start,end);
-        return ok;
+        int from = start.getX() * 8 + start.getY();
+        long legal = MoveGenerator.legalTargets(bitBoard, from,
+                MoveGenerator.checkers(bitBoard, colour.ordinal()), MoveGenerator.pinned(bitBoard, colour.ordinal()));
+        return (legal & (1L << (end.getX() * 8 + end.getY()))) == 0;
     }
 
     /**
@@ -243,6 +231,63 @@ public class ChessBoard {
         return boardMatrix[x][y];
     }
 
+    /**
+     * Castling rights as a bit set of the BitBoard castling constants. All rights are given at the start
+     * of a normal game, and makeMove drops them when the king or the rook on a starting corner moves or
+     * is captured.
+     * @return the castling rights of this board
+     */
+    public int castlingRights()
+    {
+        return bitBoard.castlingRights();
+    }
+
+    /**
+     * The key is kept up to date by the bitboards on every change of the board: moves, castling and
+     * promotions alike. Equal positions have equal keys.
+     * @return the Zobrist key of the position, covering the pieces, side to move, castling rights and en passant column
+     */
+    public long getKey()
+    {
+        return bitBoard.key();
+    }
+
+    /**
+     * @return the square a pawn can capture onto en passant, or -1 if the last move was not a double pawn push
+     */
+    public int getEpSquare()
+    {
+        return bitBoard.epSquare();
+    }
+
+    /**
+     * Plays a move on the board. The captured piece and the position state are pushed on the undo stack
+     * of the bitboards, so unmakeMove can restore the position exactly. The move is assumed to be legal.
+     * A pawn reaching the last row without a promotion piece stays a pawn until promotePawns is called.
+     * @param move the move, encoded with {@link Move}
+     */
+    public void makeMove(int move)
+    {
+        bitBoard.makeMove(move);
+    }
+
+    /**
+     * Takes back the last move played with makeMove, restoring the pieces and the position state.
+     * @param move the move that was played
+     */
+    public void unmakeMove(int move)
+    {
+        bitBoard.unmakeMove(move);
+    }
+
+    /**
+     * @return the bitboards mirroring the pieces on this board
+     */
+    public BitBoard getBitBoard()
+    {
+        return bitBoard;
+    }
+
     /**
      * Utility method for printing the board to system out.
      * @param printPieces boolean value indicating whether to print the pieces or just the colours
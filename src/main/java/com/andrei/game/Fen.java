@@ -0,0 +1,138 @@
+package com.andrei.game;
+
+/**
+ * Reads and writes positions in Forsyth-Edwards Notation. Cannot be instantiated.
+ * <p>
+ * A FEN lists the rows from 8 down to 1, each from column a to h, then the side to move, the castling
+ * rights, the en passant square, the halfmove clock and the move number. The last two fields may be left out.
+ */
+public class Fen {
+    private Fen() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String PIECES = "pnbrqk";
+
+    /**
+     * The en passant square is only kept if a pawn can capture onto it, like after makeMove, so the
+     * Zobrist key of the board does not depend on how the FEN was written.
+     * @param fen the position
+     * @return a new board holding the position
+     * @throws IllegalArgumentException if the FEN cannot be read
+     */
+    public static BitBoard parse(String fen)
+    {
+        String[] fields = fen.trim().split("\\s+");
+        if(fields.length < 4) throw new IllegalArgumentException("Incomplete FEN: " + fen);
+        BitBoard board = new BitBoard();
+        int x = 7;
+        int y = 0;
+        for(char c : fields[0].toCharArray())
+        {
+            if(c == '/')
+            {
+                if(y != 8) throw new IllegalArgumentException("Bad row in FEN: " + fen);
+                x--;
+                y = 0;
+            }
+            else if(c >= '1' && c <= '8') y += c - '0';
+            else
+            {
+                int type = PIECES.indexOf(Character.toLowerCase(c));
+                if(type < 0 || x < 0 || y > 7) throw new IllegalArgumentException("Bad piece placement in FEN: " + fen);
+                board.put(x * 8 + y, Character.isUpperCase(c) ? BitBoard.WHITE : BitBoard.BLACK, type);
+                y++;
+            }
+        }
+        if(x != 0 || y != 8) throw new IllegalArgumentException("Bad piece placement in FEN: " + fen);
+
+        if(fields[1].equals("b")) board.setSideToMove(BitBoard.BLACK);
+        else if(!fields[1].equals("w")) throw new IllegalArgumentException("Bad side to move in FEN: " + fen);
+
+        int rights = 0;
+        for(char c : fields[2].toCharArray())
+        {
+            switch(c)
+            {
+                case 'K': rights |= BitBoard.WHITE_KINGSIDE; break;
+                case 'Q': rights |= BitBoard.WHITE_QUEENSIDE; break;
+                case 'k': rights |= BitBoard.BLACK_KINGSIDE; break;
+                case 'q': rights |= BitBoard.BLACK_QUEENSIDE; break;
+                case '-': break;
+                default: throw new IllegalArgumentException("Bad castling rights in FEN: " + fen);
+            }
+        }
+        board.setCastlingRights(rights);
+
+        if(!fields[3].equals("-"))
+        {
+            int ep = parseSquare(fields[3]);
+            int side = board.sideToMove();
+            if((Attacks.PAWN[1 - side][ep] & board.pieces(side, BitBoard.PAWN)) != 0) board.setEpSquare(ep);
+        }
+        if(fields.length > 4)
+        {
+            try
+            {
+                board.setHalfmoveClock(Integer.parseInt(fields[4]));
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Bad halfmove clock in FEN: " + fen, e);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * @param board the position
+     * @return the FEN of the position, with the move number set to 1
+     */
+    public static String toFen(BitBoard board)
+    {
+        StringBuilder fen = new StringBuilder();
+        for(int x = 7; x >= 0; x--)
+        {
+            int empty = 0;
+            for(int y = 0; y < 8; y++)
+            {
+                int code = board.codeAt(x * 8 + y);
+                if(code == 0)
+                {
+                    empty++;
+                    continue;
+                }
+                if(empty > 0) fen.append(empty);
+                empty = 0;
+                char c = PIECES.charAt((code - 1) % 6);
+                fen.append(code <= 6 ? Character.toUpperCase(c) : c);
+            }
+            if(empty > 0) fen.append(empty);
+            if(x > 0) fen.append('/');
+        }
+        fen.append(board.sideToMove() == BitBoard.WHITE ? " w " : " b ");
+        int rights = board.castlingRights();
+        if(rights == 0) fen.append('-');
+        if((rights & BitBoard.WHITE_KINGSIDE) != 0) fen.append('K');
+        if((rights & BitBoard.WHITE_QUEENSIDE) != 0) fen.append('Q');
+        if((rights & BitBoard.BLACK_KINGSIDE) != 0) fen.append('k');
+        if((rights & BitBoard.BLACK_QUEENSIDE) != 0) fen.append('q');
+        fen.append(' ').append(board.epSquare() < 0 ? "-" : Move.squareName(board.epSquare()));
+        return fen.append(' ').append(board.halfmoveClock()).append(" 1").toString();
+    }
+
+    /**
+     * @param name a square name like "e3"
+     * @return the square index, 0-63
+     * @throws IllegalArgumentException if the name is not a square
+     */
+    public static int parseSquare(String name)
+    {
+        if(name.length() != 2 || name.charAt(0) < 'a' || name.charAt(0) > 'h' || name.charAt(1) < '1' || name.charAt(1) > '8')
+        {
+            throw new IllegalArgumentException("Bad square: " + name);
+        }
+        return (name.charAt(1) - '1') * 8 + (name.charAt(0) - 'a');
+    }
+}
@@ -6,28 +6,44 @@ import com.andrei.except.IllegalMoveException;
 import com.andrei.pieces.*;
 
 import static com.andrei.Main.TEST_SETUP;
-import static com.andrei.game.Images.*;
 
 /**
  * Class that represents the game itself.
  * Has a ChessBoard object and a turn variable, and a score for each player.
  * Optionally has a test setup. The main method is the move method, called from the controller.
+ * <p>
+ * The board is only changed by the thread playing the game. After every change the game publishes an
+ * immutable {@link Position} snapshot through a volatile field, so the renderer, spectators and analysis
+ * workers can read a consistent position from any thread without locking, while the game moves on.
  */
 public class Game {
     private Colour turn = Colour.WHITE;
     private ChessBoard board;
+    private volatile Position position;
     private int blackScore = 0;
     private int whiteScore = 0;
 
     public Game() {
         board = new ChessBoard(TEST_SETUP);
+        position = Position.of(board.getBitBoard(), turn);
+    }
+
+    /**
+     * Starts a game from the given board, with the side to move of the board.
+     * @param board the board to play on
+     */
+    public Game(ChessBoard board) {
+        this.board = board;
+        turn = board.getBitBoard().sideToMove() == BitBoard.WHITE ? Colour.WHITE : Colour.BLACK;
+        position = Position.of(board.getBitBoard(), turn);
     }
 
     /**
      * The method check if the x and y coordinates are in the range of the board.
      * If they are, we check if we are trying to move an empty tile. If not,
      * we grab the start and end pieces and check if we are the correct colour for this turn.
-     * If the move is valid, we check if it causes check. If it doesn't, we move the piece.
+     * If the move is valid, we check if it causes check. If it doesn't, the board plays the move,
+     * castling and en passant included.
      * @param x1 - start x coordinate
      * @param y1 - start y coordinate
      * @param x2 - end x coordinate
@@ -45,7 +61,6 @@ public class Game {
         if(start == end) throw new IllegalMoveException("Can't move onto the same tile!");
 
         Piece startPiece = start.getPiece();
-        Piece endPiece = end.getPiece();
 
         if (!colorMatchTurn(startPiece))
             throw new IllegalMoveException("Choose correct colour piece for your turn! Current turn: " + turn);
@@ -54,12 +69,10 @@ public class Game {
 
         if (board.causesCheck(start, end, turn)) throw new IllegalMoveException("Move will cause check!");
 
-        if(isCastlingMove(startPiece, endPiece)) doCastling(start, end);
-        else {
-            movePiece(start, end);
-            end.getPiece().setHasMoved(true);
-        }
+        int move = Move.of(x1 * 8 + y1, x2 * 8 + y2);
+        board.makeMove(move);
         changeTurn();
+        position = position.next(board.getBitBoard(), turn, move);
     }
 
     /**
@@ -96,54 +109,20 @@ public class Game {
     {
         turn = Colour.WHITE;
         board = new ChessBoard(TEST_SETUP);
+        position = Position.of(board.getBitBoard(), turn);
     }
 
     /**
-     * Does a castling move.
+     * Does a castling move. The king and the rook keep their piece objects and are moved by the board,
+     * which also drops the castling rights of that colour.
      * @param start - start tile, must be the king
-     * @param end - end tile
+     * @param end - end tile, the rook to castle with
      */
     public void doCastling(Tile start, Tile end)
     {
-        Piece startPiece = start.getPiece();
-        if(startPiece.getColour() == Colour.WHITE)
-        {
-                if(end.getY() == 0)
-                {
-                    board.boardMatrix[0][2].setPiece(new King(Colour.WHITE));
-                    board.boardMatrix[0][2].getPiece().setHasMoved(true);
-
-                    board.boardMatrix[0][3].setPiece(new Rook(Colour.WHITE));
-                    board.boardMatrix[0][3].getPiece().setHasMoved(true);
-                }
-                else
-                {
-                    board.boardMatrix[0][6].setPiece(new King(Colour.WHITE));
-                    board.boardMatrix[0][6].getPiece().setHasMoved(true);
-
-                    board.boardMatrix[0][5].setPiece(new Rook(Colour.WHITE));
-                    board.boardMatrix[0][5].getPiece().setHasMoved(true);
-                }
-        }
-        else
-        {
-                if(end.getY() == 0)
-                {
-                    board.boardMatrix[7][2].setPiece(new King(Colour.BLACK));
-                    board.boardMatrix[7][2].getPiece().setHasMoved(true);
-                    board.boardMatrix[7][3].setPiece(new Rook(Colour.BLACK));
-                    board.boardMatrix[7][3].getPiece().setHasMoved(true);
-                }
-                else
-                {
-                    board.boardMatrix[7][6].setPiece(new King(Colour.BLACK));
-                    board.boardMatrix[7][6].getPiece().setHasMoved(true);
-                    board.boardMatrix[7][5].setPiece(new Rook(Colour.BLACK));
-                    board.boardMatrix[7][5].getPiece().setHasMoved(true);
-                }
-        }
-        start.setPiece(null);
-        end.setPiece(null);
+        int move = Move.of(start.getX() * 8 + start.getY(), end.getX() * 8 + end.getY());
+        board.makeMove(move);
+        position = position.next(board.getBitBoard(), turn, move);
     }
 
     /**
@@ -175,6 +154,7 @@ public class Game {
      */
     public void promotePawns(String piece)
     {
+        boolean promoting = needsPromote();
         for(int i=0; i<8; i++)
         {
             Piece candidatePiece = board.boardMatrix[0][i].getPiece();
@@ -182,21 +162,20 @@ public class Game {
             {
                 if(piece.equalsIgnoreCase("queen"))
                 {
-                    board.boardMatrix[0][i].setPiece(new Queen(Colour.BLACK));
+                    board.boardMatrix[0][i].setPiece(Piece.of(BitBoard.QUEEN, Colour.BLACK));
                 }
                 else if(piece.equalsIgnoreCase("rook"))
                 {
-                    board.boardMatrix[0][i].setPiece(new Rook(Colour.BLACK));
+                    board.boardMatrix[0][i].setPiece(Piece.of(BitBoard.ROOK, Colour.BLACK));
                 }
                 else if(piece.equalsIgnoreCase("bishop"))
                 {
-                    board.boardMatrix[0][i].setPiece(new Bishop(Colour.BLACK));
+                    board.boardMatrix[0][i].setPiece(Piece.of(BitBoard.BISHOP, Colour.BLACK));
                 }
                 else if(piece.equalsIgnoreCase("knight"))
                 {
-                    board.boardMatrix[0][i].setPiece(new Knight(Colour.BLACK));
+                    board.boardMatrix[0][i].setPiece(Piece.of(BitBoard.KNIGHT, Colour.BLACK));
                 }
-                board.boardMatrix[0][i].getPiece().setHasMoved(true);
                 break;
             }
 
@@ -206,24 +185,44 @@ public class Game {
             {
                 if(piece.equalsIgnoreCase("queen"))
                 {
-                    board.boardMatrix[7][i].setPiece(new Queen(Colour.WHITE));
+                    board.boardMatrix[7][i].setPiece(Piece.of(BitBoard.QUEEN, Colour.WHITE));
                 }
                 else if(piece.equalsIgnoreCase("rook"))
                 {
-                    board.boardMatrix[7][i].setPiece(new Rook(Colour.WHITE));
+                    board.boardMatrix[7][i].setPiece(Piece.of(BitBoard.ROOK, Colour.WHITE));
                 }
                 else if(piece.equalsIgnoreCase("bishop"))
                 {
-                    board.boardMatrix[7][i].setPiece(new Bishop(Colour.WHITE));
+                    board.boardMatrix[7][i].setPiece(Piece.of(BitBoard.BISHOP, Colour.WHITE));
                 }
                 else if(piece.equalsIgnoreCase("knight"))
                 {
-                    board.boardMatrix[7][i].setPiece(new Knight(Colour.WHITE));
+                    board.boardMatrix[7][i].setPiece(Piece.of(BitBoard.KNIGHT, Colour.WHITE));
                 }
-                board.boardMatrix[7][i].getPiece().setHasMoved(true);
                 break;
             }
         }
+        if(promoting)
+        {
+            //the pawn was the last piece moved, its move now records the promotion so it can be taken back
+            int last = position.getLastMove();
+            int promotion = board.getBitBoard().typeAt(Move.to(last));
+            position = position.replace(board.getBitBoard(), turn, Move.of(Move.from(last), Move.to(last), promotion));
+        }
+    }
+
+    /**
+     * Takes back the last move, promotion included, and publishes the position before it.
+     * @return true if a move was taken back, false if no move has been played since the game started
+     */
+    public boolean undoMove()
+    {
+        Position previous = position.getPrevious();
+        if(previous == null) return false;
+        board.unmakeMove(position.getLastMove());
+        turn = previous.getTurn();
+        position = previous;
+        return true;
     }
 
     /**
@@ -259,6 +258,14 @@ public class Game {
         return board;
     }
 
+    /**
+     * Safe to call from any thread.
+     * @return the snapshot of the current position, published after the last change of the board
+     */
+    public Position getPosition() {
+        return position;
+    }
+
     public Colour getTurn() {
         return turn;
     }
@@ -23,4 +23,22 @@ public class Images {
     public static final String BLACK_KING = "file:/" + Paths.get("piese","BLACK_KING.png").toAbsolutePath();
     public static final String EMPTY_TILE = "file:/" + Paths.get("piese","rmp.png").toAbsolutePath();
     public static final String ICON = "file:/" + Paths.get("ICON.png").toAbsolutePath();
+
+    //indexed by colour * 6 + type, like the bitboards
+    private static final String[] PIECES = {
+            WHITE_PAWN, WHITE_KNIGHT, WHITE_BISHOP, WHITE_ROOK, WHITE_QUEEN, WHITE_KING,
+            BLACK_PAWN, BLACK_KNIGHT, BLACK_BISHOP, BLACK_ROOK, BLACK_QUEEN, BLACK_KING
+    };
+
+    /**
+     * Pieces do not keep their image path, the GUI looks it up here, so this class is only loaded
+     * when something is drawn.
+     * @param type one of the type constants in BitBoard
+     * @param colour the colour of the piece
+     * @return the path of the image of the piece
+     */
+    public static String forPiece(int type, Colour colour)
+    {
+        return PIECES[colour.ordinal() * 6 + type];
+    }
 }
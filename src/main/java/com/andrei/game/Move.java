@@ -0,0 +1,62 @@
+package com.andrei.game;
+
+/**
+ * Moves encoded as ints, so they can be stored and passed around without allocating. Cannot be instantiated.
+ * <p>
+ * Bits 0-5 hold the start square, bits 6-11 the end square (both x*8 + y) and bits 12-14 the type of the
+ * piece a pawn is promoted to, or 0 for no promotion. Castling is a king move onto the square of its own
+ * rook, like in Game.move. The value 0 is never a valid move and is used as "no move".
+ */
+public class Move {
+    private Move() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static final int NONE = 0;
+
+    public static int of(int from, int to)
+    {
+        return from | to << 6;
+    }
+
+    /**
+     * @param promotion the type of the piece the pawn is promoted to, KNIGHT to QUEEN, or 0 for no promotion
+     */
+    public static int of(int from, int to, int promotion)
+    {
+        return from | to << 6 | promotion << 12;
+    }
+
+    public static int from(int move)
+    {
+        return move & 63;
+    }
+
+    public static int to(int move)
+    {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move)
+    {
+        return (move >>> 12) & 7;
+    }
+
+    /**
+     * @return the move in coordinate notation, for example "e2e4" or "e7e8q"
+     */
+    public static String toString(int move)
+    {
+        String text = squareName(from(move)) + squareName(to(move));
+        if(promotion(move) != 0) text += "pnbrqk".charAt(promotion(move));
+        return text;
+    }
+
+    /**
+     * @return the name of the square, columns a-h for y = 0-7 and rows 1-8 for x = 0-7
+     */
+    public static String squareName(int square)
+    {
+        return "" + (char) ('a' + (square & 7)) + (char) ('1' + (square >>> 3));
+    }
+}
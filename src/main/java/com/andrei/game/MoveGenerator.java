@@ -0,0 +1,366 @@
+package com.andrei.game;
+
+import static com.andrei.game.BitBoard.*;
+
+/**
+ * Generates the moves of a piece directly from the attack tables, following the same rules as the
+ * checkMove methods of the pieces. Cannot be instantiated.
+ * <p>
+ * Moves are returned as a bitboard of target squares. Castling is a king move onto the square of its
+ * own rook, like in Game.move.
+ * <p>
+ * {@link #targets} follows the checkMove rules only. {@link #legalTargets} also drops the moves that
+ * would leave the own king in check: the pieces giving check and the pinned pieces are computed once per
+ * position, and the targets are cut with masks instead of trying the moves on the board. The board is
+ * only read, so legality tests can run concurrently on a board nobody is changing.
+ * <p>
+ * {@link #generateLegal} and {@link #forEachLegalMove} produce whole moves, promotions included, into a
+ * reusable {@link MoveList} or a {@link MoveVisitor}, without allocating. For a search that tries the
+ * likely best moves first, {@link #generateNoisy} and {@link #generateQuiet} split the same moves in two
+ * halves, so the quiet moves need not be generated at all when a capture already refutes the position.
+ */
+public class MoveGenerator {
+    private MoveGenerator() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    private static final long RANK_3 = 0xFFL << 16;
+    private static final long RANK_6 = 0xFFL << 40;
+    private static final long PROMOTION_RANKS = RANK_1 | RANK_8;
+    private static final MoveVisitor STOP = move -> false;
+
+    /**
+     * @param board the position, including its castling rights and en passant square
+     * @param square the square of the piece to move
+     * @return the target squares of the piece on the square, or 0 if the square is empty
+     */
+    public static long targets(BitBoard board, int square)
+    {
+        int colour = board.colourAt(square);
+        if(colour < 0) return 0;
+        long notOwn = ~board.colour(colour);
+        long occupied = board.occupied();
+        switch(board.typeAt(square))
+        {
+            case PAWN:
+                return pawnTargets(board, square, colour);
+            case KNIGHT:
+                return Attacks.KNIGHT[square] & notOwn;
+            case BISHOP:
+                return Attacks.bishop(square, occupied) & notOwn;
+            case ROOK:
+                return Attacks.rook(square, occupied) & notOwn;
+            case QUEEN:
+                return Attacks.queen(square, occupied) & notOwn;
+            default: //KING
+                return (Attacks.KING[square] & notOwn) | castlingTargets(board, square, colour);
+        }
+    }
+
+    /**
+     * Pushes one tile forward onto an empty tile, two tiles from the starting row when both tiles
+     * are empty, and captures diagonally forward, also en passant.
+     */
+    private static long pawnTargets(BitBoard board, int square, int colour)
+    {
+        long empty = ~board.occupied();
+        long bit = 1L << square;
+        long enemies = board.colour(1 - colour);
+        int ep = board.epSquare();
+        //the en passant square is on row 5 after a black double push, on row 2 after a white one
+        if(ep >= 0 && (ep >= 32) == (colour == WHITE)) enemies |= 1L << ep;
+        long captures = Attacks.PAWN[colour][square] & enemies;
+        if(colour == WHITE)
+        {
+            long single = (bit << 8) & empty;
+            return captures | single | ((single & RANK_3) << 8) & empty;
+        }
+        long single = (bit >>> 8) & empty;
+        return captures | single | ((single & RANK_6) >>> 8) & empty;
+    }
+
+    /**
+     * Castling is possible if the right is still there, the king is not in check, there are no pieces
+     * between the king and the rook and the tiles the king crosses and lands on are not attacked.
+     * @return the squares of the rooks the king can castle with
+     */
+    private static long castlingTargets(BitBoard board, int square, int colour)
+    {
+        int rights = board.castlingRights() >>> (2 * colour) & 3;
+        if(rights == 0) return 0;
+        long attacked = board.attackedBy(1 - colour);
+        if((attacked & (1L << square)) != 0) return 0;
+        long path = Attacks.rook(square, board.occupied()); //reaches a rook only if nothing is in between
+        long targets = 0;
+        if((rights & WHITE_KINGSIDE) != 0 && (path & (1L << (square + 3))) != 0
+                && (attacked & castlingKingPath(square, square + 3)) == 0)
+        {
+            targets |= 1L << (square + 3);
+        }
+        if((rights & WHITE_QUEENSIDE) != 0 && (path & (1L << (square - 4))) != 0
+                && (attacked & castlingKingPath(square, square - 4)) == 0)
+        {
+            targets |= 1L << (square - 4);
+        }
+        return targets;
+    }
+
+    /**
+     * @param kingSquare the square of the king before castling
+     * @param rookSquare the square of the rook it castles with
+     * @return the two tiles the king crosses and lands on when castling
+     */
+    public static long castlingKingPath(int kingSquare, int rookSquare)
+    {
+        if(rookSquare > kingSquare) return 3L << (kingSquare + 1);
+        return 3L << (kingSquare - 2);
+    }
+
+    /**
+     * @param board the position
+     * @param colour the colour index of the king
+     * @return the enemy pieces attacking the king of the given colour
+     */
+    public static long checkers(BitBoard board, int colour)
+    {
+        int king = board.kingSquare(colour);
+        if(king < 0) return 0;
+        int enemy = 1 - colour;
+        long occupied = board.occupied();
+        long queens = board.pieces(enemy, QUEEN);
+        return (Attacks.KNIGHT[king] & board.pieces(enemy, KNIGHT))
+                | (Attacks.PAWN[colour][king] & board.pieces(enemy, PAWN))
+                | (Attacks.rook(king, occupied) & (board.pieces(enemy, ROOK) | queens))
+                | (Attacks.bishop(king, occupied) & (board.pieces(enemy, BISHOP) | queens));
+    }
+
+    /**
+     * A piece is pinned when it is the only piece between its king and an enemy slider aiming at the king.
+     * @param board the position
+     * @param colour the colour index of the king
+     * @return the pieces of the given colour pinned to their king
+     */
+    public static long pinned(BitBoard board, int colour)
+    {
+        int king = board.kingSquare(colour);
+        if(king < 0) return 0;
+        int enemy = 1 - colour;
+        long enemies = board.colour(enemy);
+        long queens = board.pieces(enemy, QUEEN);
+        //sliders that would reach the king if the own pieces were transparent
+        long snipers = (Attacks.rook(king, enemies) & (board.pieces(enemy, ROOK) | queens))
+                | (Attacks.bishop(king, enemies) & (board.pieces(enemy, BISHOP) | queens));
+        long pinned = 0;
+        for(; snipers != 0; snipers &= snipers - 1)
+        {
+            long between = Attacks.between(king, Long.numberOfTrailingZeros(snipers)) & board.occupied();
+            if(Long.bitCount(between) == 1) pinned |= between & board.colour(colour);
+        }
+        return pinned;
+    }
+
+    /**
+     * @return the target squares of the piece on the square that do not leave its own king in check
+     */
+    public static long legalTargets(BitBoard board, int square)
+    {
+        int colour = board.colourAt(square);
+        if(colour < 0) return 0;
+        return legalTargets(board, square, checkers(board, colour), pinned(board, colour));
+    }
+
+    /**
+     * Legal targets of a piece, given the checkers and pinned pieces of its side.
+     * The king may only go to squares the enemy does not attack; squares behind the king on the line of a
+     * checking slider count as attacked, since the king no longer blocks that line once it steps away.
+     * In double check only the king can move. In single check the other pieces must capture the checker
+     * or block the line between it and the king. A pinned piece must stay on the line through its king.
+     * En passant captures remove two pieces from the board, so they are tested on their own.
+     */
+    public static long legalTargets(BitBoard board, int square, long checkers, long pinned)
+    {
+        long targets = targets(board, square);
+        if(targets == 0) return 0;
+        int colour = board.colourAt(square);
+        int king = board.kingSquare(colour);
+        if(king < 0) return targets;
+        if(square == king)
+        {
+            long steps = targets & Attacks.KING[square] & ~board.attackedBy(1 - colour);
+            for(long sliders = checkers & ~board.pieces(1 - colour, KNIGHT) & ~board.pieces(1 - colour, PAWN); sliders != 0; sliders &= sliders - 1)
+            {
+                int slider = Long.numberOfTrailingZeros(sliders);
+                steps &= ~(Attacks.line(king, slider) & ~(1L << slider));
+            }
+            return steps | (targets & ~Attacks.KING[square]); //castling targets are already safe
+        }
+        long enPassant = 0;
+        int ep = board.epSquare();
+        if(ep >= 0 && (targets & (1L << ep)) != 0 && (board.pieces(colour, PAWN) & (1L << square)) != 0)
+        {
+            targets &= ~(1L << ep);
+            if(isLegalEnPassant(board, square, ep, colour, king)) enPassant = 1L << ep;
+        }
+        if(checkers != 0)
+        {
+            if((checkers & (checkers - 1)) != 0) return 0; //double check
+            targets &= checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        }
+        if((pinned & (1L << square)) != 0) targets &= Attacks.line(king, square);
+        return targets | enPassant;
+    }
+
+    /**
+     * Tests the king against every enemy piece with the occupancy after the capture: the capturing pawn
+     * has moved onto the en passant square and the captured pawn, one row behind it, is gone.
+     */
+    private static boolean isLegalEnPassant(BitBoard board, int from, int ep, int colour, int king)
+    {
+        int enemy = 1 - colour;
+        long captured = 1L << (colour == WHITE ? ep - 8 : ep + 8);
+        long occupied = (board.occupied() ^ (1L << from) ^ captured) | (1L << ep);
+        long queens = board.pieces(enemy, QUEEN);
+        return (Attacks.rook(king, occupied) & (board.pieces(enemy, ROOK) | queens)) == 0
+                && (Attacks.bishop(king, occupied) & (board.pieces(enemy, BISHOP) | queens)) == 0
+                && (Attacks.KNIGHT[king] & board.pieces(enemy, KNIGHT)) == 0
+                && (Attacks.PAWN[colour][king] & board.pieces(enemy, PAWN) & ~captured) == 0;
+    }
+
+    /**
+     * Fills the list with every legal move of the given colour. A pawn reaching the last row gives one
+     * move per promotion piece, queen first.
+     * @return the number of moves generated
+     */
+    public static int generateLegal(BitBoard board, int colour, MoveList moves)
+    {
+        moves.clear();
+        long checkers = checkers(board, colour);
+        long pinned = pinned(board, colour);
+        long pawns = board.pieces(colour, PAWN);
+        for(long own = board.colour(colour); own != 0; own &= own - 1)
+        {
+            int from = Long.numberOfTrailingZeros(own);
+            long targets = legalTargets(board, from, checkers, pinned);
+            boolean pawn = (pawns & (1L << from)) != 0;
+            for(; targets != 0; targets &= targets - 1)
+            {
+                int to = Long.numberOfTrailingZeros(targets);
+                if(pawn && (PROMOTION_RANKS & (1L << to)) != 0)
+                {
+                    for(int promotion = QUEEN; promotion >= KNIGHT; promotion--) moves.add(Move.of(from, to, promotion));
+                }
+                else moves.add(Move.of(from, to));
+            }
+        }
+        return moves.size();
+    }
+
+    /**
+     * Fills the list with the legal captures of the given colour, en passant included, and the promotions to
+     * a queen. Together with {@link #generateQuiet} it gives the moves of generateLegal.
+     * @return the number of moves generated
+     */
+    public static int generateNoisy(BitBoard board, int colour, MoveList moves)
+    {
+        return generate(board, colour, moves, true);
+    }
+
+    /**
+     * Fills the list with the legal moves of the given colour that {@link #generateNoisy} leaves out: moves
+     * onto empty squares, castling and promotions to a knight, bishop or rook.
+     * @return the number of moves generated
+     */
+    public static int generateQuiet(BitBoard board, int colour, MoveList moves)
+    {
+        return generate(board, colour, moves, false);
+    }
+
+    private static int generate(BitBoard board, int colour, MoveList moves, boolean noisy)
+    {
+        moves.clear();
+        long checkers = checkers(board, colour);
+        long pinned = pinned(board, colour);
+        long pawns = board.pieces(colour, PAWN);
+        long enemies = board.colour(1 - colour);
+        int ep = board.epSquare();
+        for(long own = board.colour(colour); own != 0; own &= own - 1)
+        {
+            int from = Long.numberOfTrailingZeros(own);
+            long targets = legalTargets(board, from, checkers, pinned);
+            if((pawns & (1L << from)) != 0)
+            {
+                long captures = targets & (ep >= 0 ? enemies | 1L << ep : enemies);
+                for(long promotions = targets & PROMOTION_RANKS; promotions != 0; promotions &= promotions - 1)
+                {
+                    int to = Long.numberOfTrailingZeros(promotions);
+                    if(noisy) moves.add(Move.of(from, to, QUEEN));
+                    else for(int promotion = ROOK; promotion >= KNIGHT; promotion--) moves.add(Move.of(from, to, promotion));
+                }
+                targets = (noisy ? captures : targets & ~captures) & ~PROMOTION_RANKS;
+            }
+            else targets &= noisy ? enemies : ~enemies;
+            for(; targets != 0; targets &= targets - 1) moves.add(Move.of(from, Long.numberOfTrailingZeros(targets)));
+        }
+        return moves.size();
+    }
+
+    /**
+     * Tests a move that may come from elsewhere, like a transposition table entry written for another
+     * position, without generating the moves of the position.
+     * @param board the position
+     * @param move the move, encoded with {@link Move}
+     * @return true if the move is a legal move of the side to move, promoting exactly when a pawn reaches
+     * the last row
+     */
+    public static boolean isLegal(BitBoard board, int move)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int colour = board.sideToMove();
+        if(move == Move.NONE || board.colourAt(from) != colour) return false;
+        boolean promotes = board.typeAt(from) == PAWN && (PROMOTION_RANKS & (1L << to)) != 0;
+        int promotion = Move.promotion(move);
+        if(promotes ? promotion < KNIGHT || promotion > QUEEN : promotion != 0) return false;
+        return (legalTargets(board, from) & (1L << to)) != 0;
+    }
+
+    /**
+     * Hands every legal move of the given colour to the visitor, in the same order as generateLegal,
+     * until the visitor asks to stop.
+     * @return true if every move was visited, false if the visitor stopped the generation
+     */
+    public static boolean forEachLegalMove(BitBoard board, int colour, MoveVisitor visitor)
+    {
+        long checkers = checkers(board, colour);
+        long pinned = pinned(board, colour);
+        long pawns = board.pieces(colour, PAWN);
+        for(long own = board.colour(colour); own != 0; own &= own - 1)
+        {
+            int from = Long.numberOfTrailingZeros(own);
+            long targets = legalTargets(board, from, checkers, pinned);
+            boolean pawn = (pawns & (1L << from)) != 0;
+            for(; targets != 0; targets &= targets - 1)
+            {
+                int to = Long.numberOfTrailingZeros(targets);
+                if(pawn && (PROMOTION_RANKS & (1L << to)) != 0)
+                {
+                    for(int promotion = QUEEN; promotion >= KNIGHT; promotion--)
+                    {
+                        if(!visitor.visit(Move.of(from, to, promotion))) return false;
+                    }
+                }
+                else if(!visitor.visit(Move.of(from, to))) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walks the legal moves of one side and stops at the first one.
+     * @return true if the given colour has at least one legal move, false otherwise
+     */
+    public static boolean hasLegalMove(BitBoard board, int colour)
+    {
+        return !forEachLegalMove(board, colour, STOP);
+    }
+}
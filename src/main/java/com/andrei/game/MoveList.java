@@ -0,0 +1,62 @@
+package com.andrei.game;
+
+/**
+ * A reusable list of moves encoded as ints (see {@link Move}).
+ * The buffer is allocated once and refilled by the move generator, so generating moves into it
+ * allocates nothing. No chess position has more than 218 legal moves, so the buffer never grows.
+ */
+public class MoveList {
+    public static final int CAPACITY = 256;
+    private final int[] moves = new int[CAPACITY];
+    private int size = 0;
+
+    public void add(int move)
+    {
+        moves[size++] = move;
+    }
+
+    public int get(int index)
+    {
+        return moves[index];
+    }
+
+    public void set(int index, int move)
+    {
+        moves[index] = move;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean contains(int move)
+    {
+        for(int i = 0; i < size; i++)
+        {
+            if(moves[i] == move) return true;
+        }
+        return false;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for(int i = 0; i < size; i++)
+        {
+            if(i > 0) text.append(", ");
+            text.append(Move.toString(moves[i]));
+        }
+        return text.append("]").toString();
+    }
+}
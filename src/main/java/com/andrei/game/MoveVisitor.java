@@ -0,0 +1,14 @@
+package com.andrei.game;
+
+/**
+ * Callback for callers that walk the legal moves of a position and may stop early,
+ * for example when any legal move is enough to answer their question.
+ */
+@FunctionalInterface
+public interface MoveVisitor {
+    /**
+     * @param move the move, encoded with {@link Move}
+     * @return true to continue with the next move, false to stop the generation
+     */
+    boolean visit(int move);
+}
@@ -0,0 +1,213 @@
+package com.andrei.game;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth, to check the move rules against known
+ * counts and to time the move generator. Runs headless, without the GUI.
+ * <p>
+ * The root moves are split across a fork join pool, each on its own copy of the board. Optionally a
+ * {@link TranspositionTable} caches the counts of subtrees, so positions reached by different move orders
+ * are only counted once. Moves one ply above the leaves are counted without playing them.
+ * <p>
+ * Usage: {@code Perft <depth> [fen] [-threads n] [-hash size]} prints the count below every root move
+ * (divide), the total and the nodes per second. {@code Perft -verify [-threads n] [-hash size]} runs the
+ * standard positions against their reference counts and exits with status 1 on a mismatch.
+ */
+public class Perft {
+    //standard positions and their counts from depth 1 upwards
+    private static final String[][] REFERENCE = {
+            {Fen.START, "20 400 8902 197281 4865609 119060324"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "48 2039 97862 4085603 193690690"},
+            {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", "14 191 2812 43238 674624 11030083"},
+            {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", "6 264 9467 422333 15833292"},
+            {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", "44 1486 62379 2103487 89941194"},
+            {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", "46 2079 89890 3894594 164075551"}
+    };
+
+    private final ForkJoinPool pool;
+    private final TranspositionTable table; //null when counts are not cached
+
+    /**
+     * @param threads the number of worker threads
+     * @param table the table caching subtree counts, or null for no cache
+     */
+    public Perft(int threads, TranspositionTable table) {
+        this.pool = new ForkJoinPool(threads);
+        this.table = table;
+    }
+
+    /**
+     * Counts the leaf nodes below every root move, in parallel.
+     * @param board the position, left unchanged
+     * @param depth the depth to count to, at least 1
+     * @param moves filled with the root moves
+     * @return the count below each root move, in the order of moves
+     */
+    public long[] divide(BitBoard board, int depth, MoveList moves)
+    {
+        int count = MoveGenerator.generateLegal(board, board.sideToMove(), moves);
+        Subtree[] tasks = new Subtree[count];
+        for(int i = 0; i < count; i++) tasks[i] = new Subtree(board, moves.get(i), depth - 1);
+        long[] counts = new long[count];
+        pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        for(int i = 0; i < count; i++) counts[i] = tasks[i].join();
+        return counts;
+    }
+
+    /**
+     * @param board the position, left unchanged
+     * @param depth the depth to count to
+     * @return the number of leaf nodes
+     */
+    public long count(BitBoard board, int depth)
+    {
+        if(depth == 0) return 1;
+        long total = 0;
+        for(long count : divide(board, depth, new MoveList())) total += count;
+        return total;
+    }
+
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Counts the subtree below one root move on a private copy of the board.
+     */
+    private final class Subtree extends RecursiveTask<Long> {
+        private final BitBoard board;
+        private final int move;
+        private final int depth;
+
+        Subtree(BitBoard board, int move, int depth) {
+            this.board = new BitBoard(board);
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            MoveList[] lists = new MoveList[depth + 1];
+            for(int i = 0; i <= depth; i++) lists[i] = new MoveList();
+            board.makeMove(move);
+            return perft(board, depth, lists);
+        }
+    }
+
+    private long perft(BitBoard board, int depth, MoveList[] lists)
+    {
+        if(depth == 0) return 1;
+        if(table != null && depth > 1)
+        {
+            long data = table.probe(board.key());
+            if(data != 0 && TranspositionTable.depth(data) == depth) return TranspositionTable.count(data);
+        }
+        MoveList moves = lists[depth];
+        int count = MoveGenerator.generateLegal(board, board.sideToMove(), moves);
+        if(depth == 1) return count;
+        long nodes = 0;
+        for(int i = 0; i < count; i++)
+        {
+            int move = moves.get(i);
+            board.makeMove(move);
+            nodes += perft(board, depth - 1, lists);
+            board.unmakeMove(move);
+        }
+        if(table != null) table.storeCount(board.key(), depth, nodes);
+        return nodes;
+    }
+
+    public static void main(String[] args)
+    {
+        int depth = -1;
+        boolean verify = false;
+        StringBuilder fen = new StringBuilder();
+        int threads = Runtime.getRuntime().availableProcessors();
+        TranspositionTable table = null;
+        try
+        {
+            for(int i = 0; i < args.length; i++)
+            {
+                if(args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+                else if(args[i].equals("-hash")) table = TranspositionTable.ofSize(args[++i]);
+                else if(args[i].equals("-verify")) verify = true;
+                else if(depth < 0 && !verify) depth = Integer.parseInt(args[i]);
+                else fen.append(args[i]).append(' ');
+            }
+            if(!verify && depth < 1) throw new IllegalArgumentException("The depth must be at least 1");
+        }
+        catch(RuntimeException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Perft <depth> [fen] [-threads n] [-hash size] | Perft -verify [-threads n] [-hash size]");
+            System.exit(2);
+            return;
+        }
+
+        Perft perft = new Perft(threads, table);
+        boolean ok = verify ? perft.verify() : perft.run(Fen.parse(fen.length() == 0 ? Fen.START : fen.toString()), depth);
+        perft.shutdown();
+        if(table != null) System.out.println("Hash: " + table);
+        if(!ok) System.exit(1);
+    }
+
+    /**
+     * Prints the divide output, the total and the speed.
+     * @return true
+     */
+    private boolean run(BitBoard board, int depth)
+    {
+        MoveList moves = new MoveList();
+        long start = System.nanoTime();
+        long[] counts = divide(board, depth, moves);
+        long nanos = System.nanoTime() - start;
+        long total = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            System.out.println(Move.toString(moves.get(i)) + ": " + counts[i]);
+            total += counts[i];
+        }
+        System.out.println();
+        System.out.println("Nodes: " + total);
+        printSpeed(total, nanos);
+        return true;
+    }
+
+    /**
+     * Counts every reference position to every depth given for it.
+     * @return true if all the counts match
+     */
+    private boolean verify()
+    {
+        boolean ok = true;
+        long total = 0;
+        long start = System.nanoTime();
+        for(String[] reference : REFERENCE)
+        {
+            BitBoard board = Fen.parse(reference[0]);
+            String[] expected = reference[1].split(" ");
+            for(int depth = 1; depth <= expected.length; depth++)
+            {
+                long nodes = count(board, depth);
+                total += nodes;
+                boolean match = nodes == Long.parseLong(expected[depth - 1]);
+                ok &= match;
+                System.out.println((match ? "ok   " : "FAIL ") + reference[0] + " depth " + depth + ": " + nodes
+                        + (match ? "" : ", expected " + expected[depth - 1]));
+            }
+        }
+        printSpeed(total, System.nanoTime() - start);
+        return ok;
+    }
+
+    private static void printSpeed(long nodes, long nanos)
+    {
+        System.out.printf(Locale.ROOT, "Time: %.3f s%n", nanos / 1e9);
+        System.out.printf(Locale.ROOT, "Nodes per second: %.0f%n", nodes / Math.max(nanos / 1e9, 1e-9));
+    }
+}
@@ -0,0 +1,182 @@
+package com.andrei.game;
+
+/**
+ * Material and piece-square values for a tapered evaluation. Cannot be instantiated.
+ * <p>
+ * Every piece on every square is worth two scores: one for the middlegame and one for the endgame. The
+ * board keeps the sum of the scores of its pieces up to date as pieces are placed and removed, see
+ * {@link BitBoard#middlegameScore()}, so the evaluation reads it instead of walking the board. The two
+ * scores of a piece are packed in one long, the endgame score in the high half added to the middlegame
+ * score, so a single addition updates both. Black scores are negated: the sums are from white's point of view.
+ * <p>
+ * The tables are written as seen by white, row 8 first, and mirrored for black.
+ */
+public class PieceSquareTables {
+    private PieceSquareTables() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    //indexed by the type constants in BitBoard
+    public static final int[] MIDDLEGAME_VALUES = {82, 337, 365, 477, 1025, 0};
+    public static final int[] ENDGAME_VALUES = {94, 281, 297, 512, 936, 0};
+    //how much each piece counts towards the middlegame, the sum is MAX_PHASE at the start
+    private static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+    public static final int MAX_PHASE = 24;
+
+    private static final int[] PAWN_MIDDLEGAME = {
+             0,   0,   0,   0,   0,   0,   0,   0,
+            50,  50,  50,  50,  50,  50,  50,  50,
+            10,  10,  20,  30,  30,  20,  10,  10,
+             5,   5,  10,  25,  25,  10,   5,   5,
+             0,   0,   0,  20,  20,   0,   0,   0,
+             5,  -5, -10,   0,   0, -10,  -5,   5,
+             5,  10,  10, -20, -20,  10,  10,   5,
+             0,   0,   0,   0,   0,   0,   0,   0
+    };
+    //in the endgame a pawn is worth more the closer it gets to promoting
+    private static final int[] PAWN_ENDGAME = {
+             0,   0,   0,   0,   0,   0,   0,   0,
+            80,  80,  80,  80,  80,  80,  80,  80,
+            50,  50,  50,  50,  50,  50,  50,  50,
+            30,  30,  30,  30,  30,  30,  30,  30,
+            15,  15,  15,  15,  15,  15,  15,  15,
+             5,   5,   5,   5,   5,   5,   5,   5,
+             0,   0,   0,   0,   0,   0,   0,   0,
+             0,   0,   0,   0,   0,   0,   0,   0
+    };
+    private static final int[] KNIGHT = {
+           -50, -40, -30, -30, -30, -30, -40, -50,
+           -40, -20,   0,   0,   0,   0, -20, -40,
+           -30,   0,  10,  15,  15,  10,   0, -30,
+           -30,   5,  15,  20,  20,  15,   5, -30,
+           -30,   0,  15,  20,  20,  15,   0, -30,
+           -30,   5,  10,  15,  15,  10,   5, -30,
+           -40, -20,   0,   5,   5,   0, -20, -40,
+           -50, -40, -30, -30, -30, -30, -40, -50
+    };
+    private static final int[] BISHOP = {
+           -20, -10, -10, -10, -10, -10, -10, -20,
+           -10,   0,   0,   0,   0,   0,   0, -10,
+           -10,   0,   5,  10,  10,   5,   0, -10,
+           -10,   5,   5,  10,  10,   5,   5, -10,
+           -10,   0,  10,  10,  10,  10,   0, -10,
+           -10,  10,  10,  10,  10,  10,  10, -10,
+           -10,   5,   0,   0,   0,   0,   5, -10,
+           -20, -10, -10, -10, -10, -10, -10, -20
+    };
+    private static final int[] ROOK = {
+             0,   0,   0,   0,   0,   0,   0,   0,
+             5,  10,  10,  10,  10,  10,  10,   5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+             0,   0,   0,   5,   5,   0,   0,   0
+    };
+    private static final int[] QUEEN = {
+           -20, -10, -10,  -5,  -5, -10, -10, -20,
+           -10,   0,   0,   0,   0,   0,   0, -10,
+           -10,   0,   5,   5,   5,   5,   0, -10,
+            -5,   0,   5,   5,   5,   5,   0,  -5,
+             0,   0,   5,   5,   5,   5,   0,  -5,
+           -10,   5,   5,   5,   5,   5,   0, -10,
+           -10,   0,   5,   0,   0,   0,   0, -10,
+           -20, -10, -10,  -5,  -5, -10, -10, -20
+    };
+    //in the middlegame the king hides behind its pawns
+    private static final int[] KING_MIDDLEGAME = {
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -20, -30, -30, -40, -40, -30, -30, -20,
+           -10, -20, -20, -20, -20, -20, -20, -10,
+            20,  20,   0,   0,   0,   0,  20,  20,
+            20,  30,  10,   0,   0,  10,  30,  20
+    };
+    //in the endgame it heads for the centre
+    private static final int[] KING_ENDGAME = {
+           -50, -40, -30, -20, -20, -30, -40, -50,
+           -30, -20, -10,   0,   0, -10, -20, -30,
+           -30, -10,  20,  30,  30,  20, -10, -30,
+           -30, -10,  30,  40,  40,  30, -10, -30,
+           -30, -10,  30,  40,  40,  30, -10, -30,
+           -30, -10,  20,  30,  30,  20, -10, -30,
+           -30, -30,   0,   0,   0,   0, -30, -30,
+           -50, -30, -30, -30, -30, -30, -30, -50
+    };
+
+    private static final int[][] MIDDLEGAME = {PAWN_MIDDLEGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_MIDDLEGAME};
+    private static final int[][] ENDGAME = {PAWN_ENDGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_ENDGAME};
+
+    //indexed by colour * 6 + type, then square: both scores of the piece on the square, packed
+    static final long[][] SCORES = new long[12][64];
+
+    static {
+        for(int type = BitBoard.PAWN; type <= BitBoard.KING; type++)
+        {
+            for(int square = 0; square < 64; square++)
+            {
+                //the tables start at row 8, square 0 is a1
+                int white = square ^ 56;
+                SCORES[type][square] = pack(MIDDLEGAME_VALUES[type] + MIDDLEGAME[type][white],
+                        ENDGAME_VALUES[type] + ENDGAME[type][white]);
+                SCORES[6 + type][square] = -pack(MIDDLEGAME_VALUES[type] + MIDDLEGAME[type][square],
+                        ENDGAME_VALUES[type] + ENDGAME[type][square]);
+            }
+        }
+    }
+
+    /**
+     * @return the two scores packed in one long, to be summed with other packed scores
+     */
+    public static long pack(int middlegame, int endgame)
+    {
+        return ((long) endgame << 32) + middlegame;
+    }
+
+    /**
+     * @param packed a sum of packed scores
+     * @return the middlegame score in it
+     */
+    public static int middlegame(long packed)
+    {
+        return (int) packed;
+    }
+
+    /**
+     * @param packed a sum of packed scores
+     * @return the endgame score in it, corrected for the borrow of a negative middlegame score
+     */
+    public static int endgame(long packed)
+    {
+        return (int) ((packed + (1L << 31)) >> 32);
+    }
+
+    /**
+     * @param type the type of the piece
+     * @return how much the piece counts towards the middlegame phase
+     */
+    public static int phaseWeight(int type)
+    {
+        return PHASE_WEIGHTS[type];
+    }
+
+    /**
+     * Computes the packed score of the board from scratch. The board keeps its score up to date by itself,
+     * this is the reference it must always be equal to.
+     * @param board the position
+     * @return the packed middlegame and endgame scores of every piece, from white's point of view
+     */
+    public static long compute(BitBoard board)
+    {
+        long score = 0;
+        for(long occupied = board.occupied(); occupied != 0; occupied &= occupied - 1)
+        {
+            int square = Long.numberOfTrailingZeros(occupied);
+            score += SCORES[board.codeAt(square) - 1][square];
+        }
+        return score;
+    }
+}
@@ -0,0 +1,124 @@
+package com.andrei.game;
+
+import com.andrei.pieces.Piece;
+
+/**
+ * An immutable snapshot of a position: the pieces, castling rights, en passant square and halfmove clock
+ * copied out of a {@link BitBoard}, plus the side to move.
+ * <p>
+ * A snapshot owns the {@link BitBoard#POSITION_WORDS} words of its position, 208 bytes, which is less than
+ * it would cost to share parts of them between positions. The history is what is shared: every snapshot
+ * links to the one before it and the move that led from it, so the snapshots of a game form a chain in
+ * which each new position only adds its own words.
+ * <p>
+ * Snapshots are never changed after they are made, so any thread can read one without locking, while
+ * the game keeps playing on its own board. {@link #toBitBoard()} gives a private board to analyse from.
+ */
+public final class Position {
+    private final long[] words;
+    private final Colour turn;
+    private final Position previous;
+    private final int lastMove;
+    private final int ply;
+
+    private Position(long[] words, Colour turn, Position previous, int lastMove) {
+        this.words = words;
+        this.turn = turn;
+        this.previous = previous;
+        this.lastMove = lastMove;
+        this.ply = previous == null ? 0 : previous.ply + 1;
+    }
+
+    /**
+     * Takes a snapshot of the board with no history, for example at the start of a game.
+     * @param board the board to copy
+     * @param turn the colour to move
+     * @return the new snapshot
+     */
+    public static Position of(BitBoard board, Colour turn)
+    {
+        return new Position(board.toWords(), turn, null, Move.NONE);
+    }
+
+    /**
+     * Takes a snapshot of the board after a move, linked to the snapshot before the move.
+     * @param board the board to copy, with the move played
+     * @param turn the colour to move
+     * @param move the move that was played, encoded with {@link Move}
+     * @return the new snapshot
+     */
+    public Position next(BitBoard board, Colour turn, int move)
+    {
+        return new Position(board.toWords(), turn, this, move);
+    }
+
+    /**
+     * Takes a snapshot of the board that replaces this one, with the same history. Used when the last move
+     * is completed after it was played, like a pawn promotion chosen after the pawn moved.
+     * @param board the board to copy
+     * @param turn the colour to move
+     * @param move the last move as completed, encoded with {@link Move}
+     * @return the new snapshot
+     */
+    public Position replace(BitBoard board, Colour turn, int move)
+    {
+        return new Position(board.toWords(), turn, previous, move);
+    }
+
+    /**
+     * @return a new board holding this position, without an undo history; changing it does not change the snapshot
+     */
+    public BitBoard toBitBoard()
+    {
+        BitBoard board = new BitBoard();
+        board.loadWords(words);
+        return board;
+    }
+
+    /**
+     * @param x the row of the tile, 0-7
+     * @param y the column of the tile, 0-7
+     * @return the piece on the tile, or null if the tile is empty
+     */
+    public Piece getPiece(int x, int y)
+    {
+        return Piece.ofCode(BitBoard.codeAt(words, x * 8 + y));
+    }
+
+    /**
+     * @return the Zobrist key of the position, see {@link BitBoard#key()}
+     */
+    public long getKey()
+    {
+        return BitBoard.keyOf(words);
+    }
+
+    /**
+     * @return the snapshot before the last move, or null if this is the first one
+     */
+    public Position getPrevious()
+    {
+        return previous;
+    }
+
+    /**
+     * @return the move that led to this position, or {@link Move#NONE} if this is the first one
+     */
+    public int getLastMove()
+    {
+        return lastMove;
+    }
+
+    /**
+     * @return the number of moves played before this position
+     */
+    public int getPly()
+    {
+        return ply;
+    }
+
+    public Colour getTurn()
+    {
+        return turn;
+    }
+}
@@ -0,0 +1,170 @@
+package com.andrei.game;
+
+/**
+ * Reads and writes moves in standard algebraic notation (SAN), the notation of PGN game files, like "Nf3",
+ * "exd5", "O-O" or "e8=Q+". Cannot be instantiated.
+ * <p>
+ * A SAN move names the piece and the target square, and only as much of the start square as it takes to
+ * tell apart two pieces of the same type that can reach it, so it is read by matching it against the legal
+ * moves of the position.
+ */
+public class San {
+    private San() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    private static final String PIECES = "PNBRQK"; //indexed by type
+
+    /**
+     * @param board the position, left unchanged
+     * @param san the move, with or without check marks and annotations like "!?"
+     * @return the move, encoded with {@link Move}
+     * @throws IllegalArgumentException if the text is not a legal move of the side to move
+     */
+    public static int parse(BitBoard board, String san)
+    {
+        String text = san;
+        while(!text.isEmpty() && "+#!?".indexOf(text.charAt(text.length() - 1)) >= 0) text = text.substring(0, text.length() - 1);
+        MoveList moves = new MoveList();
+        int colour = board.sideToMove();
+        MoveGenerator.generateLegal(board, colour, moves);
+        if(text.equals("O-O") || text.equals("0-0") || text.equals("O-O-O") || text.equals("0-0-0"))
+        {
+            boolean kingside = text.length() == 3;
+            for(int i = 0; i < moves.size(); i++)
+            {
+                int move = moves.get(i);
+                if(isCastling(board, move) && (Move.to(move) > Move.from(move)) == kingside) return move;
+            }
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        int promotion = 0;
+        int equals = text.indexOf('=');
+        if(equals >= 0 && equals == text.length() - 2)
+        {
+            promotion = PIECES.indexOf(text.charAt(text.length() - 1));
+            text = text.substring(0, equals);
+        }
+        else if(text.length() > 2 && PIECES.indexOf(text.charAt(text.length() - 1)) > 0 && Character.isDigit(text.charAt(text.length() - 2)))
+        {
+            promotion = PIECES.indexOf(text.charAt(text.length() - 1)); //"e8Q" without the equals sign
+            text = text.substring(0, text.length() - 1);
+        }
+        if(text.length() < 2 || promotion < 0) throw new IllegalArgumentException("Bad move: " + san);
+        int type = PIECES.indexOf(text.charAt(0));
+        if(type <= 0) type = BitBoard.PAWN;
+        else text = text.substring(1);
+        int to = squareOf(text.substring(text.length() - 2));
+        String from = text.substring(0, text.length() - 2).replace("x", "");
+        if(to < 0 || from.length() > 2) throw new IllegalArgumentException("Bad move: " + san);
+        int found = Move.NONE;
+        for(int i = 0; i < moves.size(); i++)
+        {
+            int move = moves.get(i);
+            if(Move.to(move) != to || Move.promotion(move) != promotion || board.typeAt(Move.from(move)) != type
+                    || isCastling(board, move) || !matches(Move.from(move), from))
+            {
+                continue;
+            }
+            if(found != Move.NONE) throw new IllegalArgumentException("Ambiguous move: " + san);
+            found = move;
+        }
+        if(found == Move.NONE) throw new IllegalArgumentException("Illegal move: " + san);
+        return found;
+    }
+
+    /**
+     * @param board the position before the move, left unchanged
+     * @param move a legal move of the side to move
+     * @return the move in SAN, with "+" for a check and "#" for a mate
+     */
+    public static String toString(BitBoard board, int move)
+    {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = board.typeAt(from);
+        StringBuilder san = new StringBuilder();
+        if(isCastling(board, move))
+        {
+            san.append(to > from ? "O-O" : "O-O-O");
+        }
+        else
+        {
+            boolean capture = board.isOccupied(to) || (type == BitBoard.PAWN && (to & 7) != (from & 7));
+            if(type == BitBoard.PAWN)
+            {
+                if(capture) san.append((char) ('a' + (from & 7)));
+            }
+            else
+            {
+                san.append(PIECES.charAt(type));
+                san.append(disambiguation(board, move));
+            }
+            if(capture) san.append('x');
+            san.append(Move.squareName(to));
+            if(Move.promotion(move) != 0) san.append('=').append(PIECES.charAt(Move.promotion(move)));
+        }
+        BitBoard after = new BitBoard(board);
+        after.makeMove(move);
+        int enemy = after.sideToMove();
+        if(after.isInCheck(enemy)) san.append(MoveGenerator.hasLegalMove(after, enemy) ? '+' : '#');
+        return san.toString();
+    }
+
+    /**
+     * @return the file, the rank or both of the start square, as needed to tell the move apart from the
+     * moves of the other pieces of the same type to the same square
+     */
+    private static String disambiguation(BitBoard board, int move)
+    {
+        int from = Move.from(move);
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegal(board, board.sideToMove(), moves);
+        boolean other = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+        for(int i = 0; i < moves.size(); i++)
+        {
+            int rival = Move.from(moves.get(i));
+            if(rival == from || Move.to(moves.get(i)) != Move.to(move) || board.typeAt(rival) != board.typeAt(from)) continue;
+            other = true;
+            sameFile |= (rival & 7) == (from & 7);
+            sameRank |= rival >>> 3 == from >>> 3;
+        }
+        if(!other) return "";
+        String square = Move.squareName(from);
+        if(!sameFile) return square.substring(0, 1);
+        if(!sameRank) return square.substring(1);
+        return square;
+    }
+
+    private static boolean isCastling(BitBoard board, int move)
+    {
+        return board.colourAt(Move.to(move)) == board.colourAt(Move.from(move));
+    }
+
+    /**
+     * @return the square of a name like "e4", or -1
+     */
+    private static int squareOf(String name)
+    {
+        char file = name.charAt(0);
+        char rank = name.charAt(1);
+        if(file < 'a' || file > 'h' || rank < '1' || rank > '8') return -1;
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    /**
+     * @param hint the file, rank or square of the start given by the move, may be empty
+     */
+    private static boolean matches(int from, String hint)
+    {
+        for(int i = 0; i < hint.length(); i++)
+        {
+            char c = hint.charAt(i);
+            if(c >= 'a' && c <= 'h' && (from & 7) != c - 'a') return false;
+            if(c >= '1' && c <= '8' && from >>> 3 != c - '1') return false;
+        }
+        return true;
+    }
+}
@@ -4,20 +4,36 @@ import com.andrei.pieces.Piece;
 
 /**
  * Class that represents a tile on the chess board.
- * Has a colour, a piece and coordinates. If no piece is on the tile, the piece field is null.
+ * Has a colour, a piece and coordinates. If no piece is on the tile, the piece is null.
  * Coordinates are 0-7 and assumed to be valid.
+ * <p>
+ * The tiles of a board are views of its {@link BitBoard}: the piece is read from the board mailbox and
+ * setting it writes to the board, so the tiles hold no position state. A tile made on its own keeps its
+ * piece in a field.
  */
 public class Tile {
     private int x;
     private int y;
     private Colour colour;
-    private Piece piece;
+    private Piece piece; //only used by tiles that are not part of a board
+    private final BitBoard bitBoard; //null for tiles that are not part of a board
 
     public Tile(int x, int y, Colour colour, Piece piece) {
         this.x = x;
         this.y = y;
         this.colour = colour;
         this.piece = piece;
+        this.bitBoard = null;
+    }
+
+    /**
+     * Creates a tile of a board, a view of the given square of its bitboards.
+     */
+    Tile(BitBoard bitBoard, int x, int y, Colour colour) {
+        this.x = x;
+        this.y = y;
+        this.colour = colour;
+        this.bitBoard = bitBoard;
     }
     public Tile(int x, int y,Colour colour) {
         this(x,y,colour,null);
@@ -57,10 +73,17 @@ public class Tile {
     }
 
     public Piece getPiece() {
+        if(bitBoard != null) return Piece.ofCode(bitBoard.codeAt(x * 8 + y));
         return piece;
     }
 
     public void setPiece(Piece piece) {
-        this.piece = piece;
+        if(bitBoard != null)
+        {
+            int square = x * 8 + y;
+            bitBoard.clear(square);
+            if(piece != null) bitBoard.put(square, piece.getColour().ordinal(), piece.getType());
+        }
+        else this.piece = piece;
     }
 }
@@ -0,0 +1,328 @@
+package com.andrei.game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A transposition table: a fixed size hash table from Zobrist keys to search results, shared by every
+ * search thread. The entries live off the heap in direct byte buffers, so a table of any size adds no
+ * work for the garbage collector. Buffers hold at most 2 GB, so large tables are split into chunks of 1 GB.
+ * <p>
+ * Each entry is two longs: the key XOR the data, then the data. The table takes no locks; two threads
+ * writing the same entry at once may leave the key of one with the data of the other, and a probe then
+ * finds that key XOR data does not give back its key and treats the entry as a miss. Each long is read and
+ * written in one piece with opaque access, so only whole words can be mixed up this way.
+ * <p>
+ * The data word of an entry packs, from the lowest bit:
+ * <ul>
+ *     <li>depth, 8 bits</li>
+ *     <li>age, 6 bits: the search generation that stored the entry</li>
+ *     <li>bound, 2 bits: {@link #EXACT}, {@link #LOWER} or {@link #UPPER}</li>
+ *     <li>move, 16 bits, encoded with {@link Move}</li>
+ *     <li>value, 32 bits, signed</li>
+ * </ul>
+ * Perft entries use the move and value fields together as a 48 bit node count, see {@link #storeCount}.
+ * <p>
+ * Entries are grouped in buckets of four, 64 bytes, the size of a cache line. A key may go in any entry of
+ * its bucket. A store replaces the entry with the same key if there is one, otherwise the entry that is
+ * worth least: the shallowest, with entries left by older searches counted as shallower still.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; //the value is at least the stored one, the search failed high
+    public static final int UPPER = 3; //the value is at most the stored one, the search failed low
+
+    /** System property holding the size of the table used by default, like "64MB" or "2GB". */
+    public static final String SIZE_PROPERTY = "chess.hash";
+    private static final String DEFAULT_SIZE = "64MB";
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int BUCKET_SHIFT = 6; //64 bytes per bucket
+    private static final int CHUNK_SHIFT = 30; //1 GB per buffer
+    private static final int AGE_SHIFT = 8;
+    private static final int BOUND_SHIFT = 14;
+    private static final int MOVE_SHIFT = 16;
+    private static final int VALUE_SHIFT = 32;
+    private static final int AGE_MASK = 63;
+    private static final int FILL_SAMPLE = 1000; //buckets looked at by fill()
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+    private final long bucketMask;
+    private final int chunkBucketShift;
+    private final int chunkBucketMask;
+    private volatile int age = 0;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates an empty table. The size is rounded down to a power of two, and is at least one bucket.
+     * @param bytes the size of the table in bytes
+     */
+    public TranspositionTable(long bytes) {
+        long buckets = Long.highestOneBit(Math.max(bytes >>> BUCKET_SHIFT, 1));
+        int bucketsPerChunk = (int) Math.min(buckets, 1L << (CHUNK_SHIFT - BUCKET_SHIFT));
+        chunks = new ByteBuffer[(int) (buckets / bucketsPerChunk)];
+        for(int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = ByteBuffer.allocateDirect(bucketsPerChunk << BUCKET_SHIFT).order(ByteOrder.nativeOrder());
+        }
+        bucketMask = buckets - 1;
+        chunkBucketShift = Integer.numberOfTrailingZeros(bucketsPerChunk);
+        chunkBucketMask = bucketsPerChunk - 1;
+    }
+
+    /**
+     * @param size the size of the table, a number of bytes with an optional KB, MB or GB suffix, like "512MB"
+     * @return a new empty table of the given size
+     * @throws IllegalArgumentException if the size cannot be read
+     */
+    public static TranspositionTable ofSize(String size)
+    {
+        return new TranspositionTable(parseSize(size));
+    }
+
+    /**
+     * @return a new empty table, with the size given by the {@link #SIZE_PROPERTY} system property, 64 MB if it is not set
+     */
+    public static TranspositionTable fromConfig()
+    {
+        return ofSize(System.getProperty(SIZE_PROPERTY, DEFAULT_SIZE));
+    }
+
+    /**
+     * @param size a number of bytes with an optional KB, MB or GB suffix
+     * @return the number of bytes
+     * @throws IllegalArgumentException if the size is not a positive number with a known suffix
+     */
+    public static long parseSize(String size)
+    {
+        String text = size.trim().toUpperCase(Locale.ROOT);
+        int shift = 0;
+        if(text.endsWith("KB")) shift = 10;
+        else if(text.endsWith("MB")) shift = 20;
+        else if(text.endsWith("GB")) shift = 30;
+        if(shift != 0) text = text.substring(0, text.length() - 2).trim();
+        try
+        {
+            long value = Long.parseLong(text);
+            if(value <= 0 || value > (Long.MAX_VALUE >>> shift)) throw new IllegalArgumentException("Invalid table size: " + size);
+            return value << shift;
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid table size: " + size, e);
+        }
+    }
+
+    /**
+     * Starts a new search generation. Entries stored before are kept and can still be found, but are
+     * replaced before the ones stored by the new search.
+     */
+    public void newSearch()
+    {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Empties the table and resets its statistics.
+     */
+    public void clear()
+    {
+        for(ByteBuffer chunk : chunks)
+        {
+            for(int offset = 0; offset < chunk.capacity(); offset += 8) LONGS.setOpaque(chunk, offset, 0L);
+        }
+        age = 0;
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    /**
+     * Looks up a position.
+     * @param key the Zobrist key of the position
+     * @return the data word stored for the key, or 0 if the table has no entry for it
+     */
+    public long probe(long key)
+    {
+        probes.increment();
+        ByteBuffer chunk = chunk(key);
+        int bucket = bucketOffset(key);
+        for(int i = 0; i < BUCKET_ENTRIES; i++)
+        {
+            int offset = bucket + i * ENTRY_BYTES;
+            long data = (long) LONGS.getOpaque(chunk, offset + 8);
+            if(((long) LONGS.getOpaque(chunk, offset) ^ data) == key && data != 0)
+            {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result.
+     * @param key the Zobrist key of the position
+     * @param depth the depth the position was searched to, 0-255
+     * @param bound what the value is: {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     * @param move the best move found, or {@link Move#NONE}
+     * @param value the value of the position
+     */
+    public void store(long key, int depth, int bound, int move, int value)
+    {
+        store(key, depth, (long) bound << BOUND_SHIFT | (long) (move & 0xFFFF) << MOVE_SHIFT | (long) value << VALUE_SHIFT);
+    }
+
+    /**
+     * Stores the number of leaf nodes below a position, for perft.
+     * @param key the Zobrist key of the position
+     * @param depth the depth the nodes were counted to, 0-255
+     * @param count the number of nodes, less than 2^48
+     */
+    public void storeCount(long key, int depth, long count)
+    {
+        store(key, depth, (long) EXACT << BOUND_SHIFT | count << MOVE_SHIFT);
+    }
+
+    private void store(long key, int depth, long fields)
+    {
+        stores.increment();
+        int age = this.age;
+        long data = fields | (long) age << AGE_SHIFT | Math.min(Math.max(depth, 0), 255);
+        ByteBuffer chunk = chunk(key);
+        int bucket = bucketOffset(key);
+        int victim = bucket;
+        int worst = Integer.MAX_VALUE;
+        for(int i = 0; i < BUCKET_ENTRIES; i++)
+        {
+            int offset = bucket + i * ENTRY_BYTES;
+            long old = (long) LONGS.getOpaque(chunk, offset + 8);
+            if(((long) LONGS.getOpaque(chunk, offset) ^ old) == key || old == 0)
+            {
+                victim = offset;
+                break;
+            }
+            //every generation the entry is behind counts as 8 plies less
+            int worth = depth(old) - 8 * ((age - age(old)) & AGE_MASK);
+            if(worth < worst)
+            {
+                worst = worth;
+                victim = offset;
+            }
+        }
+        LONGS.setOpaque(chunk, victim, key ^ data);
+        LONGS.setOpaque(chunk, victim + 8, data);
+    }
+
+    private ByteBuffer chunk(long key)
+    {
+        return chunks[(int) ((key & bucketMask) >>> chunkBucketShift)];
+    }
+
+    private int bucketOffset(long key)
+    {
+        return ((int) key & chunkBucketMask) << BUCKET_SHIFT;
+    }
+
+    //FIELDS OF A DATA WORD
+
+    public static int depth(long data)
+    {
+        return (int) data & 255;
+    }
+
+    public static int age(long data)
+    {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    public static int bound(long data)
+    {
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+
+    public static int move(long data)
+    {
+        return (int) (data >>> MOVE_SHIFT) & 0xFFFF;
+    }
+
+    public static int value(long data)
+    {
+        return (int) (data >>> VALUE_SHIFT);
+    }
+
+    public static long count(long data)
+    {
+        return data >>> MOVE_SHIFT;
+    }
+
+    //STATISTICS
+
+    /**
+     * @return the size of the table in bytes
+     */
+    public long size()
+    {
+        return (bucketMask + 1) << BUCKET_SHIFT;
+    }
+
+    public long probes()
+    {
+        return probes.sum();
+    }
+
+    public long hits()
+    {
+        return hits.sum();
+    }
+
+    public long stores()
+    {
+        return stores.sum();
+    }
+
+    /**
+     * @return the share of probes that found an entry, 0 if there were no probes
+     */
+    public double hitRate()
+    {
+        long probes = probes();
+        return probes == 0 ? 0 : (double) hits() / probes;
+    }
+
+    /**
+     * Estimates how full the table is from its first buckets, counting only entries of the current search.
+     * @return the share of entries in use, 0 to 1
+     */
+    public double fill()
+    {
+        long buckets = Math.min(FILL_SAMPLE, bucketMask + 1);
+        int age = this.age;
+        int used = 0;
+        for(int bucket = 0; bucket < buckets; bucket++)
+        {
+            for(int i = 0; i < BUCKET_ENTRIES; i++)
+            {
+                long data = (long) LONGS.getOpaque(chunks[0], (bucket << BUCKET_SHIFT) + i * ENTRY_BYTES + 8);
+                if(data != 0 && age(data) == age) used++;
+            }
+        }
+        return (double) used / (buckets * BUCKET_ENTRIES);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d MB, %d probes, %.1f%% hits, %d stores, %.1f%% full",
+                size() >>> 20, probes(), 100 * hitRate(), stores(), 100 * fill());
+    }
+}
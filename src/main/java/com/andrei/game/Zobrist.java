@@ -0,0 +1,75 @@
+package com.andrei.game;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing. Cannot be instantiated.
+ * <p>
+ * The key of a position is the XOR of one random number per piece on its square, one for the castling
+ * rights, one for the column of the en passant square and one if black is to move. Since XOR is its own
+ * inverse, the board updates the key with a few XORs when a piece or a part of the state changes, see
+ * {@link BitBoard#key()}. The numbers come from a fixed seed, so a key is the same in every run and can be
+ * stored in files.
+ */
+public class Zobrist {
+    private Zobrist() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    private static final long SEED = 0x1F2E3D4C5B6A7988L;
+
+    //indexed by colour * 6 + type, then square
+    static final long[][] PIECES = new long[12][64];
+    //indexed by the castling rights bit set
+    static final long[] CASTLING = new long[16];
+    static final long[] EP_FILE = new long[8];
+    static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for(long[] piece : PIECES)
+        {
+            for(int square = 0; square < 64; square++) piece[square] = random.nextLong();
+        }
+        //one number per right, so a set of rights is the XOR of its members
+        long[] rights = new long[4];
+        for(int i = 0; i < 4; i++) rights[i] = random.nextLong();
+        for(int set = 0; set < 16; set++)
+        {
+            for(int i = 0; i < 4; i++)
+            {
+                if((set & (1 << i)) != 0) CASTLING[set] ^= rights[i];
+            }
+        }
+        for(int file = 0; file < 8; file++) EP_FILE[file] = random.nextLong();
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    /**
+     * @return the key of the state: castling rights, en passant column and side to move
+     */
+    static long state(int castlingRights, int epSquare, int sideToMove)
+    {
+        long key = CASTLING[castlingRights];
+        if(epSquare >= 0) key ^= EP_FILE[epSquare & 7];
+        if(sideToMove == BitBoard.BLACK) key ^= BLACK_TO_MOVE;
+        return key;
+    }
+
+    /**
+     * Computes the key of the board from scratch. The board keeps its key up to date by itself,
+     * this is the reference it must always be equal to.
+     * @param board the position
+     * @return the Zobrist key of the position
+     */
+    public static long compute(BitBoard board)
+    {
+        long key = state(board.castlingRights(), board.epSquare(), board.sideToMove());
+        for(long occupied = board.occupied(); occupied != 0; occupied &= occupied - 1)
+        {
+            int square = Long.numberOfTrailingZeros(occupied);
+            key ^= PIECES[board.codeAt(square) - 1][square];
+        }
+        return key;
+    }
+}
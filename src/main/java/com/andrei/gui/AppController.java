@@ -3,7 +3,8 @@ package com.andrei.gui;
 import com.andrei.except.IllegalMoveException;
 import com.andrei.game.Colour;
 import com.andrei.game.Game;
-import com.andrei.game.Tile;
+import com.andrei.game.Position;
+import com.andrei.pieces.Piece;
 import javafx.fxml.FXML;
 import javafx.scene.Cursor;
 import javafx.scene.ImageCursor;
@@ -105,16 +106,17 @@ public class AppController {
     }
 
     /**
-     * Updates the board with the pieces from the game.
+     * Updates the board with the pieces from the game, read from the last published position.
      * null for empty tiles means that we use the image for an empty tile,
      * otherwise we use the image for the piece.
      */
     public void updateBoard(){
-        Tile[][] pieces = game.getBoard().boardMatrix;
+        Position position = game.getPosition();
         for(int i=0;i<8;i++) {
             for (int j = 0; j < 8; j++) {
-                if(pieces[i][j].getPiece() != null){
-                    imagesBoard[i][j].setImage(new Image(pieces[i][j].getPiece().getImagePath()));
+                Piece piece = position.getPiece(i, j);
+                if(piece != null){
+                    imagesBoard[i][j].setImage(new Image(piece.getImagePath()));
                 }
                 else
                 {
@@ -147,10 +149,10 @@ public class AppController {
      * @param y the y coordinate of the tile
      */
     public void setCursorImage(int x, int y){
-        if( Game.isInRange(x,y) && game.getBoard().boardMatrix[x][y].getPiece() != null)
+        if( Game.isInRange(x,y) && game.getPosition().getPiece(x,y) != null)
         {
             appBoard.setCursor(new ImageCursor(new Image(
-                    game.getBoard().boardMatrix[x][y].getPiece().getImagePath())));
+                    game.getPosition().getPiece(x,y).getImagePath())));
         }
         else appBoard.setCursor(Cursor.DEFAULT);
     }
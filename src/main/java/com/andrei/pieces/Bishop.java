@@ -1,13 +1,14 @@
 package com.andrei.pieces;
 
+import com.andrei.game.Attacks;
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
-import com.andrei.game.Images;
 import com.andrei.game.Tile;
 
 public class Bishop extends Piece{
     public Bishop(Colour colour) {
-        super(colour, colour == Colour.WHITE ? Images.WHITE_BISHOP : Images.BLACK_BISHOP);
+        super(colour);
     }
 
     @Override
@@ -24,8 +25,9 @@ public class Bishop extends Piece{
     }
 
     /**
-     * Checks if there is a piece in the way diagonally, the 4 diagonal cases of
-     * values are given by dx and dy.
+     * Checks if there is a piece in the way diagonally. The bishop attack set of the start tile
+     * is looked up for the current occupancy; it reaches the end tile only if both are on the
+     * same diagonal and nothing is in between.
      * @param board the board
      * @param start the start tile
      * @param end the end tile
@@ -33,41 +35,13 @@ public class Bishop extends Piece{
      */
     public static boolean hasPathBishop(ChessBoard board, Tile start, Tile end)
     {
-        int dx = end.getX() - start.getX();
-        int dy = end.getY() - start.getY();
-        if(dx > 0 && dy >0)
-        {
-            for (int i = start.getX()+1, j= start.getY()+1; i < end.getX(); i++,j++) {
-                if(board.getTile(i, j).getPiece() != null) return false;
-            }
-            return true;
-        }
-
-        if(dx > 0 && dy < 0)
-        {
-            for (int i = start.getX()+1, j= start.getY() - 1; i < end.getX(); i++,j--) {
-                if(board.getTile(i, j).getPiece() != null) return false;
-            }
-            return true;
-        }
-
-        if(dx < 0 && dy > 0)
-        {
-            for (int i = start.getX()-1, j= start.getY() + 1; j < end.getY(); i--,j++) {
-                if(board.getTile(i, j).getPiece() != null) return false;
-            }
-            return true;
-        }
-
-        if(dx < 0 && dy < 0)
-        {
-            for (int i = start.getX()-1, j= start.getY() - 1; j > end.getY(); i--,j--) {
-                if(board.getTile(i, j).getPiece() != null) return false;
-            }
-            return true;
-        }
+        long attacks = Attacks.bishop(start.getX() * 8 + start.getY(), board.getBitBoard().occupied());
+        return (attacks & (1L << (end.getX() * 8 + end.getY()))) != 0;
+    }
 
-        return false;
+    @Override
+    public int getType() {
+        return BitBoard.BISHOP;
     }
 
     @Override
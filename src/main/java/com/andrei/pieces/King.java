@@ -1,32 +1,30 @@
 package com.andrei.pieces;
 
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
-import com.andrei.game.Game;
+import com.andrei.game.MoveGenerator;
 import com.andrei.game.Tile;
 
-import static com.andrei.game.Images.BLACK_KING;
-import static com.andrei.game.Images.WHITE_KING;
-
 public class King extends Piece{
 
     public King(Colour colour) {
-        super(colour, colour == Colour.WHITE ? WHITE_KING : BLACK_KING);
+        super(colour);
     }
 
 
     /**
      * Check if we have a valid move for king. We can do castling if
-     * the ned piece is a rook, the pieces have the same color, the pieces have not
-     * moved, the king is not in check, no other pieces between the two and
-     * we cannot castle into check.
+     * the ned piece is a rook, the pieces have the same color, the castling right is
+     * still there (the pieces have not moved), the king is not in check, no other pieces between the two and
+     * we cannot castle through or into check.
      * Castling can only be done when there's a valid path (hasPathRook) and the king isn't in check
      * @return 0 if valid move, -1 if bad colour, -2 if invalid move
      */
     @Override
     public int checkMove(ChessBoard board, Tile start, Tile end) {
         if( end.getPiece()!= null && end.getPiece() instanceof Rook && end.getPiece().getColour() == this.getColour()
-                && !this.hasMoved() && !end.getPiece().hasMoved() && !board.isInCheck(this.getColour()))
+                && hasCastlingRight(board, start, end) && !board.isInCheck(this.getColour()))
         {
             if(Rook.hasPathRook(board, end, start) && canDoCastling(board,start,end))
             {
@@ -35,7 +33,7 @@ public class King extends Piece{
             else return 2; //not a valid Castling
         }
         //Rest of the moves
-        if(end.getPiece()!= null &&  end.getPiece().getColour() != this.getColour()) return -1; //bad colour
+        if(end.getPiece()!= null &&  end.getPiece().getColour() == this.getColour()) return -1; //bad colour
         int dx = Math.abs(end.getX()-start.getX());
         int dy = Math.abs(end.getY()-start.getY());
         if(dx + dy == 1 || (dx ==1 && dy == 1)) return 0;
@@ -43,48 +41,30 @@ public class King extends Piece{
     }
 
     /**
-     * Checks if we are in check after castling
+     * The right is lost for good once the king or that rook has moved, even if they come back.
+     * @return true if the board still has the castling right of the rook on the end tile
+     */
+    private boolean hasCastlingRight(ChessBoard board, Tile start, Tile end)
+    {
+        int right = BitBoard.castlingRightOf(end.getX() * 8 + end.getY());
+        return start.getX() * 8 + start.getY() == (getColour() == Colour.WHITE ? 4 : 60)
+                && (board.castlingRights() & right) != 0;
+    }
+
+    /**
+     * Checks if the king would cross or land on an attacked tile when castling.
+     * Both tiles are tested at once against the attack map of the enemy pieces.
      * @return true if we can do castling, false otherwise
      */
     public boolean canDoCastling(ChessBoard board,Tile start, Tile end)
     {
-        boolean ok = false;
-        Piece startPiece = start.getPiece();
-        if(startPiece.getColour() == Colour.WHITE)
-        {
-            board.boardMatrix[0][4].setPiece(null);
-            if(end.getY() == 0)
-            {
-                board.boardMatrix[0][2].setPiece(new King(Colour.WHITE));
-                if(!board.isInCheck(Colour.WHITE)) ok=true;
-                board.boardMatrix[0][2].setPiece(null);
-            }
-            else
-            {
-                board.boardMatrix[0][6].setPiece(new King(Colour.WHITE));
-                if(!board.isInCheck(Colour.WHITE)) ok=true;
-                board.boardMatrix[0][6].setPiece(null);
-            }
-            board.boardMatrix[0][4].setPiece(new King(Colour.WHITE));
-        }
-        else
-        {
-            board.boardMatrix[7][4].setPiece(null);
-            if(end.getY() == 0)
-            {
-                board.boardMatrix[7][2].setPiece(new King(Colour.BLACK));
-                if(!board.isInCheck(Colour.BLACK)) ok=true;
-                board.boardMatrix[7][2].setPiece(null);
-            }
-            else
-            {
-            board.boardMatrix[7][6].setPiece(new King(Colour.BLACK));
-                if(!board.isInCheck(Colour.BLACK)) ok=true;
-                board.boardMatrix[7][6].setPiece(null);
-            }
-            board.boardMatrix[7][4].setPiece(new King(Colour.BLACK));
-        }
-        return ok;
+        long path = MoveGenerator.castlingKingPath(start.getX() * 8 + start.getY(), end.getX() * 8 + end.getY());
+        return (board.getBitBoard().attackedBy(1 - start.getPiece().getColour().ordinal()) & path) == 0;
+    }
+
+    @Override
+    public int getType() {
+        return BitBoard.KING;
     }
 
     @Override
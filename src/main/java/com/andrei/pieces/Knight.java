@@ -1,13 +1,13 @@
 package com.andrei.pieces;
 
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
-import com.andrei.game.Images;
 import com.andrei.game.Tile;
 
 public class Knight extends Piece{
     public Knight(Colour colour) {
-        super(colour,colour == Colour.WHITE ? Images.WHITE_KNIGHT : Images.BLACK_KNIGHT);
+        super(colour);
     }
 
     /**
@@ -23,6 +23,11 @@ public class Knight extends Piece{
         return -2; //invalid move
     }
 
+    @Override
+    public int getType() {
+        return BitBoard.KNIGHT;
+    }
+
     @Override
     public String toString() {
         return "KNIGHT_" + getColour();
@@ -1,25 +1,30 @@
 package com.andrei.pieces;
 
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
-import com.andrei.game.Images;
 import com.andrei.game.Tile;
 
+/**
+ * Pawns only move forward, so a pawn on its starting row has never moved and may still push two tiles.
+ */
 public class Pawn extends Piece{
     public Pawn(Colour colour) {
-        super(colour, colour == Colour.WHITE ? Images.WHITE_PAWN : Images.BLACK_PAWN);
+        super(colour);
     }
 
     @Override
     public int checkMove(ChessBoard board , Tile start, Tile end) {
         if(end.getPiece()!= null && end.getPiece().getColour() == this.getColour()) return -1;
-        if(this.getColour()== Colour.WHITE && end.getX()-start.getX() == 2  && (end.getY() == start.getY()) && !hasMoved())
+        if(this.getColour()== Colour.WHITE && end.getX()-start.getX() == 2  && (end.getY() == start.getY()) && start.getX() == 1)
         {
+            if(board.getTile(start.getX() + 1, start.getY()).getPiece() != null) return -3; //piece in the way
             if(end.getPiece() == null ) return 0; //valid move
             else return -1;
         }
-        else if(this.getColour()== Colour.BLACK && end.getX()-start.getX() == -2  && (end.getY() == start.getY()) && !hasMoved())
+        else if(this.getColour()== Colour.BLACK && end.getX()-start.getX() == -2  && (end.getY() == start.getY()) && start.getX() == 6)
         {
+            if(board.getTile(start.getX() - 1, start.getY()).getPiece() != null) return -3; //piece in the way
             if(end.getPiece() == null ) return 0; //valid move
             else return -1;
         }
@@ -35,18 +40,34 @@ public class Pawn extends Piece{
         }
         else if(this.getColour()== Colour.WHITE && end.getX() - start.getX() == 1 && (Math.abs(end.getY() - start.getY()) == 1))
         {
-            if(end.getPiece() == null) return 1; //cannot attack empty square
+            if(end.getPiece() == null && !isEnPassant(board, end)) return 1; //cannot attack empty square
             else return 0; //valid move
         }
         else if(this.getColour()== Colour.BLACK && end.getX() - start.getX() == -1 && (Math.abs(end.getY() - start.getY()) == 1))
         {
-            if(end.getPiece() == null) return 1; //cannot attack empty square
+            if(end.getPiece() == null && !isEnPassant(board, end)) return 1; //cannot attack empty square
             else return 0; //valid move
         }
         else return -2; //no such move for pawn
 
     }
 
+    /**
+     * En passant: right after an enemy pawn moved two tiles, it can be captured as if it had moved one tile.
+     * The board keeps the skipped tile as its en passant square.
+     * @return true if a diagonal move onto the empty end tile is an en passant capture
+     */
+    private boolean isEnPassant(ChessBoard board, Tile end)
+    {
+        int ep = board.getEpSquare();
+        return ep == end.getX() * 8 + end.getY() && (ep >= 32) == (getColour() == Colour.WHITE);
+    }
+
+    @Override
+    public int getType() {
+        return BitBoard.PAWN;
+    }
+
     @Override
     public String toString() {
         return "PAWN_"+getColour();
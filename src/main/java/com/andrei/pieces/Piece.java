@@ -1,22 +1,59 @@
 package com.andrei.pieces;
 
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
+import com.andrei.game.Images;
+import com.andrei.game.MoveGenerator;
 import com.andrei.game.Tile;
 
 import java.util.ArrayList;
 
+/**
+ * A kind of piece: its colour and its move rules. Pieces are immutable and hold no position state,
+ * the board keeps what has moved in its castling rights and en passant square. So one instance of each
+ * kind is enough, shared by every board through {@link #of}.
+ */
 public abstract class Piece {
-    private Colour colour;
-    private boolean hasMoved = false;
-    private String imagePath;
+    private final Colour colour;
+
+    //the shared instances, indexed by colour * 6 + type like the bitboards
+    private static final Piece[] PIECES = new Piece[12];
+
+    static {
+        for(Colour colour : Colour.values())
+        {
+            int offset = colour.ordinal() * 6;
+            PIECES[offset + BitBoard.PAWN] = new Pawn(colour);
+            PIECES[offset + BitBoard.KNIGHT] = new Knight(colour);
+            PIECES[offset + BitBoard.BISHOP] = new Bishop(colour);
+            PIECES[offset + BitBoard.ROOK] = new Rook(colour);
+            PIECES[offset + BitBoard.QUEEN] = new Queen(colour);
+            PIECES[offset + BitBoard.KING] = new King(colour);
+        }
+    }
 
     public Piece(Colour colour) {
         this.colour = colour;
     }
-    public Piece(Colour colour, String imagePath) {
-        this(colour);
-        this.imagePath = imagePath;
+
+    /**
+     * @param type one of the type constants in BitBoard
+     * @param colour the colour of the piece
+     * @return the shared piece of the given type and colour
+     */
+    public static Piece of(int type, Colour colour)
+    {
+        return PIECES[colour.ordinal() * 6 + type];
+    }
+
+    /**
+     * @param code a piece code from the board mailbox, colour * 6 + type + 1, or 0 for an empty square
+     * @return the shared piece with the given code, or null for an empty square
+     */
+    public static Piece ofCode(int code)
+    {
+        return code == 0 ? null : PIECES[code - 1];
     }
 
     /**
@@ -25,53 +62,38 @@ public abstract class Piece {
      */
     public abstract int checkMove(ChessBoard board, Tile start, Tile end);
 
+    /**
+     * @return the bitboard index of this kind of piece, one of the type constants in BitBoard
+     */
+    public abstract int getType();
+
 
     /**
-     * Using the checkMove method, this method returns an ArrayList of all the legal moves for the piece.
+     * Returns all the moves of the piece, generated from the attack tables by the MoveGenerator.
+     * The moves follow the same rules as checkMove. This is a convenience wrapper for the GUI;
+     * hot paths use ChessBoard.generateMoves with a reusable MoveList instead.
      * @return an ArrayList of all the legal moves for the piece
      */
     public ArrayList<Tile> getLegalMoves(ChessBoard board, Tile pieceTile)
     {
-        Piece piece = pieceTile.getPiece();
-        if(piece == null) return null;
+        if(pieceTile.getPiece() == null) return null;
         ArrayList<Tile> validMoves = new ArrayList<>();
-        for(int i=0; i<8; i++)
+        int square = pieceTile.getX() * 8 + pieceTile.getY();
+        for(long targets = MoveGenerator.targets(board.getBitBoard(), square); targets != 0; targets &= targets - 1)
         {
-            for(int j=0; j < 8; j++)
-            {
-                if(board.boardMatrix[i][j] != pieceTile )
-                {
-                    if(piece.checkMove(board,pieceTile,board.boardMatrix[i][j])==0) validMoves.add(board.boardMatrix[i][j]);
-                }
-            }
+            int target = Long.numberOfTrailingZeros(targets);
+            validMoves.add(board.boardMatrix[target >>> 3][target & 7]);
         }
         return validMoves;
     }
 
-    //GETTERS AND SETTERS
-
-
-    public void setImagePath(String imagePath) {
-        this.imagePath = imagePath;
-    }
+    //GETTERS
 
     public String getImagePath() {
-        return imagePath;
+        return Images.forPiece(getType(), colour);
     }
 
     public Colour getColour() {
         return colour;
     }
-
-    public void setColour(Colour colour) {
-        this.colour = colour;
-    }
-
-    public boolean hasMoved() {
-        return hasMoved;
-    }
-
-    public void setHasMoved(boolean hasMoved) {
-        this.hasMoved = hasMoved;
-    }
 }
@@ -1,13 +1,13 @@
 package com.andrei.pieces;
 
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
-import com.andrei.game.Images;
 import com.andrei.game.Tile;
 
 public class Queen extends Piece{
     public Queen(Colour colour) {
-        super(colour, colour == Colour.WHITE ? Images.WHITE_QUEEN : Images.BLACK_QUEEN);
+        super(colour);
     }
 
     /**
@@ -35,6 +35,11 @@ public class Queen extends Piece{
         return -2; //not a valid move for Queen
     }
 
+    @Override
+    public int getType() {
+        return BitBoard.QUEEN;
+    }
+
     @Override
     public String toString() {
         return "QUEEN_" + getColour();
@@ -1,13 +1,14 @@
 package com.andrei.pieces;
 
+import com.andrei.game.Attacks;
+import com.andrei.game.BitBoard;
 import com.andrei.game.ChessBoard;
 import com.andrei.game.Colour;
-import com.andrei.game.Images;
 import com.andrei.game.Tile;
 
 public class Rook extends Piece{
     public Rook(Colour colour) {
-        super(colour, colour == Colour.WHITE ? Images.WHITE_ROOK : Images.BLACK_ROOK);
+        super(colour);
     }
 
     /**
@@ -32,47 +33,19 @@ public class Rook extends Piece{
 
     /**
      * Must check if there are any pieces in the way of the rook: line and column.
+     * The rook attack set of the start tile is looked up for the current occupancy; it reaches
+     * the end tile only if both are on the same line or column and nothing is in between.
      * @return whether there is a path for a rook to move from start to end.
      */
     public static boolean hasPathRook(ChessBoard board, Tile start, Tile end)
     {
-        if(start.getY() == end.getY())
-        {
-            if(end.getX() > start.getX())
-            {
-                for(int i = start.getX() + 1; i < end.getX(); i++)
-                {
-                   if(board.getTile(i, end.getY()).getPiece() != null) return false;
-                }
-            }
-            else //end.getX < start.getX
-            {
-                for(int i = end.getX() + 1; i< start.getX(); i++)
-                {
-                    if(board.getTile(i, end.getY()).getPiece() != null) return false;
-                }
-            }
-            return true;
-        }
-        if(start.getX() == end.getX())
-        {
-            if(end.getY() > start.getY())
-            {
-                for(int i = start.getY() + 1; i < end.getY(); i++)
-                {
-                    if(board.getTile(end.getX(), i).getPiece() != null) return false;
-                }
-            }
-            else //end.getY < start.getY
-            {
-                for(int i = end.getY() + 1; i< start.getY(); i++)
-                {
-                    if(board.getTile(end.getX(), i).getPiece() != null) return false;
-                }
-            }
-            return true;
-        }
-        return false;
+        long attacks = Attacks.rook(start.getX() * 8 + start.getY(), board.getBitBoard().occupied());
+        return (attacks & (1L << (end.getX() * 8 + end.getY()))) != 0;
+    }
+
+    @Override
+    public int getType() {
+        return BitBoard.ROOK;
     }
 
     @Override
@@ -9,6 +9,8 @@ module com.example.chessgamejavafx {
     requires org.kordamp.ikonli.javafx;
     requires org.kordamp.bootstrapfx.core;
     requires eu.hansolo.tilesfx;
+    //optional: the vectorized neural network evaluation, used when the module is added at run time
+    requires static jdk.incubator.vector;
 
     opens com.andrei to javafx.fxml;
     exports com.andrei;
@@ -18,6 +20,7 @@ module com.example.chessgamejavafx {
     opens com.andrei.pieces to javafx.fxml;
     exports com.andrei.game;
     opens com.andrei.game to javafx.fxml;
+    exports com.andrei.engine;
     exports com.andrei.gui;
     opens com.andrei.gui to javafx.fxml;
 }
\ No newline at end of file